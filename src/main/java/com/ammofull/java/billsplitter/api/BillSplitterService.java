@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Set;
 
 import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.TransferTO;
 
 
 
@@ -77,6 +79,44 @@ public interface BillSplitterService {
 	 */
 	public BillDetailsTO editContributionsForItem(String itemName, List<Boolean> participants, BillDetailsTO oldBillDetailsTO);
 	
+	/**
+	 * Records who paid for an item, or for tips and taxes when itemName is BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES.
+	 * The payer has to be a user of the bill
+	 * @param itemName
+	 * @param payer
+	 * @return
+	 */
+	public BillDetailsTO setPayerForItem(String itemName, String payer, BillDetailsTO oldBillDetailsTO);
+	
+	/**
+	 * Nets what every user paid against what the user owes over all the bills, and computes who pays whom.
+	 * Every item with an amount must have participants and a payer, as must tips and taxes when they are allocated to users
+	 * @param bills
+	 * @return a short list of transfers that settles every balance
+	 */
+	public List<TransferTO> settleBills(List<BillDetailsTO> bills);
+	
+	/**
+	 * Applies a batch of operations in the given order and computes the bill once at the end.
+	 * The whole batch is validated first. If an operation is not valid, an InvalidOperationException tells which one and the bill is left unchanged
+	 * @param operations
+	 * @return
+	 */
+	public BillDetailsTO applyOperations(List<BillOperationTO> operations, BillDetailsTO oldBillDetailsTO);
+	
+	/**
+	 * Makes the calculated data of a bill whose user entered data was set from outside (e.g. read from JSON) follow that data.
+	 * The bill is computed on the first read
+	 * @return
+	 */
+	public BillDetailsTO computeBill(BillDetailsTO billDetailsTO);
+	
+	/**
+	 * Computes the calculated data of the bill now, on the calling thread, rather than on its first read
+	 * @return
+	 */
+	public BillDetailsTO computeNow(BillDetailsTO billDetailsTO);
+	
 	/**
 	 * Prints a summary of every users's contribtion in the bill
 	 */
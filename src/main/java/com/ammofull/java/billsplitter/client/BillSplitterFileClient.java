@@ -5,6 +5,7 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Scanner;
@@ -12,6 +13,7 @@ import java.util.Set;
 
 import com.ammofull.java.billsplitter.api.BillSplitterService;
 import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
 import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
 
 
@@ -66,7 +68,9 @@ public class BillSplitterFileClient {
 			List<String> lines = Files.readAllLines(path,  Charset.defaultCharset());	
 			
 			BillSplitterService billSplitterService = new BillSplitterServiceImpl();
-			BillDetailsTO billDetailsTO = null;
+			
+			// The whole file is applied as one batch, so the bill is computed once
+			List<BillOperationTO> operations = new ArrayList<>();
 			
 			for(String line : lines)
 			{
@@ -77,12 +81,12 @@ public class BillSplitterFileClient {
 				if(itemName.equals(ITEM_NAME_FOR_TIPS_AND_TAXES))
 				{
 					Double amount = validateLineForTipsAndTaxes(words);
-					billSplitterService.addTipsAndTaxes(amount,billDetailsTO);
+					operations.add(BillOperationTO.setTipsAndTaxes(amount));
 				}
 				else
 				{
 					Double amount = validateLineForItem(words);
-					 billSplitterService.addItem(itemName, amount, billDetailsTO);
+					operations.add(BillOperationTO.addItem(itemName, amount));
 					
 					Set<String> participants = new HashSet<>();
 					
@@ -91,11 +95,12 @@ public class BillSplitterFileClient {
 						String participant = words[i];
 						participants.add(participant);
 					}
-					billSplitterService.addContributionsForItem(itemName, participants, billDetailsTO);
+					operations.add(BillOperationTO.setParticipants(itemName, participants));
 				}
 				
 			}
 			
+			BillDetailsTO billDetailsTO = billSplitterService.applyOperations(operations, null);
 			billSplitterService.printDetailedFinalReport(billDetailsTO);
 		
 		
@@ -0,0 +1,260 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes many independent bills (e.g. the nightly settlement of all the bills of the day) on a fixed pool of worker threads.
+ * The bills are read from an iterator as the workers need them, so at most a few bills per worker are in memory at once.
+ * A bill that cannot be computed is reported in its BillBatchResult and does not stop the rest of the batch.
+ *
+ * Every bill is computed entirely from its user entered data, as a bill read from JSON would be.
+ * The workers keep their scratch buffers (see LargestRemainderAllocator.forCurrentThread) from one bill to the next
+ */
+public class BillBatchProcessor implements Closeable {
+
+	public enum ResultOrder {
+		/**
+		 * Results come in the order of the input bills. A slow bill holds back the results after it
+		 */
+		INPUT_ORDER,
+		/**
+		 * Results come as soon as their bill is computed
+		 */
+		COMPLETION_ORDER
+	}
+
+	/**
+	 * Bills read ahead of the consumer, per worker
+	 */
+	private static final int BILLS_IN_FLIGHT_PER_WORKER = 4;
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private final ExecutorService workers;
+
+	private final int maxBillsInFlight;
+
+	private final BillSplitterServiceImpl billSplitterService = new BillSplitterServiceImpl();
+
+	/**
+	 * @param workerThreads number of bills computed at the same time
+	 */
+	public BillBatchProcessor(int workerThreads) {
+		if(workerThreads <= 0)
+		{
+			throw new IllegalArgumentException("Worker threads must be positive : " + workerThreads);
+		}
+		final String namePrefix = "bill-batch-" + POOL_NUMBER.incrementAndGet() + "-worker-";
+		this.workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.maxBillsInFlight = workerThreads * BILLS_IN_FLIGHT_PER_WORKER;
+	}
+
+	/**
+	 * One worker per available processor
+	 */
+	public BillBatchProcessor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Computes the bills lazily: a bill is read from the input and submitted only when there is room for it,
+	 * as the returned results are consumed. The input is only read from the thread iterating over the results
+	 */
+	public Iterator<BillBatchResult> process(Iterator<BillDetailsTO> bills, ResultOrder resultOrder) {
+		if(bills == null || resultOrder == null)
+		{
+			throw new IllegalArgumentException("Bills and result order are mandatory");
+		}
+		if(resultOrder == ResultOrder.INPUT_ORDER)
+		{
+			return new InputOrderResults(bills);
+		}
+		return new CompletionOrderResults(bills);
+	}
+
+	/**
+	 * Computes all the bills and waits for them
+	 * @return one result per bill, in the order of the bills
+	 */
+	public List<BillBatchResult> processAll(List<BillDetailsTO> bills) {
+		List<BillBatchResult> results = new ArrayList<>(bills.size());
+		Iterator<BillBatchResult> resultIterator = process(bills.iterator(), ResultOrder.INPUT_ORDER);
+		while(resultIterator.hasNext())
+		{
+			results.add(resultIterator.next());
+		}
+		return results;
+	}
+
+	/**
+	 * Stops the workers. The bills being computed are finished, the ones not started yet are dropped
+	 */
+	@Override
+	public void close() {
+		workers.shutdownNow();
+	}
+
+	private Callable<BillBatchResult> computation(final int index, final BillDetailsTO billDetailsTO) {
+		return new Callable<BillBatchResult>() {
+			@Override
+			public BillBatchResult call() {
+				try
+				{
+					if(billDetailsTO == null)
+					{
+						throw new IllegalArgumentException("Bill is null");
+					}
+					BillSplitterServiceImpl.computeEntireBill(billDetailsTO);
+					// Compute now, on the worker, rather than on the first read of the consumer
+					billDetailsTO.getLedger().computeIfDirty();
+					return new BillBatchResult(index, billDetailsTO, null);
+				}
+				catch(RuntimeException e)
+				{
+					return new BillBatchResult(index, billDetailsTO, e);
+				}
+			}
+		};
+	}
+
+	private static BillBatchResult resultOf(Future<BillBatchResult> future) {
+		try
+		{
+			return future.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a bill", e);
+		}
+		catch(ExecutionException e)
+		{
+			// The computation catches every RuntimeException, so only an Error gets here
+			throw new IllegalStateException("Bill computation failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Keeps the futures in input order and waits for the oldest one
+	 */
+	private class InputOrderResults implements Iterator<BillBatchResult> {
+
+		private final Iterator<BillDetailsTO> bills;
+
+		private final Deque<Future<BillBatchResult>> billsInFlight = new ArrayDeque<>();
+
+		private int nextIndex;
+
+		InputOrderResults(Iterator<BillDetailsTO> bills) {
+			this.bills = bills;
+		}
+
+		private void submitBills() {
+			while(billsInFlight.size() < maxBillsInFlight && bills.hasNext())
+			{
+				billsInFlight.addLast(workers.submit(computation(nextIndex++, bills.next())));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			submitBills();
+			return !billsInFlight.isEmpty();
+		}
+
+		@Override
+		public BillBatchResult next() {
+			if(!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			return resultOf(billsInFlight.removeFirst());
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Takes the results from a CompletionService as the workers finish them
+	 */
+	private class CompletionOrderResults implements Iterator<BillBatchResult> {
+
+		private final Iterator<BillDetailsTO> bills;
+
+		private final CompletionService<BillBatchResult> completedBills = new ExecutorCompletionService<>(workers);
+
+		private int billsInFlight;
+
+		private int nextIndex;
+
+		CompletionOrderResults(Iterator<BillDetailsTO> bills) {
+			this.bills = bills;
+		}
+
+		private void submitBills() {
+			while(billsInFlight < maxBillsInFlight && bills.hasNext())
+			{
+				completedBills.submit(computation(nextIndex++, bills.next()));
+				billsInFlight++;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			submitBills();
+			return billsInFlight != 0;
+		}
+
+		@Override
+		public BillBatchResult next() {
+			if(!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			Future<BillBatchResult> completedBill;
+			try
+			{
+				completedBill = completedBills.take();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a bill", e);
+			}
+			billsInFlight--;
+			return resultOf(completedBill);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
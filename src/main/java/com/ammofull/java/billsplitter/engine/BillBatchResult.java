@@ -0,0 +1,44 @@
+package com.ammofull.java.billsplitter.engine;
+
+/**
+ * Outcome of one bill of a BillBatchProcessor batch: the computed bill, or the error that stopped its computation
+ */
+public class BillBatchResult {
+
+	/**
+	 * Position of the bill in the input of the batch
+	 */
+	private final int index;
+
+	private final BillDetailsTO billDetailsTO;
+
+	private final RuntimeException error;
+
+	BillBatchResult(int index, BillDetailsTO billDetailsTO, RuntimeException error) {
+		this.index = index;
+		this.billDetailsTO = billDetailsTO;
+		this.error = error;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the bill as it was given to the batch. Its calculated data is only meaningful when isSuccessful()
+	 */
+	public BillDetailsTO getBillDetailsTO() {
+		return billDetailsTO;
+	}
+
+	/**
+	 * @return null if the bill was computed
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	public boolean isSuccessful() {
+		return error == null;
+	}
+}
@@ -1,7 +1,7 @@
 package com.ammofull.java.billsplitter.engine;
 
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -9,6 +9,10 @@ import java.util.Set;
 
 /**
  * All the details of the current bill
+ * <p>
+ * The user entered data is changed through the setters or in place, through the sets and maps returned by the getters
+ * (including the participants of an item). The bill counts every such change: the engine rebuilds the ledger of a bill changed
+ * outside of it on its next call, and until then the calculated data is the one of the last computation
  * @author Amod
  *
  */
@@ -19,7 +23,7 @@ public class BillDetailsTO {
 	////////////////////////
 	
 	/**
-	 * Participants in this bill
+	 * Participants in this bill, in the order they were added (see BillSplitterService.editContributionsForItem)
 	 */
 	private Set<String> users;
 	
@@ -40,10 +44,24 @@ public class BillDetailsTO {
 	 */
 	private Double tipsAndTaxes;
 	
+	/**
+	 * Key:		Item name, or BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES
+	 * Value:	The user who paid for it. Only needed to settle the bill, see BillSplitterService.settleBills
+	 */
+	private Map<String,String> itemVsPayer;
+	
+	/**
+	 * How the amounts of this bill are computed
+	 */
+	private CalculationMode calculationMode;
+	
 	////////////////////////
 	/// CALCULATED DATA ///
 	//////////////////////
 	
+	// Once the engine has computed the bill, the getters return read only views over its ledger.
+	// The fields below only hold calculated data that was set from outside (e.g. read from JSON) until then
+	
 	/**
 	 * Key: 	Item name
 	 * Value:	Map of user name vs a double representing the user's $ contribution in the item
@@ -62,17 +80,35 @@ public class BillDetailsTO {
 	 */
 	private Map<String,Double> userVsTotalPerHeadContribution;
 	
+	/**
+	 * Engine representation of the bill, used to apply mutations as deltas. Not part of the bill data, hence package private and not serialized.
+	 * Setting any of the calculated data discards it, so that the getters return the data that was set
+	 */
+	private BillLedger ledger;
+	
+	/**
+	 * Number of changes to the user entered data
+	 */
+	private int modificationCount;
+	
+	/**
+	 * modificationCount when the ledger was last brought up to date with the user entered data, see getLedger
+	 */
+	private int ledgerModificationCount;
+	
 	/**
 	 * Instantiates all the above data structures
 	 */
 	public BillDetailsTO() {
-		users = new HashSet<>();		
+		users = new TrackedSet<>(new LinkedHashSet<String>(), this);		
 		itemsVsPerHeadContributions = new HashMap<>();
 		userVsTotalPerHeadContribution = new HashMap<>();
-		itemsVsParticipants = new HashMap<>();
+		itemsVsParticipants = trackParticipants(new HashMap<String, Set<String>>());
 		userVsPercentageContribInTheBill = new HashMap<>();	
-		itemVsAmount = new HashMap<>();
+		itemVsAmount = new TrackedMap<>(new HashMap<String, Double>(), this);
+		itemVsPayer = new TrackedMap<>(new HashMap<String, String>(), this);
 		tipsAndTaxes = 0.0;
+		calculationMode = CalculationMode.DECIMAL;
 	}
 	
 	
@@ -81,8 +117,12 @@ public class BillDetailsTO {
 	}
 
 
+	/**
+	 * The users are copied in the order of the given set
+	 */
 	public void setUsers(Set<String> users) {
-		this.users = users;
+		this.users = users == null ? null : new TrackedSet<>(new LinkedHashSet<>(users), this);
+		modified();
 	}
 
 	
@@ -91,33 +131,46 @@ public class BillDetailsTO {
 	}
 
 	public void setItemsVsParticipants(Map<String, Set<String>> itemsVsParticipants) {
-		this.itemsVsParticipants = itemsVsParticipants;
+		this.itemsVsParticipants = itemsVsParticipants == null ? null : trackParticipants(itemsVsParticipants);
+		modified();
 	}
 
 	
 	public Map<String, Map<String, Double>> getItemsVsPerHeadContributions() {
+		if(ledger != null) {
+			return ledger.getViews().getItemsVsPerHeadContributions();
+		}
 		return itemsVsPerHeadContributions;
 	}
 
 	public void setItemsVsPerHeadContributions(Map<String, Map<String, Double>> itemsVsPerHeadContributions) {
 		this.itemsVsPerHeadContributions = itemsVsPerHeadContributions;
+		this.ledger = null;
 	}
 
 	public Map<String, Double> getUserVsPercentageContribInTheBill() {
+		if(ledger != null) {
+			return ledger.getViews().getUserVsPercentageContribInTheBill();
+		}
 		return userVsPercentageContribInTheBill;
 	}
 
 	public void setUserVsPercentageContribInTheBill(Map<String, Double> userVsPercentageContribInTheBill) {
 		this.userVsPercentageContribInTheBill = userVsPercentageContribInTheBill;
+		this.ledger = null;
 	}
 
 	
 	public Map<String, Double> getUserVsTotalPerHeadContribution() {
+		if(ledger != null) {
+			return ledger.getViews().getUserVsTotalPerHeadContribution();
+		}
 		return userVsTotalPerHeadContribution;
 	}
 
 	public void setUserVsTotalPerHeadContribution(Map<String, Double> userVsTotalPerHeadContribution) {
 		this.userVsTotalPerHeadContribution = userVsTotalPerHeadContribution;
+		this.ledger = null;
 	}
 
 	public Double getTipsAndTaxes() {
@@ -126,6 +179,17 @@ public class BillDetailsTO {
 
 	public void setTipsAndTaxes(Double tipsAndTaxes) {
 		this.tipsAndTaxes = tipsAndTaxes;
+		modified();
+	}
+
+
+	public CalculationMode getCalculationMode() {
+		return calculationMode;
+	}
+
+	public void setCalculationMode(CalculationMode calculationMode) {
+		this.calculationMode = calculationMode == null ? CalculationMode.DECIMAL : calculationMode;
+		modified();
 	}
 
 
@@ -135,7 +199,77 @@ public class BillDetailsTO {
 
 
 	public void setItemVsAmount(Map<String, Double> itemVsAmount) {
-		this.itemVsAmount = itemVsAmount;
+		this.itemVsAmount = itemVsAmount == null ? null : new TrackedMap<>(itemVsAmount, this);
+		modified();
+	}
+
+
+	public Map<String, String> getItemVsPayer() {
+		return itemVsPayer;
+	}
+
+
+	public void setItemVsPayer(Map<String, String> itemVsPayer) {
+		this.itemVsPayer = itemVsPayer == null ? null : new TrackedMap<>(itemVsPayer, this);
+		modified();
+	}
+
+
+	/**
+	 * @return the ledger, or null if the user entered data changed since it was set, in which case the engine rebuilds it
+	 */
+	BillLedger getLedger() {
+		return modificationCount == ledgerModificationCount ? ledger : null;
+	}
+
+
+	/**
+	 * Sets the ledger, which accounts for the user entered data as it is now.
+	 * The engine sets it again after each change it makes, since the change is counted like any other
+	 */
+	void setLedger(BillLedger ledger) {
+		this.ledger = ledger;
+		this.ledgerModificationCount = modificationCount;
+	}
+
+
+	void modified() {
+		modificationCount++;
+	}
+
+
+	/**
+	 * Wraps the map and, as they are read, the participants of its items
+	 */
+	private Map<String, Set<String>> trackParticipants(Map<String, Set<String>> itemsVsParticipants) {
+		return new TrackedMap<String, Set<String>>(itemsVsParticipants, this) {
+			@Override
+			Set<String> track(Set<String> participants) {
+				return participants == null ? null : new TrackedSet<>(participants, BillDetailsTO.this);
+			}
+		};
+	}
+
+
+	/**
+	 * @return a copy of the user entered data and of the ledger, if any, that changes independently of this bill.
+	 * Calculated data set from outside is not copied
+	 */
+	BillDetailsTO copy() {
+		BillDetailsTO copy = new BillDetailsTO();
+		copy.users.addAll(users);
+		for(Map.Entry<String,Set<String>> itemAndParticipants : itemsVsParticipants.entrySet())
+		{
+			Set<String> participants = itemAndParticipants.getValue();
+			copy.itemsVsParticipants.put(itemAndParticipants.getKey(), participants == null ? null : new LinkedHashSet<>(participants));
+		}
+		copy.itemVsAmount.putAll(itemVsAmount);
+		copy.itemVsPayer.putAll(itemVsPayer);
+		copy.tipsAndTaxes = tipsAndTaxes;
+		copy.calculationMode = calculationMode;
+		BillLedger ledger = getLedger();
+		copy.setLedger(ledger == null ? null : ledger.copy());
+		return copy;
 	}
 	
 	
@@ -0,0 +1,99 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every version of a bill, with undo and redo. The versions share their unchanged data (see PersistentBill),
+ * so the history costs memory in proportion to the edits.
+ * Applying an operation after an undo drops the versions that could have been redone.
+ * Not thread safe
+ */
+public class BillHistory {
+
+	private final List<PersistentBill> versions = new ArrayList<>();
+
+	/**
+	 * Index of the current version in versions
+	 */
+	private int currentVersion;
+
+	public BillHistory(PersistentBill initialVersion) {
+		if(initialVersion == null)
+		{
+			throw new IllegalArgumentException("Initial version cannot be null");
+		}
+		versions.add(initialVersion);
+	}
+
+	/**
+	 * @return the new current version
+	 */
+	public PersistentBill apply(BillOperationTO operation) {
+		return addVersion(getCurrent().apply(operation));
+	}
+
+	/**
+	 * The operations make one version, undone at once
+	 * @return the new current version
+	 */
+	public PersistentBill applyAll(List<BillOperationTO> operations) {
+		return addVersion(getCurrent().applyAll(operations));
+	}
+
+	private PersistentBill addVersion(PersistentBill version) {
+		versions.subList(currentVersion + 1, versions.size()).clear();
+		versions.add(version);
+		currentVersion++;
+		return version;
+	}
+
+	public boolean canUndo() {
+		return currentVersion > 0;
+	}
+
+	public boolean canRedo() {
+		return currentVersion < versions.size() - 1;
+	}
+
+	/**
+	 * @return the previous version, which becomes the current one
+	 */
+	public PersistentBill undo() {
+		if(!canUndo())
+		{
+			throw new IllegalStateException("Nothing to undo");
+		}
+		return versions.get(--currentVersion);
+	}
+
+	/**
+	 * @return the version that was undone last, which becomes the current one
+	 */
+	public PersistentBill redo() {
+		if(!canRedo())
+		{
+			throw new IllegalStateException("Nothing to redo");
+		}
+		return versions.get(++currentVersion);
+	}
+
+	public PersistentBill getCurrent() {
+		return versions.get(currentVersion);
+	}
+
+	/**
+	 * @return the version number of the current version, from 0 for the initial one
+	 */
+	public int getCurrentVersion() {
+		return currentVersion;
+	}
+
+	public PersistentBill getVersion(int version) {
+		return versions.get(version);
+	}
+
+	public int getVersionCount() {
+		return versions.size();
+	}
+}
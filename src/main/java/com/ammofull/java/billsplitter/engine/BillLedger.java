@@ -0,0 +1,475 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Engine representation of a bill, kept alongside the BillDetailsTO so that every mutation can be applied as a delta.
+ * Users and items are interned to int ordinals in the order they were added and all the numbers are kept in primitive arrays.
+ * The participants of an item are a bit mask over the user ordinals (see ParticipantMask).
+ * The calculated maps of BillDetailsTO are read only views over these arrays (see BillLedgerViews).
+ * This is engine state only and is never serialized. A bill without a ledger (e.g. one read from JSON) is rebuilt from the user entered data once.
+ *
+ * This class keeps the ordinals and the participants of every item. The arithmetic depends on the CalculationMode
+ * and is implemented by DecimalBillLedger and FixedPointBillLedger
+ *
+ * The calculated data is computed lazily: a mutation only records which items and users are dirty,
+ * and the first read after a change (through the views) computes what is dirty, once
+ */
+abstract class BillLedger {
+
+	protected static final int INITIAL_CAPACITY = 8;
+
+	private int userCount;
+
+	private String[] userNames = new String[INITIAL_CAPACITY];
+
+	private final Map<String,Integer> userOrdinals = new HashMap<>();
+
+	private int itemCount;
+
+	private String[] itemNames = new String[INITIAL_CAPACITY];
+
+	private final Map<String,Integer> itemOrdinals = new HashMap<>();
+
+	/**
+	 * Row of the contribution matrix for every item: the mask of its participants
+	 */
+	private ParticipantMask[] itemParticipants = new ParticipantMask[INITIAL_CAPACITY];
+
+	/**
+	 * The participants the users' subtotals currently account for. Differs from itemParticipants only for dirty items
+	 */
+	private ParticipantMask[] appliedParticipants = new ParticipantMask[INITIAL_CAPACITY];
+
+	private double tipsAndTaxes;
+
+	/**
+	 * Items whose split has to be computed again
+	 */
+	private final BitSet dirtyItems = new BitSet();
+
+	/**
+	 * Users whose subtotal changed since the last computation
+	 */
+	private final BitSet dirtyUsers = new BitSet();
+
+	/**
+	 * Set when something every user's share depends on changed: the total bill or tips and taxes
+	 */
+	private boolean allUsersDirty;
+
+	private boolean dirty;
+
+	/**
+	 * True when tips and taxes are allocated, i.e. there are users, items and a non zero amount
+	 */
+	private boolean hasTipsAndTaxesAllocation;
+
+	private final BillLedgerViews views = new BillLedgerViews(this);
+
+	BillLedger()
+	{
+	}
+
+	/**
+	 * Copy of the other ledger, calculated data included, that changes independently of it.
+	 * The participant masks are immutable and shared
+	 */
+	BillLedger(BillLedger other)
+	{
+		userCount = other.userCount;
+		userNames = other.userNames.clone();
+		userOrdinals.putAll(other.userOrdinals);
+		itemCount = other.itemCount;
+		itemNames = other.itemNames.clone();
+		itemOrdinals.putAll(other.itemOrdinals);
+		itemParticipants = other.itemParticipants.clone();
+		appliedParticipants = other.appliedParticipants.clone();
+		tipsAndTaxes = other.tipsAndTaxes;
+		dirtyItems.or(other.dirtyItems);
+		dirtyUsers.or(other.dirtyUsers);
+		allUsersDirty = other.allUsersDirty;
+		dirty = other.dirty;
+		hasTipsAndTaxesAllocation = other.hasTipsAndTaxesAllocation;
+	}
+
+	/**
+	 * @return an empty ledger doing the arithmetic of the given mode
+	 */
+	static BillLedger newLedger(CalculationMode calculationMode)
+	{
+		if(calculationMode == CalculationMode.FIXED_POINT_CENTS)
+		{
+			return new FixedPointBillLedger();
+		}
+		return new DecimalBillLedger();
+	}
+
+	/**
+	 * @return a copy of this ledger of the same mode, see BillLedger(BillLedger)
+	 */
+	abstract BillLedger copy();
+
+	/**
+	 * Interns a new user. A new user does not participate in any item, so no item is affected
+	 */
+	void addUser(String user)
+	{
+		if(userOrdinals.containsKey(user))
+		{
+			return;
+		}
+		if(userCount == userNames.length)
+		{
+			int capacity = userCount * 2;
+			userNames = Arrays.copyOf(userNames, capacity);
+			growUsers(capacity);
+		}
+		userNames[userCount] = user;
+		userOrdinals.put(user, userCount);
+		dirtyUsers.set(userCount);
+		dirty = true;
+		userCount++;
+	}
+
+	/**
+	 * Interns a new item without participants. It only changes the total bill
+	 */
+	void addItem(String item, double amount)
+	{
+		if(itemCount == itemNames.length)
+		{
+			int capacity = itemCount * 2;
+			itemNames = Arrays.copyOf(itemNames, capacity);
+			itemParticipants = Arrays.copyOf(itemParticipants, capacity);
+			appliedParticipants = Arrays.copyOf(appliedParticipants, capacity);
+			growItems(capacity);
+		}
+		itemNames[itemCount] = item;
+		itemOrdinals.put(item, itemCount);
+		itemParticipants[itemCount] = ParticipantMask.EMPTY;
+		appliedParticipants[itemCount] = ParticipantMask.EMPTY;
+		addItemAmount(itemCount, amount);
+		allUsersDirty = true;
+		dirty = true;
+		itemCount++;
+	}
+
+	/**
+	 * Replaces the participants of an item. Participants that are not interned yet are added as users.
+	 * The split of the item is computed on the next read
+	 */
+	void setParticipants(String item, Set<String> participants)
+	{
+		int[] users = new int[participants.size()];
+		int i = 0;
+		for(String participant : participants)
+		{
+			addUser(participant);
+			users[i++] = userOrdinals.get(participant);
+		}
+		setParticipants(item, ParticipantMask.of(users));
+	}
+
+	/**
+	 * Replaces the participants of an item with users that are already interned
+	 */
+	void setParticipants(String item, ParticipantMask participants)
+	{
+		int itemOrdinal = itemOrdinals.get(item);
+		itemParticipants[itemOrdinal] = participants;
+		dirtyItems.set(itemOrdinal);
+		dirty = true;
+	}
+
+	/**
+	 * Removes an item. Its split is taken out of its participants' subtotals right away,
+	 * and the last item takes its ordinal so that the ordinals stay dense
+	 */
+	void deleteItem(String item)
+	{
+		int ordinal = itemOrdinals.remove(item);
+		markDirty(appliedParticipants[ordinal]);
+		splitItem(ordinal, appliedParticipants[ordinal], ParticipantMask.EMPTY, subtotals());
+		changeItemAmount(ordinal, 0.0);
+
+		int last = itemCount - 1;
+		if(ordinal != last)
+		{
+			itemNames[ordinal] = itemNames[last];
+			itemOrdinals.put(itemNames[ordinal], ordinal);
+			itemParticipants[ordinal] = itemParticipants[last];
+			appliedParticipants[ordinal] = appliedParticipants[last];
+			dirtyItems.set(ordinal, dirtyItems.get(last));
+			moveItem(last, ordinal);
+		}
+		itemNames[last] = null;
+		itemParticipants[last] = null;
+		appliedParticipants[last] = null;
+		dirtyItems.clear(last);
+		itemCount--;
+		allUsersDirty = true;
+		dirty = true;
+	}
+
+	/**
+	 * Renames an item and changes its amount. The participants are kept, the split of the item is computed again on the next read
+	 */
+	void editItem(String oldName, String newName, double amount)
+	{
+		int ordinal = itemOrdinals.remove(oldName);
+		itemOrdinals.put(newName, ordinal);
+		itemNames[ordinal] = newName;
+		changeItemAmount(ordinal, amount);
+		dirtyItems.set(ordinal);
+		allUsersDirty = true;
+		dirty = true;
+	}
+
+	void setTipsAndTaxes(double tipsAndTaxes)
+	{
+		if(this.tipsAndTaxes != tipsAndTaxes)
+		{
+			this.tipsAndTaxes = tipsAndTaxes;
+			allUsersDirty = true;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Computes whatever is dirty. Called by every read of calculated data, so it must be cheap when nothing changed
+	 * 1) For every dirty item, take its previous split out of the users' subtotals and add the new one
+	 * 2) Compute the user based numbers (%, tips and taxes, totals) for the users whose subtotal changed, or for all of them
+	 * if the total bill or tips and taxes changed
+	 */
+	void computeIfDirty()
+	{
+		if(!dirty)
+		{
+			return;
+		}
+
+		int dirtyItemCount = dirtyItems.cardinality();
+		if(dirtyItemCount >= ItemSplitTask.PARALLEL_THRESHOLD)
+		{
+			// Large bills (e.g. imported expense reports): the items are split in parallel and the per user deltas are added up
+			int[] items = new int[dirtyItemCount];
+			int i = 0;
+			for(int item = dirtyItems.nextSetBit(0); item >= 0; item = dirtyItems.nextSetBit(item + 1))
+			{
+				items[i++] = item;
+			}
+			subtotals().add(ItemSplitTask.splitItems(this, items));
+			allUsersDirty = true;
+		}
+		else
+		{
+			SubtotalDeltas subtotals = subtotals();
+			for(int item = dirtyItems.nextSetBit(0); item >= 0; item = dirtyItems.nextSetBit(item + 1))
+			{
+				markDirty(appliedParticipants[item]);
+				markDirty(itemParticipants[item]);
+				splitDirtyItem(item, subtotals);
+			}
+		}
+		dirtyItems.clear();
+
+		// To calculate any user based number, there has to be at least one user
+		if(userCount != 0)
+		{
+			boolean hadTipsAndTaxesAllocation = hasTipsAndTaxesAllocation;
+			hasTipsAndTaxesAllocation = itemCount != 0 && tipsAndTaxes != 0.0;
+			computeUserShares(tipsAndTaxes, dirtyUsers, allUsersDirty || hadTipsAndTaxesAllocation != hasTipsAndTaxesAllocation);
+		}
+		dirtyUsers.clear();
+		allUsersDirty = false;
+		dirty = false;
+	}
+
+	/**
+	 * Takes the previous split of a dirty item out of the deltas and adds its new split.
+	 * Only the item's own cells are written, so different items can be split concurrently
+	 */
+	void splitDirtyItem(int item, SubtotalDeltas deltas)
+	{
+		splitItem(item, appliedParticipants[item], itemParticipants[item], deltas);
+		appliedParticipants[item] = itemParticipants[item];
+	}
+
+	private void markDirty(ParticipantMask users)
+	{
+		for(int user = users.next(0); user >= 0; user = users.next(user + 1))
+		{
+			dirtyUsers.set(user);
+		}
+	}
+
+	//////////////////
+	/// ARITHMETIC ///
+	////////////////
+
+	/**
+	 * The user arrays have to hold at least capacity users
+	 */
+	protected abstract void growUsers(int capacity);
+
+	/**
+	 * The item arrays have to hold at least capacity items
+	 */
+	protected abstract void growItems(int capacity);
+
+	/**
+	 * Records the amount of a new item and adds it to the total bill
+	 */
+	protected abstract void addItemAmount(int item, double amount);
+
+	/**
+	 * Replaces the amount of an item in the total bill. The split of the item is not touched:
+	 * the item is marked dirty and splitItem takes the previous split out with the shares it computed
+	 */
+	protected abstract void changeItemAmount(int item, double amount);
+
+	/**
+	 * Copies the item arrays of an item to another ordinal. Used when an item is deleted
+	 */
+	protected abstract void moveItem(int from, int to);
+
+	/**
+	 * Amounts to add to the users' subtotals, indexed by user ordinal
+	 */
+	protected abstract static class SubtotalDeltas {
+
+		/**
+		 * Adds the other deltas to these ones
+		 */
+		protected abstract void add(SubtotalDeltas other);
+	}
+
+	/**
+	 * @return deltas that write straight into the users' subtotals
+	 */
+	protected abstract SubtotalDeltas subtotals();
+
+	/**
+	 * @return zero deltas for the users known so far, to be filled by one task of the parallel computation
+	 */
+	protected abstract SubtotalDeltas newSubtotalDeltas();
+
+	/**
+	 * Takes the split of the item for its old participants out of the deltas,
+	 * divides the item amount among its new participants and adds the shares to the deltas.
+	 * Must only write the item's own cells besides the deltas
+	 */
+	protected abstract void splitItem(int item, ParticipantMask oldParticipants, ParticipantMask newParticipants, SubtotalDeltas deltas);
+
+	/**
+	 * Computes the % contribution, the tips and taxes allocation and the total of the dirty users, or of every user when allUsers is true.
+	 * An implementation may always compute every user
+	 */
+	protected abstract void computeUserShares(double tipsAndTaxes, BitSet dirtyUsers, boolean allUsers);
+
+	/**
+	 * For the subclasses while computing. Unlike hasTipsAndTaxesAllocation, it does not trigger a computation
+	 */
+	protected boolean isTipsAndTaxesAllocated()
+	{
+		return hasTipsAndTaxesAllocation;
+	}
+
+	protected abstract double userPercentage(int user);
+
+	protected abstract double userTipsAndTaxes(int user);
+
+	protected abstract double userTotal(int user);
+
+	/**
+	 * @return the share of the index-th participant of the item
+	 */
+	protected abstract double itemPerHeadShare(int item, int index);
+
+	////////////////////////////////////
+	/// READ ACCESS FOR THE MAP VIEWS ///
+	//////////////////////////////////
+
+	BillLedgerViews getViews()
+	{
+		return views;
+	}
+
+	int getUserCount()
+	{
+		return userCount;
+	}
+
+	String getUserName(int user)
+	{
+		return userNames[user];
+	}
+
+	/**
+	 * @return the ordinal of the user or -1 if the user is not in the bill
+	 */
+	int getUserOrdinal(Object user)
+	{
+		Integer ordinal = userOrdinals.get(user);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	double getUserPercentage(int user)
+	{
+		computeIfDirty();
+		return userPercentage(user);
+	}
+
+	double getUserTipsAndTaxes(int user)
+	{
+		computeIfDirty();
+		return userTipsAndTaxes(user);
+	}
+
+	double getUserTotal(int user)
+	{
+		computeIfDirty();
+		return userTotal(user);
+	}
+
+	double getItemPerHeadShare(int item, int index)
+	{
+		computeIfDirty();
+		return itemPerHeadShare(item, index);
+	}
+
+	int getItemCount()
+	{
+		return itemCount;
+	}
+
+	String getItemName(int item)
+	{
+		return itemNames[item];
+	}
+
+	/**
+	 * @return the ordinal of the item or -1 if the item is not in the bill
+	 */
+	int getItemOrdinal(Object item)
+	{
+		Integer ordinal = itemOrdinals.get(item);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	ParticipantMask getItemParticipants(int item)
+	{
+		return itemParticipants[item];
+	}
+
+	boolean hasTipsAndTaxesAllocation()
+	{
+		computeIfDirty();
+		return hasTipsAndTaxesAllocation;
+	}
+}
@@ -0,0 +1,266 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read only Map views over a BillLedger. They are the shape of the calculated data at the JSON/API boundary.
+ * Nothing is copied: values are boxed only when a view is read as a Map, the user amounts can be read unboxed as IndexedAmounts.
+ */
+class BillLedgerViews {
+
+	private final BillLedger ledger;
+
+	private final Map<String,Map<String,Double>> itemsVsPerHeadContributions;
+
+	private final Map<String,Double> userVsPercentageContribInTheBill;
+
+	private final Map<String,Double> userVsTotalPerHeadContribution;
+
+	BillLedgerViews(final BillLedger ledger)
+	{
+		this.ledger = ledger;
+
+		this.userVsPercentageContribInTheBill = new AllUsersView() {
+			@Override
+			public double amountAt(int user) {
+				return ledger.getUserPercentage(user);
+			}
+		};
+
+		this.userVsTotalPerHeadContribution = new AllUsersView() {
+			@Override
+			public double amountAt(int user) {
+				return ledger.getUserTotal(user);
+			}
+		};
+
+		this.itemsVsPerHeadContributions = new ItemsView();
+	}
+
+	Map<String,Map<String,Double>> getItemsVsPerHeadContributions()
+	{
+		return itemsVsPerHeadContributions;
+	}
+
+	Map<String,Double> getUserVsPercentageContribInTheBill()
+	{
+		return userVsPercentageContribInTheBill;
+	}
+
+	Map<String,Double> getUserVsTotalPerHeadContribution()
+	{
+		return userVsTotalPerHeadContribution;
+	}
+
+	/**
+	 * A map of user name vs. amount. Entry i is the i-th user of the view, not necessarily the user with ordinal i
+	 */
+	private abstract class UserAmountsView extends AbstractMap<String,Double> implements IndexedAmounts {
+
+		abstract int count();
+
+		abstract int userAt(int index);
+
+		@Override
+		public abstract double amountAt(int index);
+
+		@Override
+		public String nameAt(int index) {
+			return ledger.getUserName(userAt(index));
+		}
+
+		/**
+		 * @return the index of the entry for this user, or -1
+		 */
+		abstract int indexOf(int user);
+
+		@Override
+		public int size() {
+			return count();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOfKey(key) >= 0;
+		}
+
+		@Override
+		public Double get(Object key) {
+			int index = indexOfKey(key);
+			return index < 0 ? null : amountAt(index);
+		}
+
+		private int indexOfKey(Object key) {
+			int user = ledger.getUserOrdinal(key);
+			return user < 0 ? -1 : indexOf(user);
+		}
+
+		@Override
+		public Set<Map.Entry<String,Double>> entrySet() {
+			return new AbstractSet<Map.Entry<String,Double>>() {
+				@Override
+				public int size() {
+					return count();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String,Double>> iterator() {
+					return new IndexIterator<Map.Entry<String,Double>>(count()) {
+						@Override
+						Map.Entry<String,Double> at(int index) {
+							return new SimpleImmutableEntry<>(nameAt(index), amountAt(index));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * One entry per user, in the order the users were added
+	 */
+	private abstract class AllUsersView extends UserAmountsView {
+
+		@Override
+		int count() {
+			return ledger.getUserCount();
+		}
+
+		@Override
+		int userAt(int index) {
+			return index;
+		}
+
+		@Override
+		int indexOf(int user) {
+			return user;
+		}
+	}
+
+	/**
+	 * The per head contributions of one item: one entry per participant
+	 */
+	private class ItemRowView extends UserAmountsView {
+
+		private final int item;
+
+		ItemRowView(int item) {
+			this.item = item;
+		}
+
+		@Override
+		int count() {
+			return ledger.getItemParticipants(item).count();
+		}
+
+		@Override
+		int userAt(int index) {
+			return ledger.getItemParticipants(item).select(index);
+		}
+
+		@Override
+		public double amountAt(int index) {
+			return ledger.getItemPerHeadShare(item, index);
+		}
+
+		@Override
+		int indexOf(int user) {
+			ParticipantMask participants = ledger.getItemParticipants(item);
+			return participants.contains(user) ? participants.rank(user) : -1;
+		}
+	}
+
+	/**
+	 * One entry per item, in the order the items were added, followed by tips and taxes when they are allocated
+	 */
+	private class ItemsView extends AbstractMap<String,Map<String,Double>> {
+
+		private final Map<String,Double> tipsAndTaxesRow = new AllUsersView() {
+			@Override
+			public double amountAt(int user) {
+				return ledger.getUserTipsAndTaxes(user);
+			}
+		};
+
+		@Override
+		public int size() {
+			return ledger.getItemCount() + (ledger.hasTipsAndTaxesAllocation() ? 1 : 0);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Map<String,Double> get(Object key) {
+			if(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES.equals(key))
+			{
+				return ledger.hasTipsAndTaxesAllocation() ? tipsAndTaxesRow : null;
+			}
+			int item = ledger.getItemOrdinal(key);
+			return item < 0 ? null : new ItemRowView(item);
+		}
+
+		@Override
+		public Set<Map.Entry<String,Map<String,Double>>> entrySet() {
+			return new AbstractSet<Map.Entry<String,Map<String,Double>>>() {
+				@Override
+				public int size() {
+					return ItemsView.this.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String,Map<String,Double>>> iterator() {
+					return new IndexIterator<Map.Entry<String,Map<String,Double>>>(ItemsView.this.size()) {
+						@Override
+						Map.Entry<String,Map<String,Double>> at(int index) {
+							if(index == ledger.getItemCount())
+							{
+								return new SimpleImmutableEntry<>(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, tipsAndTaxesRow);
+							}
+							return new SimpleImmutableEntry<String,Map<String,Double>>(ledger.getItemName(index), new ItemRowView(index));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private abstract static class IndexIterator<T> implements Iterator<T> {
+
+		private final int count;
+
+		private int next;
+
+		IndexIterator(int count) {
+			this.count = count;
+		}
+
+		abstract T at(int index);
+
+		@Override
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		@Override
+		public T next() {
+			if(next >= count)
+			{
+				throw new NoSuchElementException();
+			}
+			return at(next++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Calculated data is read only");
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Set;
+
+/**
+ * One step of a batch of changes to a bill. See BillSplitterService.applyOperations
+ * Which fields are used depends on the type of the operation, see the static methods below.
+ */
+public class BillOperationTO {
+
+	public enum OperationType {
+		ADD_USER,
+		ADD_ITEM,
+		SET_PARTICIPANTS,
+		SET_TIPS_AND_TAXES,
+		DELETE_ITEM,
+		EDIT_ITEM,
+		SET_PAYER
+	}
+
+	private OperationType type;
+
+	/**
+	 * User name for ADD_USER, item name for every item operation. Old item name for EDIT_ITEM.
+	 * For SET_PAYER, it can also be BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES
+	 */
+	private String name;
+
+	/**
+	 * New item name for EDIT_ITEM
+	 */
+	private String newName;
+
+	/**
+	 * Item amount for ADD_ITEM and EDIT_ITEM, tips and taxes for SET_TIPS_AND_TAXES
+	 */
+	private Double amount;
+
+	/**
+	 * Participants of the item for SET_PARTICIPANTS
+	 */
+	private Set<String> participants;
+
+	/**
+	 * User who paid for the item for SET_PAYER
+	 */
+	private String payer;
+
+	public BillOperationTO() {
+	}
+
+	public BillOperationTO(OperationType type, String name, String newName, Double amount, Set<String> participants) {
+		this.type = type;
+		this.name = name;
+		this.newName = newName;
+		this.amount = amount;
+		this.participants = participants;
+	}
+
+	public static BillOperationTO addUser(String name) {
+		return new BillOperationTO(OperationType.ADD_USER, name, null, null, null);
+	}
+
+	public static BillOperationTO addItem(String itemName, Double amount) {
+		return new BillOperationTO(OperationType.ADD_ITEM, itemName, null, amount, null);
+	}
+
+	/**
+	 * Participants that are not users of the bill yet are added, as in BillSplitterService.addContributionsForItem
+	 */
+	public static BillOperationTO setParticipants(String itemName, Set<String> participants) {
+		return new BillOperationTO(OperationType.SET_PARTICIPANTS, itemName, null, null, participants);
+	}
+
+	public static BillOperationTO setTipsAndTaxes(Double amount) {
+		return new BillOperationTO(OperationType.SET_TIPS_AND_TAXES, null, null, amount, null);
+	}
+
+	public static BillOperationTO deleteItem(String itemName) {
+		return new BillOperationTO(OperationType.DELETE_ITEM, itemName, null, null, null);
+	}
+
+	/**
+	 * Renames the item and changes its amount. Participants are kept
+	 */
+	public static BillOperationTO editItem(String oldName, String newName, Double newAmount) {
+		return new BillOperationTO(OperationType.EDIT_ITEM, oldName, newName, newAmount, null);
+	}
+
+	public static BillOperationTO setPayer(String itemName, String payer) {
+		BillOperationTO operation = new BillOperationTO(OperationType.SET_PAYER, itemName, null, null, null);
+		operation.setPayer(payer);
+		return operation;
+	}
+
+	public OperationType getType() {
+		return type;
+	}
+
+	public void setType(OperationType type) {
+		this.type = type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getNewName() {
+		return newName;
+	}
+
+	public void setNewName(String newName) {
+		this.newName = newName;
+	}
+
+	public Double getAmount() {
+		return amount;
+	}
+
+	public void setAmount(Double amount) {
+		this.amount = amount;
+	}
+
+	public Set<String> getParticipants() {
+		return participants;
+	}
+
+	public void setParticipants(Set<String> participants) {
+		this.participants = participants;
+	}
+
+	public String getPayer() {
+		return payer;
+	}
+
+	public void setPayer(String payer) {
+		this.payer = payer;
+	}
+}
@@ -1,14 +1,16 @@
 package com.ammofull.java.billsplitter.engine;
 
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.ammofull.java.billsplitter.api.BillSplitterService;
 
+/**
+ * Stateless and thread safe: all the state of a call is in the given bill, and the only scratch data, the settlement engine, is per thread.
+ * One instance can serve every caller
+ */
 public class BillSplitterServiceImpl implements BillSplitterService {
 	
 	/**
@@ -16,6 +18,13 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 	 */
 	public static final String ITEM_NAME_FOR_TIPS_AND_TAXES = "Tips and taxes";		
 
+	private static final ThreadLocal<SettlementEngine> SETTLEMENT_ENGINE = new ThreadLocal<SettlementEngine>() {
+		@Override
+		protected SettlementEngine initialValue() {
+			return new SettlementEngine();
+		}
+	};
+
 	@Override
 	public BillDetailsTO addUser(String name, BillDetailsTO oldBillDetailsTO) {	
 		
@@ -26,6 +35,7 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 		}
 		
 		validateUserNameOrItemName(name);		
+		BillLedger ledger = ledgerFor(billDetailsTO);
 		
 		// Add user to the set
 		boolean isAdded = billDetailsTO.getUsers().add(name);		
@@ -33,7 +43,9 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 			throw new IllegalArgumentException(name + " already added");
 		}	
 		
-		computeEntireBill(billDetailsTO);
+		// A new user does not participate in any item yet, so only the user based numbers change
+		ledger.addUser(name);
+		billDetailsTO.setLedger(ledger);
 		
 		return billDetailsTO;
 	}	
@@ -48,21 +60,22 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 		}
 		
 		validateUserNameOrItemName(itemName);
-		if(amount == null || amount.equals(0.0))
-		{
-			throw new IllegalArgumentException("Amount cannot be null or zero");
-		}
+		validateItemAmount(amount);
 				
 		if(billDetailsTO.getItemVsAmount().containsKey(itemName))
 		{
 			throw new IllegalArgumentException("Item name already present : " + itemName);
 		}	
+		BillLedger ledger = ledgerFor(billDetailsTO);
 		billDetailsTO.getItemVsAmount().put(itemName, amount);
 
 		// Reset participants for the new item
 		Set<String> participants = new HashSet<>();
 		billDetailsTO.getItemsVsParticipants().put(itemName, participants);		
-		computeEntireBill(billDetailsTO);
+		
+		// The new item has no participants, it only changes the total bill and hence the percentages
+		ledger.addItem(itemName, amount);
+		billDetailsTO.setLedger(ledger);
 		return billDetailsTO;	
 				
 	}	
@@ -106,14 +119,12 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 			throw new IllegalArgumentException(itemName + " not present. Call addItem method first");
 		}
 		
-		for(String item : items) {
-			if(item.equals(itemName)) {
-				billDetailsTO.getItemsVsParticipants().put(item, participants);
-				break;
-			}
-		}
+		BillLedger ledger = ledgerFor(billDetailsTO);
+		billDetailsTO.getItemsVsParticipants().put(itemName, participants);
 		
-		computeEntireBill(billDetailsTO);
+		// Only this item's split changes. The users' totals are patched with the difference when the bill is read next
+		ledger.setParticipants(itemName, participants);
+		billDetailsTO.setLedger(ledger);
 		
 		return billDetailsTO;
 	}	
@@ -132,13 +143,160 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 			billDetailsTO = new BillDetailsTO();
 		}
 		
-		billDetailsTO.setTipsAndTaxes(amount);			
-		computeEntireBill(billDetailsTO); 			
+		BillLedger ledger = ledgerFor(billDetailsTO);
+		billDetailsTO.setTipsAndTaxes(amount);
+		ledger.setTipsAndTaxes(amount);
+		billDetailsTO.setLedger(ledger);
 		return billDetailsTO;	
 		
 				
 	}
 	
+	@Override
+	public BillDetailsTO setPayerForItem(String itemName, String payer, BillDetailsTO oldBillDetailsTO) {
+		
+		if(oldBillDetailsTO == null)
+		{
+			throw new IllegalArgumentException("Bill cannot be null");
+		}
+		validatePayer(itemName, payer, oldBillDetailsTO.getItemVsAmount().keySet(), oldBillDetailsTO.getUsers());
+		
+		// Payers are not part of the split, so a ledger up to date before the change still is after it
+		BillLedger ledger = oldBillDetailsTO.getLedger();
+		oldBillDetailsTO.getItemVsPayer().put(itemName, payer);
+		if(ledger != null)
+		{
+			oldBillDetailsTO.setLedger(ledger);
+		}
+		return oldBillDetailsTO;
+	}
+	
+	@Override
+	public List<TransferTO> settleBills(List<BillDetailsTO> bills) {
+		
+		if(bills == null)
+		{
+			throw new IllegalArgumentException("Bills cannot be null");
+		}
+		
+		SettlementEngine settlementEngine = SETTLEMENT_ENGINE.get();
+		settlementEngine.clear();
+		for(BillDetailsTO billDetailsTO : bills)
+		{
+			if(billDetailsTO == null)
+			{
+				throw new IllegalArgumentException("Bill cannot be null");
+			}
+			ledgerFor(billDetailsTO);
+			settlementEngine.addBill(billDetailsTO);
+		}
+		return settlementEngine.settle();
+	}
+	
+	@Override
+	public BillDetailsTO applyOperations(List<BillOperationTO> operations, BillDetailsTO oldBillDetailsTO) {
+		
+		if(operations == null)
+		{
+			throw new IllegalArgumentException("Operations cannot be null");
+		}
+		
+		BillDetailsTO billDetailsTO = oldBillDetailsTO;
+		if(billDetailsTO == null)
+		{
+			billDetailsTO = new BillDetailsTO();
+		}
+		
+		validateOperations(operations, billDetailsTO);
+		applyValidOperations(operations, billDetailsTO);
+		
+		return billDetailsTO;
+	}
+	
+	/**
+	 * Applies operations already validated against the bill, e.g. by PersistentBill, to the bill and its ledger.
+	 * Every operation is recorded in the ledger, which computes them all on the next read
+	 */
+	static void applyValidOperations(List<BillOperationTO> operations, BillDetailsTO billDetailsTO) {
+		
+		BillLedger ledger = ledgerFor(billDetailsTO);
+		for(BillOperationTO operation : operations)
+		{
+			switch(operation.getType())
+			{
+			case ADD_USER:
+				billDetailsTO.getUsers().add(operation.getName());
+				ledger.addUser(operation.getName());
+				break;
+			case ADD_ITEM:
+				billDetailsTO.getItemVsAmount().put(operation.getName(), operation.getAmount());
+				billDetailsTO.getItemsVsParticipants().put(operation.getName(), new HashSet<String>());
+				ledger.addItem(operation.getName(), operation.getAmount());
+				break;
+			case SET_PARTICIPANTS:
+				billDetailsTO.getUsers().addAll(operation.getParticipants());
+				billDetailsTO.getItemsVsParticipants().put(operation.getName(), operation.getParticipants());
+				ledger.setParticipants(operation.getName(), operation.getParticipants());
+				break;
+			case SET_TIPS_AND_TAXES:
+				billDetailsTO.setTipsAndTaxes(operation.getAmount());
+				ledger.setTipsAndTaxes(operation.getAmount());
+				break;
+			case DELETE_ITEM:
+				billDetailsTO.getItemVsAmount().remove(operation.getName());
+				billDetailsTO.getItemsVsParticipants().remove(operation.getName());
+				billDetailsTO.getItemVsPayer().remove(operation.getName());
+				ledger.deleteItem(operation.getName());
+				break;
+			case EDIT_ITEM:
+				renameItem(operation.getName(), operation.getNewName(), operation.getAmount(), billDetailsTO);
+				ledger.editItem(operation.getName(), operation.getNewName(), operation.getAmount());
+				break;
+			case SET_PAYER:
+				billDetailsTO.getItemVsPayer().put(operation.getName(), operation.getPayer());
+				break;
+			}
+		}
+		billDetailsTO.setLedger(ledger);
+	}
+	
+	/**
+	 * Moves the participants and the payer of the item to its new name and sets its new amount
+	 */
+	private static void renameItem(String oldName, String newName, double newAmount, BillDetailsTO billDetailsTO) {
+		Set<String> participants = billDetailsTO.getItemsVsParticipants().remove(oldName);
+		billDetailsTO.getItemVsAmount().remove(oldName);
+		billDetailsTO.getItemVsAmount().put(newName, newAmount);
+		billDetailsTO.getItemsVsParticipants().put(newName, participants);
+		String payer = billDetailsTO.getItemVsPayer().remove(oldName);
+		if(payer != null)
+		{
+			billDetailsTO.getItemVsPayer().put(newName, payer);
+		}
+	}
+	
+	@Override
+	public BillDetailsTO computeBill(BillDetailsTO billDetailsTO) {
+		
+		if(billDetailsTO == null)
+		{
+			throw new IllegalArgumentException("Bill cannot be null");
+		}
+		ledgerFor(billDetailsTO);
+		return billDetailsTO;
+	}
+	
+	@Override
+	public BillDetailsTO computeNow(BillDetailsTO billDetailsTO) {
+		
+		if(billDetailsTO == null)
+		{
+			throw new IllegalArgumentException("Bill cannot be null");
+		}
+		ledgerFor(billDetailsTO).computeIfDirty();
+		return billDetailsTO;
+	}
+	
 	@Override
 	public void printSummaryFinalReport(BillDetailsTO billDetailsTO) {
 		
@@ -181,200 +339,186 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 	}	
 	
 	/**
-	 * 1) Calculate per head contribution for every item
-	 * 2) Calculate total per head contribution for every user using 1
-	 * 3) Calculate % contribution for every user so that tips and taxes can be allocated accordingly, using 2
-	 * 4) Calculate tips and taxes allocation using 3
+	 * Returns the ledger of the bill. A bill that does not have one yet (new or read from JSON) gets one built from its user entered data.
+	 * Call this before touching the user entered data and set the ledger again once the change is applied to both, see BillDetailsTO.setLedger
 	 */
-	private void computeEntireBill(BillDetailsTO billDetailsTO) {
-		
-		// To calculate item contribution, at least one item has to be present
-		if(!billDetailsTO.getItemsVsParticipants().isEmpty())
+	private static BillLedger ledgerFor(BillDetailsTO billDetailsTO) {
+		if(billDetailsTO.getLedger() == null)
 		{
-			computePerHeadContributionForItem(billDetailsTO);
-		}	
-
-		// To calculate any user based number, there has to be at least one user
-		if(!billDetailsTO.getUsers().isEmpty())
-		{
-			computePerHeadContributionForTotalBill(billDetailsTO);	
-			computePerHeadPercentageContributionForBill(billDetailsTO);
-		}	
-		
-		if(!billDetailsTO.getUsers().isEmpty() &&
-				!billDetailsTO.getItemsVsParticipants().isEmpty() &&				
-				!billDetailsTO.getTipsAndTaxes().equals(0.0))
-		{
-			computeTipsAndTaxesAllocation(billDetailsTO);
+			computeEntireBill(billDetailsTO);
 		}
+		return billDetailsTO.getLedger();
 	}
-
+	
 	/**
-	 * Method to calculate per head contribution for an item
-	 * It will evenly divide the amount among all the participants.
+	 * Rebuilds the ledger from the user entered data: every user, every item with its amount and participants and tips and taxes.
+	 * Everything is dirty in the new ledger, so the bill is computed entirely on the next read
 	 */
-	private void computePerHeadContributionForItem(BillDetailsTO billDetailsTO) {
+	static void computeEntireBill(BillDetailsTO billDetailsTO) {
 		
-		Set<String> items = billDetailsTO.getItemVsAmount().keySet();
-		Map<String,Set<String>> itemsAndParticipants = billDetailsTO.getItemsVsParticipants();
-		Map<String,Map<String,Double>> itemsAndPerHeadContributions = billDetailsTO.getItemsVsPerHeadContributions();
+		BillLedger ledger = BillLedger.newLedger(billDetailsTO.getCalculationMode());
 		
-		for (Iterator<String> iterator = items.iterator(); iterator.hasNext();) {
-			String itemName = iterator.next();
-			
-			Set<String> participants = itemsAndParticipants.get(itemName);
-			
-			// Reset per head contributions for this item before recalculating
-			itemsAndPerHeadContributions.remove(itemName);
-			Map<String,Double> perHeadContibutions = new HashMap<>();			
-			
-			if(participants.size() != 0) {				
-				// Get per head contribution number
-				Double amount = billDetailsTO.getItemVsAmount().get(itemName);
-				double perHeadContribution = amount / participants.size();
-				
-				// Allocate the per head contribution to each participant
-				for(String participant : participants) {
-					perHeadContibutions.put(participant,perHeadContribution);
-				}				
-			} 
-			
-			itemsAndPerHeadContributions.put(itemName, perHeadContibutions);			
-		}						
+		for(String user : billDetailsTO.getUsers())
+		{
+			ledger.addUser(user);
+		}
+		
+		for(Map.Entry<String,Set<String>> itemAndParticipants : billDetailsTO.getItemsVsParticipants().entrySet())
+		{
+			String item = itemAndParticipants.getKey();
+			ledger.addItem(item, billDetailsTO.getItemVsAmount().get(item));
+			ledger.setParticipants(item, itemAndParticipants.getValue());
+		}
+		
+		Double tipsAndTaxes = billDetailsTO.getTipsAndTaxes();
+		ledger.setTipsAndTaxes(tipsAndTaxes == null ? 0.0 : tipsAndTaxes);
+		billDetailsTO.setLedger(ledger);
 	}
 	
 	/**
-	 * This method computes the total per head contribution. It changes when an item is added or a participant is added
-	 * @param perHeadContributionsForAnItem
+	 * Checks every operation of the batch against the bill as it will be when the operation is applied, without changing the bill.
+	 * The checks are the same as the ones of the single step methods
 	 */
-	private void computePerHeadContributionForTotalBill(BillDetailsTO billDetailsTO) {
+	private void validateOperations(List<BillOperationTO> operations, BillDetailsTO billDetailsTO) {
 		
-		Map<String,Map<String,Double>> itemsAndPerHeadContributions = billDetailsTO.getItemsVsPerHeadContributions();
-		Set<String> items = itemsAndPerHeadContributions.keySet();
+		Set<String> users = new HashSet<>(billDetailsTO.getUsers());
+		Set<String> items = new HashSet<>(billDetailsTO.getItemVsAmount().keySet());
 		
-		// Reset userVsTotalContribution before calculating
-		Map<String,Double> userVsTotalContribution = new HashMap<>();
-		for(String user: billDetailsTO.getUsers())
+		for(int index = 0; index < operations.size(); index++)
 		{
-			userVsTotalContribution.put(user, 0.0);
-		}
-		
-		// Loop through all items and get the contribution for every user for the item
-		// Increment the total per head contribution for every user using the above traversal
-		for(String item : items) {
-			Map<String,Double> userVsContributionForItem = itemsAndPerHeadContributions.get(item);
+			BillOperationTO operation = operations.get(index);
+			try
+			{
+				validateOperation(operation, users, items);
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new InvalidOperationException(index, e.getMessage());
+			}
 			
-			for(String user : userVsContributionForItem.keySet())
+			// The next operations are checked against the bill as it is after this one
+			switch(operation.getType())
 			{
-				Double contributionForUser = userVsTotalContribution.get(user);
-				if(contributionForUser == null) 
-				{
-					contributionForUser = 0.0;
-				}
-				contributionForUser += userVsContributionForItem.get(user);
-				userVsTotalContribution.put(user, contributionForUser);
-			}			
+			case ADD_USER:
+				users.add(operation.getName());
+				break;
+			case ADD_ITEM:
+				items.add(operation.getName());
+				break;
+			case SET_PARTICIPANTS:
+				users.addAll(operation.getParticipants());
+				break;
+			case DELETE_ITEM:
+				items.remove(operation.getName());
+				break;
+			case EDIT_ITEM:
+				items.remove(operation.getName());
+				items.add(operation.getNewName());
+				break;
+			default:
+				break;
+			}
 		}
-		
-		billDetailsTO.setUserVsTotalPerHeadContribution(userVsTotalContribution);
-	}	
-
+	}
+	
 	/**
-	 * In order to divide tips and taxes fairly based on the user's % contribution in the total bill, 
-	 * this method computes that percentage per user. Note that total per head contribution should be available
-	 * before computing this
+	 * Checks one operation against the users and items of the bill it applies to, without changing them
 	 */
-	private void computePerHeadPercentageContributionForBill(BillDetailsTO billDetailsTO) 
-	{			
-		// Reset user vs percent contrib before calculating
-		Map<String,Double> userVsPercentContrib = new HashMap<>();
-		for(String user : billDetailsTO.getUsers())
-		{
-			userVsPercentContrib.put(user, 0.00);
-		}
-
-		// Compute total bill before tips and taxes so that % contrib can be determined
-		double totalBillBeforeTipsAndTaxes = 0.0;
-		Set<String> items = billDetailsTO.getItemsVsParticipants().keySet();
-
-		for(String item : items)
-		{	
-			Double amount = billDetailsTO.getItemVsAmount().get(item);
-			// We dont need any check for tips and taxes here because that item is never added to the map ItemVsParticipants
-			totalBillBeforeTipsAndTaxes += amount;			
-		}
-
+	static void validateOperation(BillOperationTO operation, Set<String> users, Set<String> items) {
 		
-		boolean isTipsAndTaxesRemoved = false;
-		if(billDetailsTO.getItemsVsPerHeadContributions().containsKey(ITEM_NAME_FOR_TIPS_AND_TAXES))
+		if(operation == null || operation.getType() == null)
 		{
-			// We need to remove tips and taxes, re-calculate per head contrib before proceeding with % calc
-			billDetailsTO.getItemsVsPerHeadContributions().remove(ITEM_NAME_FOR_TIPS_AND_TAXES);
-			isTipsAndTaxesRemoved = true;
-			computePerHeadContributionForTotalBill(billDetailsTO);
+			throw new IllegalArgumentException("Operation type cannot be null");
 		}
-		Map<String,Double> userVsTotalPerHeadContribution = billDetailsTO.getUserVsTotalPerHeadContribution();
-
-		// Compute percentage contrib per user based on total
-		if(totalBillBeforeTipsAndTaxes != 0)
+		String name = operation.getName();
+		switch(operation.getType())
 		{
-			for(String user : userVsTotalPerHeadContribution.keySet())
+		case ADD_USER:
+			validateUserNameOrItemName(name);
+			if(users.contains(name))
 			{
-				Double totalContribForThisUser = userVsTotalPerHeadContribution.get(user);
-				Double percentAllocationForThisUser = totalContribForThisUser/totalBillBeforeTipsAndTaxes*100;
-				
-				// Math to remove extra decimals and keep it to 2 decimal places
-				Integer percentAllocTemp = (int)(percentAllocationForThisUser * 100);
-				percentAllocationForThisUser = percentAllocTemp / 100.0;
-				
-				userVsPercentContrib.put(user, percentAllocationForThisUser);				
-			}										
+				throw new IllegalArgumentException(name + " already added");
+			}
+			break;
+		case ADD_ITEM:
+			validateUserNameOrItemName(name);
+			validateItemAmount(operation.getAmount());
+			if(items.contains(name))
+			{
+				throw new IllegalArgumentException("Item name already present : " + name);
+			}
+			break;
+		case SET_PARTICIPANTS:
+			validateUserNameOrItemName(name);
+			if(operation.getParticipants() == null || operation.getParticipants().isEmpty())
+			{
+				throw new IllegalArgumentException("Participants cannot be null or empty");
+			}
+			validateItemIsPresent(name, items);
+			for(String participant : operation.getParticipants())
+			{
+				validateUserNameOrItemName(participant);
+			}
+			break;
+		case SET_TIPS_AND_TAXES:
+			if(operation.getAmount() == null)
+			{
+				throw new IllegalArgumentException("Amount cannot be null");
+			}
+			break;
+		case DELETE_ITEM:
+			validateItemIsPresent(name, items);
+			break;
+		case EDIT_ITEM:
+			validateItemIsPresent(name, items);
+			validateUserNameOrItemName(operation.getNewName());
+			validateItemAmount(operation.getAmount());
+			if(!name.equals(operation.getNewName()) && items.contains(operation.getNewName()))
+			{
+				throw new IllegalArgumentException("Item name already present : " + operation.getNewName());
+			}
+			break;
+		case SET_PAYER:
+			validatePayer(name, operation.getPayer(), items, users);
+			break;
 		}
-		
-		billDetailsTO.setUserVsPercentageContribInTheBill(userVsPercentContrib);
-		
-		if(isTipsAndTaxesRemoved)
+	}
+	
+	private static void validateItemAmount(Double amount) {
+		if(amount == null || amount.equals(0.0))
 		{
-			computeTipsAndTaxesAllocation(billDetailsTO);
+			throw new IllegalArgumentException("Amount cannot be null or zero");
 		}
-						
-	}	
+	}
 	
 	/**
-	 * Using percentage contrib, allocate tips and taxes among all users
-	 * Re-calculate per head total contrib based on this allocation
+	 * The payer has to be a user and the item an item of the bill, or tips and taxes
 	 */
-	private void computeTipsAndTaxesAllocation(BillDetailsTO billDetailsTO)
-	{
-		Double tipsAndTaxes = billDetailsTO.getTipsAndTaxes();
-		
-		Map<String,Double> userVsPercentageContrib = billDetailsTO.getUserVsPercentageContribInTheBill();
-		
-		Map<String,Double> userVsTipsAndTaxesContrib = new HashMap<>();
-		
-		// Allocate amount as per percentage contrib for each user
-		for(String user : userVsPercentageContrib.keySet()) 
+	private static void validatePayer(String itemName, String payer, Set<String> items, Set<String> users) {
+		if(!ITEM_NAME_FOR_TIPS_AND_TAXES.equals(itemName))
 		{
-			Double tipAllocationForThisUser = userVsPercentageContrib.get(user)*tipsAndTaxes/100;
-			
-			// Restrict to 2 decimals.
-			Integer tipAllocationTemp = (int)(tipAllocationForThisUser * 100);
-			tipAllocationForThisUser = tipAllocationTemp / 100.0;
-			userVsTipsAndTaxesContrib.put(user, tipAllocationForThisUser);
+			validateUserNameOrItemName(itemName);
+			validateItemIsPresent(itemName, items);
+		}
+		validateUserNameOrItemName(payer);
+		if(!users.contains(payer))
+		{
+			throw new IllegalArgumentException(payer + " is not a user of the bill. Call addUser method first");
+		}
+	}
+	
+	private static void validateItemIsPresent(String itemName, Set<String> items) {
+		if(!items.contains(itemName))
+		{
+			throw new IllegalArgumentException(itemName + " not present. Call addItem method first");
 		}
-		
-		billDetailsTO.getItemsVsPerHeadContributions().put(ITEM_NAME_FOR_TIPS_AND_TAXES, userVsTipsAndTaxesContrib);
-		
-		// Once tips and taxes are calculated, the per head contribution will change. 
-		// The percent contrib will not change as it does not include tips and taxes
-		computePerHeadContributionForTotalBill(billDetailsTO);		
 	}
 	
 	/**
 	 * If input is null or empty, it throws IllegalArgumentException
 	 * @param name
 	 */
-	private void validateUserNameOrItemName(String name) {
+	private static void validateUserNameOrItemName(String name) {
 		if(name == null) {
 			throw new IllegalArgumentException("name cannot be null");
 		}
@@ -388,31 +532,97 @@ public class BillSplitterServiceImpl implements BillSplitterService {
 
 	@Override
 	public BillDetailsTO deleteItem(String itemName, BillDetailsTO oldBillDetailsTO) {
-		// TODO Auto-generated method stub
-		return null;
+		
+		BillDetailsTO billDetailsTO = oldBillDetailsTO;
+		if(billDetailsTO == null)
+		{
+			billDetailsTO = new BillDetailsTO();
+		}
+		validateItemIsPresent(itemName, billDetailsTO.getItemVsAmount().keySet());
+		
+		BillLedger ledger = ledgerFor(billDetailsTO);
+		billDetailsTO.getItemVsAmount().remove(itemName);
+		billDetailsTO.getItemsVsParticipants().remove(itemName);
+		billDetailsTO.getItemVsPayer().remove(itemName);
+		
+		// Only the item's participants lose its split. The total bill changes, so every user's % is computed again on the next read
+		ledger.deleteItem(itemName);
+		billDetailsTO.setLedger(ledger);
+		
+		return billDetailsTO;
 	}
 
 	@Override
 	public BillDetailsTO editItem(String oldName, String newName,double newAmount, BillDetailsTO oldBillDetailsTO) {
-		// TODO Auto-generated method stub
-		return null;
+		
+		BillDetailsTO billDetailsTO = oldBillDetailsTO;
+		if(billDetailsTO == null)
+		{
+			billDetailsTO = new BillDetailsTO();
+		}
+		validateOperation(BillOperationTO.editItem(oldName, newName, newAmount), billDetailsTO.getUsers(), billDetailsTO.getItemVsAmount().keySet());
+		
+		BillLedger ledger = ledgerFor(billDetailsTO);
+		renameItem(oldName, newName, newAmount, billDetailsTO);
+		
+		// Only this item's split changes, its participants are kept
+		ledger.editItem(oldName, newName, newAmount);
+		billDetailsTO.setLedger(ledger);
+		
+		return billDetailsTO;
 	}
 
 	@Override
 	public BillDetailsTO deleteTipsAndTaxes(BillDetailsTO oldBillDetailsTO) {
-		// TODO Auto-generated method stub
-		return null;
+		
+		BillDetailsTO billDetailsTO = addTipsAndTaxes(0.0, oldBillDetailsTO);
+		BillLedger ledger = billDetailsTO.getLedger();
+		billDetailsTO.getItemVsPayer().remove(ITEM_NAME_FOR_TIPS_AND_TAXES);
+		billDetailsTO.setLedger(ledger);
+		return billDetailsTO;
 	}
 
 	@Override
 	public BillDetailsTO editTipsAndTaxes(double newAmount, BillDetailsTO oldBillDetailsTO) {
-		// TODO Auto-generated method stub
-		return null;
+		
+		// Tips and taxes are a single amount, so editing them is setting them again
+		return addTipsAndTaxes(newAmount, oldBillDetailsTO);
 	}
 
 	@Override
 	public BillDetailsTO editContributionsForItem(String itemName,List<Boolean> participants, BillDetailsTO oldBillDetailsTO) {
-		// TODO Auto-generated method stub
-		return null;
+		
+		BillDetailsTO billDetailsTO = oldBillDetailsTO;
+		if(billDetailsTO == null)
+		{
+			billDetailsTO = new BillDetailsTO();
+		}
+		validateItemIsPresent(itemName, billDetailsTO.getItemVsAmount().keySet());
+		if(participants == null || participants.contains(null))
+		{
+			throw new IllegalArgumentException("Participants cannot be null");
+		}
+		if(participants.size() != billDetailsTO.getUsers().size())
+		{
+			throw new IllegalArgumentException("Expected one flag per user : " + billDetailsTO.getUsers().size() + ", got " + participants.size());
+		}
+		if(!participants.contains(Boolean.TRUE))
+		{
+			throw new IllegalArgumentException("At least one user has to participate in " + itemName);
+		}
+		
+		// The ledger interns the users in the order they were added, so flag i is the user with ordinal i
+		BillLedger ledger = ledgerFor(billDetailsTO);
+		ParticipantMask participantMask = ParticipantMask.of(participants);
+		Set<String> participantNames = new HashSet<>();
+		for(int user = participantMask.next(0); user >= 0; user = participantMask.next(user + 1))
+		{
+			participantNames.add(ledger.getUserName(user));
+		}
+		billDetailsTO.getItemsVsParticipants().put(itemName, participantNames);
+		ledger.setParticipants(itemName, participantMask);
+		billDetailsTO.setLedger(ledger);
+		
+		return billDetailsTO;
 	}	
 }
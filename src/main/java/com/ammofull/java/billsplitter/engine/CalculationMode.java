@@ -0,0 +1,19 @@
+package com.ammofull.java.billsplitter.engine;
+
+/**
+ * How the engine does the arithmetic of a bill
+ */
+public enum CalculationMode {
+	
+	/**
+	 * Amounts are doubles. Percentages and tips and taxes allocation are truncated to 2 decimals, so a few cents may be lost. 
+	 * This is the default
+	 */
+	DECIMAL,
+	
+	/**
+	 * Amounts are kept as long cents through the whole computation. Every split uses the largest remainder method, 
+	 * so the shares of an item, the percentages and the tips and taxes allocation always add up to their total
+	 */
+	FIXED_POINT_CENTS
+}
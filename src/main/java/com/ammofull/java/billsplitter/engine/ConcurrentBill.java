@@ -0,0 +1,337 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bill shared by threads, e.g. by the participants editing it at the same time.
+ * 1) Readers never block: the current version is an immutable PersistentBill published through an AtomicReference,
+ *    and its calculated data is computed by the first readers that need it and published with a compare and set, the first result is kept
+ * 2) Writers lock the items their operations touch, with one lock per stripe of items. Operations on items of different
+ *    stripes run in parallel: each applies itself to the latest version and publishes the result with a compare and set,
+ *    applying itself again on the newer version if another writer published first.
+ *    Operations on the same item queue on its stripe, in order, instead of retrying
+ * 3) The calculated data is carried forward between versions: one working BillDetailsTO, with its ledger, follows the versions.
+ *    A reader that takes the working bill (with tryLock) applies the operations published since the working version to it as deltas,
+ *    then hands the readers a copy. A reader that finds it taken, by another reader or by a writer catching up, does not wait:
+ *    it computes its version from the PersistentBill, on its own
+ *
+ * Writers publishing at the same time do serialize on the compare and set, but only on it: a retry applies the operations
+ * to a PersistentBill again, O(log n) per operation, and computes nothing. The calculated data is left to the readers,
+ * which skip the versions nobody reads. Adding a user and setting tips and taxes lock no item, they only go through the compare and set
+ */
+public class ConcurrentBill {
+
+	public static final int DEFAULT_LOCK_STRIPES = 64;
+
+	/**
+	 * Operations published since the working version from which a writer brings it up to date,
+	 * so that the versions nobody reads do not pile up behind it
+	 */
+	private static final int MAX_PENDING_OPERATIONS = 256;
+
+	private final ReentrantLock[] itemLocks;
+
+	private final AtomicReference<Version> current;
+
+	/**
+	 * Guards working and the versions' chain back to workingVersion. Only ever taken with tryLock by the readers
+	 */
+	final ReentrantLock workingLock = new ReentrantLock();
+
+	/**
+	 * The bill as of workingVersion, computed or not. Never handed out
+	 */
+	private BillDetailsTO working;
+
+	private volatile Version workingVersion;
+
+	public ConcurrentBill(PersistentBill initialVersion) {
+		this(initialVersion, DEFAULT_LOCK_STRIPES);
+	}
+
+	public ConcurrentBill(PersistentBill initialVersion, int lockStripes) {
+		if(initialVersion == null)
+		{
+			throw new IllegalArgumentException("Initial version cannot be null");
+		}
+		if(lockStripes <= 0)
+		{
+			throw new IllegalArgumentException("Lock stripes must be positive");
+		}
+		itemLocks = new ReentrantLock[lockStripes];
+		for(int stripe = 0; stripe < lockStripes; stripe++)
+		{
+			itemLocks[stripe] = new ReentrantLock();
+		}
+		Version version = new Version(initialVersion, 0, null, Collections.<BillOperationTO>emptyList());
+		current = new AtomicReference<>(version);
+		working = initialVersion.toBillDetailsTO();
+		workingVersion = version;
+	}
+
+	/**
+	 * Lock free
+	 * @return the current version, which does not change
+	 */
+	public PersistentBill getSnapshot() {
+		return current.get().bill;
+	}
+
+	/**
+	 * Lock free
+	 * @return the number of operations applied since this bill was created
+	 */
+	public long getVersionNumber() {
+		return current.get().number;
+	}
+
+	/**
+	 * Lock free. The first readers of a new version may each compute it, the first result published is kept
+	 * @return the computed current version. It is shared by all the readers of the version and must not be changed
+	 */
+	public BillDetailsTO getComputedBill() {
+		return current.get().computed();
+	}
+
+	/**
+	 * Validates the operation against the version it is applied to, see PersistentBill.apply
+	 * @return the version published by this operation
+	 */
+	public PersistentBill apply(BillOperationTO operation) {
+		return applyAll(Collections.singletonList(operation));
+	}
+
+	/**
+	 * The operations are published as one version: readers see all of them or none.
+	 * If one is not valid, an InvalidOperationException tells which one and nothing is published
+	 * @return the version published by these operations
+	 */
+	public PersistentBill applyAll(List<BillOperationTO> operations) {
+		if(operations == null)
+		{
+			throw new IllegalArgumentException("Operations cannot be null");
+		}
+		int[] stripes = stripesOf(operations);
+		// Always in ascending order, so that two writers cannot wait for each other
+		for(int stripe : stripes)
+		{
+			itemLocks[stripe].lock();
+		}
+		Version published;
+		try
+		{
+			while(true)
+			{
+				Version version = current.get();
+				PersistentBill bill = version.bill.applyAll(operations);
+				published = new Version(bill, version.number + operations.size(), version, new ArrayList<>(operations));
+				if(current.compareAndSet(version, published))
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			for(int i = stripes.length - 1; i >= 0; i--)
+			{
+				itemLocks[stripes[i]].unlock();
+			}
+		}
+		Version caughtUp = workingVersion;
+		// Skipped if a reader or another writer is bringing the working bill up to date already
+		if(caughtUp != null && published.number - caughtUp.number > MAX_PENDING_OPERATIONS && workingLock.tryLock())
+		{
+			try
+			{
+				catchUp(published);
+			}
+			catch(RuntimeException e)
+			{
+				// The operations are published, the readers compute the next version from scratch (see catchUp)
+			}
+			finally
+			{
+				workingLock.unlock();
+			}
+		}
+		return published.bill;
+	}
+
+	/**
+	 * Computes the version from the working bill if it is free and the version follows it, else from scratch. Never waits
+	 */
+	private BillDetailsTO compute(Version version) {
+		if(workingLock.tryLock())
+		{
+			try
+			{
+				BillDetailsTO published = version.computed.get();
+				if(published != null)
+				{
+					return published;
+				}
+				if(catchUp(version))
+				{
+					working.getLedger().computeIfDirty();
+					return working.copy();
+				}
+				if(workingVersion == null)
+				{
+					// The working bill was lost (see catchUp), it starts again from this version
+					BillDetailsTO computed = computeFromScratch(version);
+					working = computed.copy();
+					workingVersion = version;
+					return computed;
+				}
+			}
+			finally
+			{
+				workingLock.unlock();
+			}
+		}
+		return computeFromScratch(version);
+	}
+
+	private static BillDetailsTO computeFromScratch(Version version) {
+		BillDetailsTO computed = version.bill.toBillDetailsTO();
+		computed.getLedger().computeIfDirty();
+		return computed;
+	}
+
+	/**
+	 * Applies the operations published since the working version up to the given one to the working bill, under workingLock
+	 * @return false, with nothing applied, if the given version does not follow the working version
+	 */
+	private boolean catchUp(Version version) {
+		if(workingVersion == null)
+		{
+			return false;
+		}
+		List<Version> pending = new ArrayList<>();
+		Version step = version;
+		while(step != workingVersion)
+		{
+			if(step == null)
+			{
+				return false;
+			}
+			pending.add(step);
+			step = step.base;
+		}
+		try
+		{
+			for(int i = pending.size() - 1; i >= 0; i--)
+			{
+				BillSplitterServiceImpl.applyValidOperations(pending.get(i).operations, working);
+			}
+		}
+		catch(RuntimeException e)
+		{
+			// Half applied: the next reader computes its version from scratch and starts a new working bill from it
+			working = null;
+			workingVersion = null;
+			throw e;
+		}
+		workingVersion = version;
+		// The working bill holds what the older versions did, they are not needed to compute the newer ones
+		version.base = null;
+		version.operations = null;
+		return true;
+	}
+
+	/**
+	 * @return the distinct stripes of the items touched by the operations, ascending
+	 */
+	private int[] stripesOf(List<BillOperationTO> operations) {
+		TreeSet<Integer> stripes = new TreeSet<>();
+		for(BillOperationTO operation : operations)
+		{
+			if(operation == null || operation.getType() == null)
+			{
+				// Rejected by the validation
+				continue;
+			}
+			switch(operation.getType())
+			{
+			case ADD_ITEM:
+			case SET_PARTICIPANTS:
+			case DELETE_ITEM:
+			case SET_PAYER:
+				stripes.add(stripeOf(operation.getName()));
+				break;
+			case EDIT_ITEM:
+				stripes.add(stripeOf(operation.getName()));
+				stripes.add(stripeOf(operation.getNewName()));
+				break;
+			default:
+				break;
+			}
+		}
+		int[] result = new int[stripes.size()];
+		int i = 0;
+		for(Integer stripe : stripes)
+		{
+			result[i++] = stripe;
+		}
+		return result;
+	}
+
+	private int stripeOf(String itemName) {
+		if(itemName == null)
+		{
+			return 0;
+		}
+		// Spread the hash as HashMap does, so that names with close hashes do not share a stripe
+		int hash = itemName.hashCode();
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % itemLocks.length;
+	}
+
+	/**
+	 * A published version and its calculated data, computed on the first read
+	 */
+	private class Version {
+
+		private final PersistentBill bill;
+
+		private final long number;
+
+		/**
+		 * The version these operations were applied to, until the working bill has caught up with this one. Guarded by workingLock
+		 */
+		private Version base;
+
+		private List<BillOperationTO> operations;
+
+		/**
+		 * Computed before it is published, so that readers sharing it never compute it themselves
+		 */
+		private final AtomicReference<BillDetailsTO> computed = new AtomicReference<>();
+
+		Version(PersistentBill bill, long number, Version base, List<BillOperationTO> operations) {
+			this.bill = bill;
+			this.number = number;
+			this.base = base;
+			this.operations = operations;
+		}
+
+		BillDetailsTO computed() {
+			BillDetailsTO billDetailsTO = computed.get();
+			if(billDetailsTO == null)
+			{
+				billDetailsTO = compute(this);
+				if(!computed.compareAndSet(null, billDetailsTO))
+				{
+					billDetailsTO = computed.get();
+				}
+			}
+			return billDetailsTO;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Ledger for CalculationMode.DECIMAL. Amounts are doubles, an item is split evenly
+ * and the percentages and tips and taxes allocation are truncated to 2 decimals
+ */
+class DecimalBillLedger extends BillLedger {
+
+	/**
+	 * Sum of the user's per head contributions in all items, tips and taxes excluded
+	 */
+	private double[] userItemsSubtotal = new double[INITIAL_CAPACITY];
+
+	/**
+	 * % contribution of the user in the bill before tips and taxes
+	 */
+	private double[] userPercentage = new double[INITIAL_CAPACITY];
+
+	/**
+	 * The user's part of the tips and taxes. Only meaningful when tips and taxes are allocated
+	 */
+	private double[] userTipsAndTaxes = new double[INITIAL_CAPACITY];
+
+	/**
+	 * Final figure for the user: items subtotal plus tips and taxes
+	 */
+	private double[] userTotal = new double[INITIAL_CAPACITY];
+
+	private double[] itemAmounts = new double[INITIAL_CAPACITY];
+
+	/**
+	 * As an item is split evenly, all the non zero cells of its row in the contribution matrix hold this value
+	 */
+	private double[] itemPerHeadShare = new double[INITIAL_CAPACITY];
+
+	/**
+	 * Sum of all item amounts, tips and taxes excluded
+	 */
+	private double totalBillBeforeTipsAndTaxes;
+
+	DecimalBillLedger()
+	{
+	}
+
+	private DecimalBillLedger(DecimalBillLedger other)
+	{
+		super(other);
+		userItemsSubtotal = other.userItemsSubtotal.clone();
+		userPercentage = other.userPercentage.clone();
+		userTipsAndTaxes = other.userTipsAndTaxes.clone();
+		userTotal = other.userTotal.clone();
+		itemAmounts = other.itemAmounts.clone();
+		itemPerHeadShare = other.itemPerHeadShare.clone();
+		totalBillBeforeTipsAndTaxes = other.totalBillBeforeTipsAndTaxes;
+	}
+
+	@Override
+	BillLedger copy()
+	{
+		return new DecimalBillLedger(this);
+	}
+
+	@Override
+	protected void growUsers(int capacity)
+	{
+		userItemsSubtotal = Arrays.copyOf(userItemsSubtotal, capacity);
+		userPercentage = Arrays.copyOf(userPercentage, capacity);
+		userTipsAndTaxes = Arrays.copyOf(userTipsAndTaxes, capacity);
+		userTotal = Arrays.copyOf(userTotal, capacity);
+	}
+
+	@Override
+	protected void growItems(int capacity)
+	{
+		itemAmounts = Arrays.copyOf(itemAmounts, capacity);
+		itemPerHeadShare = Arrays.copyOf(itemPerHeadShare, capacity);
+	}
+
+	@Override
+	protected void addItemAmount(int item, double amount)
+	{
+		itemAmounts[item] = amount;
+		itemPerHeadShare[item] = 0.0;
+		totalBillBeforeTipsAndTaxes += amount;
+	}
+
+	@Override
+	protected void changeItemAmount(int item, double amount)
+	{
+		totalBillBeforeTipsAndTaxes += amount - itemAmounts[item];
+		itemAmounts[item] = amount;
+	}
+
+	@Override
+	protected void moveItem(int from, int to)
+	{
+		itemAmounts[to] = itemAmounts[from];
+		itemPerHeadShare[to] = itemPerHeadShare[from];
+	}
+
+	@Override
+	protected SubtotalDeltas subtotals()
+	{
+		return new DecimalSubtotalDeltas(userItemsSubtotal);
+	}
+
+	@Override
+	protected SubtotalDeltas newSubtotalDeltas()
+	{
+		return new DecimalSubtotalDeltas(new double[getUserCount()]);
+	}
+
+	/**
+	 * Method to calculate per head contribution for an item
+	 * It will evenly divide the amount among all the participants.
+	 */
+	@Override
+	protected void splitItem(int item, ParticipantMask oldParticipants, ParticipantMask newParticipants, SubtotalDeltas deltas)
+	{
+		double[] subtotals = ((DecimalSubtotalDeltas)deltas).amounts;
+
+		double oldPerHeadContribution = itemPerHeadShare[item];
+		for(int user = oldParticipants.next(0); user >= 0; user = oldParticipants.next(user + 1))
+		{
+			subtotals[user] -= oldPerHeadContribution;
+		}
+
+		double perHeadContribution = newParticipants.count() == 0 ? 0.0 : itemAmounts[item] / newParticipants.count();
+		for(int user = newParticipants.next(0); user >= 0; user = newParticipants.next(user + 1))
+		{
+			subtotals[user] += perHeadContribution;
+		}
+		itemPerHeadShare[item] = perHeadContribution;
+	}
+
+	/**
+	 * A user's numbers only depend on the user's subtotal, the total bill and tips and taxes.
+	 * So unless one of the last two changed, only the dirty users are computed
+	 */
+	@Override
+	protected void computeUserShares(double tipsAndTaxes, BitSet dirtyUsers, boolean allUsers)
+	{
+		if(allUsers)
+		{
+			for(int user = 0; user < getUserCount(); user++)
+			{
+				computeUserShare(user, tipsAndTaxes);
+			}
+		}
+		else
+		{
+			for(int user = dirtyUsers.nextSetBit(0); user >= 0; user = dirtyUsers.nextSetBit(user + 1))
+			{
+				computeUserShare(user, tipsAndTaxes);
+			}
+		}
+	}
+
+	/**
+	 * 1) Calculate % contribution of the user so that tips and taxes can be allocated accordingly
+	 * 2) Calculate tips and taxes allocation using 1
+	 * 3) Calculate total per head contribution of the user
+	 */
+	private void computeUserShare(int user, double tipsAndTaxes)
+	{
+		computePerHeadPercentageContribution(user);
+		if(isTipsAndTaxesAllocated())
+		{
+			computeTipsAndTaxesAllocation(user, tipsAndTaxes);
+		}
+		computePerHeadContributionForTotalBill(user);
+	}
+
+	/**
+	 * In order to divide tips and taxes fairly based on the user's % contribution in the total bill,
+	 * this method computes that percentage
+	 */
+	private void computePerHeadPercentageContribution(int user)
+	{
+		double percentAllocationForThisUser = 0.00;
+
+		// Compute percentage contrib per user based on total
+		if(totalBillBeforeTipsAndTaxes != 0)
+		{
+			percentAllocationForThisUser = userItemsSubtotal[user]/totalBillBeforeTipsAndTaxes*100;
+
+			// Math to remove extra decimals and keep it to 2 decimal places
+			int percentAllocTemp = (int)(percentAllocationForThisUser * 100);
+			percentAllocationForThisUser = percentAllocTemp / 100.0;
+		}
+
+		userPercentage[user] = percentAllocationForThisUser;
+	}
+
+	/**
+	 * Using percentage contrib, allocate tips and taxes to the user
+	 */
+	private void computeTipsAndTaxesAllocation(int user, double tipsAndTaxes)
+	{
+		double tipAllocationForThisUser = userPercentage[user]*tipsAndTaxes/100;
+
+		// Restrict to 2 decimals.
+		int tipAllocationTemp = (int)(tipAllocationForThisUser * 100);
+		userTipsAndTaxes[user] = tipAllocationTemp / 100.0;
+	}
+
+	private void computePerHeadContributionForTotalBill(int user)
+	{
+		double contributionForUser = userItemsSubtotal[user];
+		if(isTipsAndTaxesAllocated())
+		{
+			contributionForUser += userTipsAndTaxes[user];
+		}
+		userTotal[user] = contributionForUser;
+	}
+
+	@Override
+	protected double userPercentage(int user)
+	{
+		return userPercentage[user];
+	}
+
+	@Override
+	protected double userTipsAndTaxes(int user)
+	{
+		return userTipsAndTaxes[user];
+	}
+
+	@Override
+	protected double userTotal(int user)
+	{
+		return userTotal[user];
+	}
+
+	@Override
+	protected double itemPerHeadShare(int item, int index)
+	{
+		return itemPerHeadShare[item];
+	}
+
+	private static class DecimalSubtotalDeltas extends SubtotalDeltas {
+
+		private final double[] amounts;
+
+		DecimalSubtotalDeltas(double[] amounts)
+		{
+			this.amounts = amounts;
+		}
+
+		@Override
+		protected void add(SubtotalDeltas other)
+		{
+			double[] otherAmounts = ((DecimalSubtotalDeltas)other).amounts;
+			for(int user = 0; user < otherAmounts.length; user++)
+			{
+				amounts[user] += otherAmounts[user];
+			}
+		}
+	}
+}
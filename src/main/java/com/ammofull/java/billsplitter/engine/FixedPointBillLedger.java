@@ -0,0 +1,230 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Ledger for CalculationMode.FIXED_POINT_CENTS. Amounts are converted to long cents once, when they enter the bill,
+ * and every split is done with a LargestRemainderAllocator, so that:
+ * - the shares of an item add up to the item amount
+ * - the percentages add up to 100.00 (in basis points)
+ * - the tips and taxes allocation adds up to the tips and taxes
+ * The percentages and tips and taxes are allocated in proportion to the users' items subtotal
+ */
+class FixedPointBillLedger extends BillLedger {
+
+	private static final long BASIS_POINTS_IN_HUNDRED_PERCENT = 10000;
+
+	private long[] userItemsSubtotalCents = new long[INITIAL_CAPACITY];
+
+	private long[] userPercentageBasisPoints = new long[INITIAL_CAPACITY];
+
+	private long[] userTipsAndTaxesCents = new long[INITIAL_CAPACITY];
+
+	private long[] userTotalCents = new long[INITIAL_CAPACITY];
+
+	private long[] itemAmountCents = new long[INITIAL_CAPACITY];
+
+	/**
+	 * Every participant of the item gets this share, rounded down...
+	 */
+	private long[] itemPerHeadShareCents = new long[INITIAL_CAPACITY];
+
+	/**
+	 * ...and the first participants (in ordinal order) get one more cent, so that the shares add up to the item amount
+	 */
+	private int[] itemRemainderCents = new int[INITIAL_CAPACITY];
+
+	FixedPointBillLedger()
+	{
+	}
+
+	private FixedPointBillLedger(FixedPointBillLedger other)
+	{
+		super(other);
+		userItemsSubtotalCents = other.userItemsSubtotalCents.clone();
+		userPercentageBasisPoints = other.userPercentageBasisPoints.clone();
+		userTipsAndTaxesCents = other.userTipsAndTaxesCents.clone();
+		userTotalCents = other.userTotalCents.clone();
+		itemAmountCents = other.itemAmountCents.clone();
+		itemPerHeadShareCents = other.itemPerHeadShareCents.clone();
+		itemRemainderCents = other.itemRemainderCents.clone();
+	}
+
+	@Override
+	BillLedger copy()
+	{
+		return new FixedPointBillLedger(this);
+	}
+
+	@Override
+	protected void growUsers(int capacity)
+	{
+		userItemsSubtotalCents = Arrays.copyOf(userItemsSubtotalCents, capacity);
+		userPercentageBasisPoints = Arrays.copyOf(userPercentageBasisPoints, capacity);
+		userTipsAndTaxesCents = Arrays.copyOf(userTipsAndTaxesCents, capacity);
+		userTotalCents = Arrays.copyOf(userTotalCents, capacity);
+	}
+
+	@Override
+	protected void growItems(int capacity)
+	{
+		itemAmountCents = Arrays.copyOf(itemAmountCents, capacity);
+		itemPerHeadShareCents = Arrays.copyOf(itemPerHeadShareCents, capacity);
+		itemRemainderCents = Arrays.copyOf(itemRemainderCents, capacity);
+	}
+
+	@Override
+	protected void addItemAmount(int item, double amount)
+	{
+		itemAmountCents[item] = toCents(amount);
+		itemPerHeadShareCents[item] = 0;
+		itemRemainderCents[item] = 0;
+	}
+
+	@Override
+	protected void changeItemAmount(int item, double amount)
+	{
+		itemAmountCents[item] = toCents(amount);
+	}
+
+	@Override
+	protected void moveItem(int from, int to)
+	{
+		itemAmountCents[to] = itemAmountCents[from];
+		itemPerHeadShareCents[to] = itemPerHeadShareCents[from];
+		itemRemainderCents[to] = itemRemainderCents[from];
+	}
+
+	@Override
+	protected SubtotalDeltas subtotals()
+	{
+		return new CentsSubtotalDeltas(userItemsSubtotalCents);
+	}
+
+	@Override
+	protected SubtotalDeltas newSubtotalDeltas()
+	{
+		return new CentsSubtotalDeltas(new long[getUserCount()]);
+	}
+
+	/**
+	 * Divides the amount evenly, the cents that cannot be divided go to the first participants
+	 */
+	@Override
+	protected void splitItem(int item, ParticipantMask oldParticipants, ParticipantMask newParticipants, SubtotalDeltas deltas)
+	{
+		long[] subtotals = ((CentsSubtotalDeltas)deltas).amounts;
+
+		int index = 0;
+		for(int user = oldParticipants.next(0); user >= 0; user = oldParticipants.next(user + 1))
+		{
+			subtotals[user] -= shareCents(item, index++);
+		}
+
+		int participantCount = newParticipants.count();
+		long perHeadShare = 0;
+		long remainder = 0;
+		if(participantCount != 0)
+		{
+			perHeadShare = itemAmountCents[item] / participantCount;
+			remainder = itemAmountCents[item] - perHeadShare * participantCount;
+			if(remainder < 0)
+			{
+				// Negative amounts (e.g. discounts) are rounded down as well
+				perHeadShare--;
+				remainder += participantCount;
+			}
+		}
+		itemPerHeadShareCents[item] = perHeadShare;
+		itemRemainderCents[item] = (int)remainder;
+
+		index = 0;
+		for(int user = newParticipants.next(0); user >= 0; user = newParticipants.next(user + 1))
+		{
+			subtotals[user] += shareCents(item, index++);
+		}
+	}
+
+	/**
+	 * The largest remainder method distributes the leftover units over all users, so any change computes every user
+	 * 1) Allocate 100% in basis points in proportion to the users' subtotals
+	 * 2) Allocate tips and taxes the same way
+	 * 3) Calculate total per head contribution for every user
+	 */
+	@Override
+	protected void computeUserShares(double tipsAndTaxes, BitSet dirtyUsers, boolean allUsers)
+	{
+		LargestRemainderAllocator allocator = LargestRemainderAllocator.forCurrentThread();
+		allocator.allocate(BASIS_POINTS_IN_HUNDRED_PERCENT, userItemsSubtotalCents, getUserCount(), userPercentageBasisPoints);
+
+		if(isTipsAndTaxesAllocated())
+		{
+			allocator.allocate(toCents(tipsAndTaxes), userItemsSubtotalCents, getUserCount(), userTipsAndTaxesCents);
+		}
+
+		for(int user = 0; user < getUserCount(); user++)
+		{
+			long contributionForUser = userItemsSubtotalCents[user];
+			if(isTipsAndTaxesAllocated())
+			{
+				contributionForUser += userTipsAndTaxesCents[user];
+			}
+			userTotalCents[user] = contributionForUser;
+		}
+	}
+
+	private long shareCents(int item, int index)
+	{
+		return index < itemRemainderCents[item] ? itemPerHeadShareCents[item] + 1 : itemPerHeadShareCents[item];
+	}
+
+	static long toCents(double amount)
+	{
+		return Math.round(amount * 100);
+	}
+
+	@Override
+	protected double userPercentage(int user)
+	{
+		return userPercentageBasisPoints[user] / 100.0;
+	}
+
+	@Override
+	protected double userTipsAndTaxes(int user)
+	{
+		return userTipsAndTaxesCents[user] / 100.0;
+	}
+
+	@Override
+	protected double userTotal(int user)
+	{
+		return userTotalCents[user] / 100.0;
+	}
+
+	@Override
+	protected double itemPerHeadShare(int item, int index)
+	{
+		return shareCents(item, index) / 100.0;
+	}
+
+	private static class CentsSubtotalDeltas extends SubtotalDeltas {
+
+		private final long[] amounts;
+
+		CentsSubtotalDeltas(long[] amounts)
+		{
+			this.amounts = amounts;
+		}
+
+		@Override
+		protected void add(SubtotalDeltas other)
+		{
+			long[] otherAmounts = ((CentsSubtotalDeltas)other).amounts;
+			for(int user = 0; user < otherAmounts.length; user++)
+			{
+				amounts[user] += otherAmounts[user];
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.ammofull.java.billsplitter.engine;
+
+/**
+ * A map of name vs amount that can be read by position, without boxing the amounts.
+ * The calculated maps of a computed BillDetailsTO implement it, including the rows of getItemsVsPerHeadContributions
+ */
+public interface IndexedAmounts {
+
+	int size();
+
+	/**
+	 * @param index from 0 to size - 1, in the order of the map's entries
+	 */
+	String nameAt(int index);
+
+	double amountAt(int index);
+}
@@ -0,0 +1,23 @@
+package com.ammofull.java.billsplitter.engine;
+
+/**
+ * Thrown when an operation of a batch is not valid. Nothing of the batch has been applied to the bill
+ */
+public class InvalidOperationException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Position of the invalid operation in the batch
+	 */
+	private final int operationIndex;
+
+	public InvalidOperationException(int operationIndex, String message) {
+		super("Operation " + operationIndex + ": " + message);
+		this.operationIndex = operationIndex;
+	}
+
+	public int getOperationIndex() {
+		return operationIndex;
+	}
+}
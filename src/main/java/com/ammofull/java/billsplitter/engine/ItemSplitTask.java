@@ -0,0 +1,71 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.ammofull.java.billsplitter.engine.BillLedger.SubtotalDeltas;
+
+/**
+ * Splits a range of dirty items of a ledger on a ForkJoinPool. Every leaf task adds its items' deltas
+ * to its own per user array, and the arrays are added up while the tasks are joined.
+ * Used by the ledger when at least PARALLEL_THRESHOLD items are dirty
+ */
+class ItemSplitTask extends RecursiveTask<SubtotalDeltas> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Below this number of dirty items, the items are split sequentially. Can be set with -Dbillsplitter.parallelThreshold
+	 */
+	static final int PARALLEL_THRESHOLD = Integer.getInteger("billsplitter.parallelThreshold", 10000);
+
+	/**
+	 * Number of items a leaf task splits sequentially
+	 */
+	private static final int ITEMS_PER_TASK = 2048;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private final BillLedger ledger;
+
+	private final int[] items;
+
+	private final int from;
+
+	private final int to;
+
+	private ItemSplitTask(BillLedger ledger, int[] items, int from, int to) {
+		this.ledger = ledger;
+		this.items = items;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * @return the sum of the deltas of all the items
+	 */
+	static SubtotalDeltas splitItems(BillLedger ledger, int[] items) {
+		return POOL.invoke(new ItemSplitTask(ledger, items, 0, items.length));
+	}
+
+	@Override
+	protected SubtotalDeltas compute() {
+		if(to - from <= ITEMS_PER_TASK)
+		{
+			SubtotalDeltas deltas = ledger.newSubtotalDeltas();
+			for(int i = from; i < to; i++)
+			{
+				ledger.splitDirtyItem(items[i], deltas);
+			}
+			return deltas;
+		}
+
+		int middle = (from + to) >>> 1;
+		ItemSplitTask left = new ItemSplitTask(ledger, items, from, middle);
+		ItemSplitTask right = new ItemSplitTask(ledger, items, middle, to);
+		left.fork();
+		SubtotalDeltas deltas = right.compute();
+		deltas.add(left.join());
+		return deltas;
+	}
+}
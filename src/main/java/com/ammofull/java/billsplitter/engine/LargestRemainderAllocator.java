@@ -0,0 +1,167 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Splits an amount of minor units (e.g. cents) in proportion to weights using the largest remainder method:
+ * every share is first rounded down, then the units left over go one by one to the shares with the largest remainders.
+ * The shares therefore always add up to the amount.
+ *
+ * The scratch arrays are reused between calls, so an instance must not be shared between threads.
+ * Ledgers use the instance of the computing thread (see forCurrentThread), so that the workers of a batch keep their buffers from bill to bill
+ */
+class LargestRemainderAllocator {
+
+	private static final ThreadLocal<LargestRemainderAllocator> ALLOCATORS = new ThreadLocal<LargestRemainderAllocator>() {
+		@Override
+		protected LargestRemainderAllocator initialValue() {
+			return new LargestRemainderAllocator();
+		}
+	};
+
+	private long[] remainders = new long[BillLedger.INITIAL_CAPACITY];
+
+	/**
+	 * Indexes of the shares, ordered by decreasing remainder for the leftover units
+	 */
+	private int[] order = new int[BillLedger.INITIAL_CAPACITY];
+
+	/**
+	 * @return the allocator of the current thread
+	 */
+	static LargestRemainderAllocator forCurrentThread()
+	{
+		return ALLOCATORS.get();
+	}
+
+	/**
+	 * Splits amount in proportion to weights[0..count) and writes the result in shares[0..count).
+	 * Negative weights count as zero. When no weight is positive, every share is zero.
+	 * Ties between equal remainders go to the lower index
+	 */
+	void allocate(long amount, long[] weights, int count, long[] shares)
+	{
+		long weightSum = 0;
+		for(int i = 0; i < count; i++)
+		{
+			if(weights[i] > 0)
+			{
+				weightSum += weights[i];
+			}
+		}
+		if(weightSum == 0)
+		{
+			Arrays.fill(shares, 0, count, 0L);
+			return;
+		}
+
+		if(remainders.length < count)
+		{
+			remainders = new long[count];
+			order = new int[count];
+		}
+
+		boolean isNegative = amount < 0;
+		long units = Math.abs(amount);
+		long allocated = 0;
+		for(int i = 0; i < count; i++)
+		{
+			long weight = weights[i] > 0 ? weights[i] : 0;
+			if(weight == 0)
+			{
+				shares[i] = 0;
+				remainders[i] = -1;
+			}
+			else if(units <= Long.MAX_VALUE / weight)
+			{
+				long product = units * weight;
+				shares[i] = product / weightSum;
+				remainders[i] = product % weightSum;
+			}
+			else
+			{
+				// Rare: the product does not fit in a long
+				BigInteger[] quotientAndRemainder = BigInteger.valueOf(units).multiply(BigInteger.valueOf(weight))
+						.divideAndRemainder(BigInteger.valueOf(weightSum));
+				shares[i] = quotientAndRemainder[0].longValue();
+				remainders[i] = quotientAndRemainder[1].longValue();
+			}
+			order[i] = i;
+			allocated += shares[i];
+		}
+
+		// Less units are left over than there are positive weights, so each share gets at most one more
+		long leftover = units - allocated;
+		if(leftover > 0)
+		{
+			sortByLargestRemainder(count);
+			for(int k = 0; k < leftover; k++)
+			{
+				shares[order[k]]++;
+			}
+		}
+
+		if(isNegative)
+		{
+			for(int i = 0; i < count; i++)
+			{
+				shares[i] = -shares[i];
+			}
+		}
+	}
+
+	/**
+	 * Heap sort of order[0..count) so that the largest remainder comes first
+	 */
+	private void sortByLargestRemainder(int count)
+	{
+		for(int i = count / 2 - 1; i >= 0; i--)
+		{
+			siftDown(i, count);
+		}
+		for(int end = count - 1; end > 0; end--)
+		{
+			int first = order[0];
+			order[0] = order[end];
+			order[end] = first;
+			siftDown(0, end);
+		}
+	}
+
+	private void siftDown(int root, int size)
+	{
+		while(true)
+		{
+			int child = 2 * root + 1;
+			if(child >= size)
+			{
+				return;
+			}
+			if(child + 1 < size && comesAfter(order[child + 1], order[child]))
+			{
+				child++;
+			}
+			if(!comesAfter(order[child], order[root]))
+			{
+				return;
+			}
+			int swap = order[root];
+			order[root] = order[child];
+			order[child] = swap;
+			root = child;
+		}
+	}
+
+	/**
+	 * The heap is a max heap on the sort position, so the index that has to end up last is the "largest"
+	 */
+	private boolean comesAfter(int i, int j)
+	{
+		if(remainders[i] != remainders[j])
+		{
+			return remainders[i] < remainders[j];
+		}
+		return i > j;
+	}
+}
@@ -0,0 +1,149 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.List;
+
+/**
+ * The participants of an item as a bit mask over the user ordinals: bit u is set when user u participates.
+ * Membership, participant count and the position of a participant in the row are word level bit operations.
+ *
+ * Immutable, so that the ledger can keep the same mask as the current and the applied participants of an item
+ */
+final class ParticipantMask {
+
+	static final ParticipantMask EMPTY = new ParticipantMask(new long[0]);
+
+	private static final int WORD_BITS = 64;
+
+	private final long[] words;
+
+	private final int count;
+
+	/**
+	 * The participants in row order, built on the first select. Views read the rows of the ledger by index,
+	 * and the mask of an item is only replaced when its participants change
+	 */
+	private volatile int[] users;
+
+	private ParticipantMask(long[] words) {
+		this.words = words;
+		int bits = 0;
+		for(long word : words)
+		{
+			bits += Long.bitCount(word);
+		}
+		this.count = bits;
+	}
+
+	/**
+	 * @return the mask of the given user ordinals
+	 */
+	static ParticipantMask of(int[] users)
+	{
+		int maxUser = -1;
+		for(int user : users)
+		{
+			maxUser = Math.max(maxUser, user);
+		}
+		long[] words = new long[maxUser / WORD_BITS + 1];
+		for(int user : users)
+		{
+			words[user / WORD_BITS] |= 1L << user;
+		}
+		return new ParticipantMask(words);
+	}
+
+	/**
+	 * @param flags one flag per user, in user ordinal order. True for a participant
+	 */
+	static ParticipantMask of(List<Boolean> flags)
+	{
+		long[] words = new long[(flags.size() + WORD_BITS - 1) / WORD_BITS];
+		int user = 0;
+		for(Boolean flag : flags)
+		{
+			if(flag)
+			{
+				words[user / WORD_BITS] |= 1L << user;
+			}
+			user++;
+		}
+		return new ParticipantMask(words);
+	}
+
+	int count()
+	{
+		return count;
+	}
+
+	boolean contains(int user)
+	{
+		int word = user / WORD_BITS;
+		return user >= 0 && word < words.length && (words[word] & (1L << user)) != 0;
+	}
+
+	/**
+	 * @return the first participant from the given ordinal on, -1 if there is none
+	 */
+	int next(int fromUser)
+	{
+		int word = fromUser / WORD_BITS;
+		if(word >= words.length)
+		{
+			return -1;
+		}
+		long bits = words[word] & (-1L << fromUser);
+		while(true)
+		{
+			if(bits != 0)
+			{
+				return word * WORD_BITS + Long.numberOfTrailingZeros(bits);
+			}
+			if(++word == words.length)
+			{
+				return -1;
+			}
+			bits = words[word];
+		}
+	}
+
+	/**
+	 * @return the number of participants before the given user: the index of the user in the row of the item
+	 */
+	int rank(int user)
+	{
+		int word = user / WORD_BITS;
+		int rank = 0;
+		for(int i = 0; i < word && i < words.length; i++)
+		{
+			rank += Long.bitCount(words[i]);
+		}
+		if(word < words.length)
+		{
+			rank += Long.bitCount(words[word] & ((1L << user) - 1));
+		}
+		return rank;
+	}
+
+	/**
+	 * @return the ordinal of the participant at index in the row of the item
+	 */
+	int select(int index)
+	{
+		if(index < 0 || index >= count)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", participants: " + count);
+		}
+		int[] users = this.users;
+		if(users == null)
+		{
+			users = new int[count];
+			int i = 0;
+			for(int user = next(0); user >= 0; user = next(user + 1))
+			{
+				users[i++] = user;
+			}
+			this.users = users;
+		}
+		return users[index];
+	}
+}
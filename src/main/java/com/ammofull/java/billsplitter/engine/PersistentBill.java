@@ -0,0 +1,313 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable version of the user entered data of a bill. Applying an operation returns a new version in O(log n)
+ * that shares everything the operation did not change with this one (see PersistentHashMap),
+ * so keeping every version of a bill costs memory in proportion to the edits and not to the size of the bill.
+ * See BillHistory for undo and redo.
+ *
+ * The calculated data is not part of a version: toBillDetailsTO gives a BillDetailsTO that the engine computes on its first read
+ */
+public final class PersistentBill {
+
+	/**
+	 * Key:		User name
+	 * Value:	Order in which the user was added
+	 */
+	private final PersistentHashMap<String,Integer> users;
+
+	private final PersistentHashMap<String,Double> itemVsAmount;
+
+	/**
+	 * The participant sets are unmodifiable, an operation replaces the set of an item
+	 */
+	private final PersistentHashMap<String,Set<String>> itemsVsParticipants;
+
+	private final PersistentHashMap<String,String> itemVsPayer;
+
+	private final double tipsAndTaxes;
+
+	private final CalculationMode calculationMode;
+
+	/**
+	 * Computed on first use. Threads that race on it compute the same value, hence not volatile
+	 */
+	private String fingerprint;
+
+	private PersistentBill(PersistentHashMap<String,Integer> users, PersistentHashMap<String,Double> itemVsAmount,
+			PersistentHashMap<String,Set<String>> itemsVsParticipants, PersistentHashMap<String,String> itemVsPayer,
+			double tipsAndTaxes, CalculationMode calculationMode) {
+		this.users = users;
+		this.itemVsAmount = itemVsAmount;
+		this.itemsVsParticipants = itemsVsParticipants;
+		this.itemVsPayer = itemVsPayer;
+		this.tipsAndTaxes = tipsAndTaxes;
+		this.calculationMode = calculationMode;
+	}
+
+	public static PersistentBill empty(CalculationMode calculationMode) {
+		return new PersistentBill(PersistentHashMap.<String,Integer>empty(), PersistentHashMap.<String,Double>empty(),
+				PersistentHashMap.<String,Set<String>>empty(), PersistentHashMap.<String,String>empty(),
+				0.0, calculationMode == null ? CalculationMode.DECIMAL : calculationMode);
+	}
+
+	/**
+	 * @return a version with the user entered data of the bill. Copies the whole bill
+	 */
+	public static PersistentBill of(BillDetailsTO billDetailsTO) {
+		PersistentHashMap<String,Integer> users = PersistentHashMap.empty();
+		for(String user : billDetailsTO.getUsers())
+		{
+			users = users.plus(user, users.size());
+		}
+		PersistentHashMap<String,Set<String>> itemsVsParticipants = PersistentHashMap.empty();
+		for(Map.Entry<String,Set<String>> itemAndParticipants : billDetailsTO.getItemsVsParticipants().entrySet())
+		{
+			itemsVsParticipants = itemsVsParticipants.plus(itemAndParticipants.getKey(), participantsOf(itemAndParticipants.getValue()));
+		}
+		Double tipsAndTaxes = billDetailsTO.getTipsAndTaxes();
+		return new PersistentBill(users, PersistentHashMap.copyOf(billDetailsTO.getItemVsAmount()), itemsVsParticipants,
+				PersistentHashMap.copyOf(billDetailsTO.getItemVsPayer()), tipsAndTaxes == null ? 0.0 : tipsAndTaxes, billDetailsTO.getCalculationMode());
+	}
+
+	/**
+	 * Validates the operation as BillSplitterService.applyOperations does
+	 * @return the new version. This version does not change
+	 */
+	public PersistentBill apply(BillOperationTO operation) {
+
+		BillSplitterServiceImpl.validateOperation(operation, users.keySet(), itemVsAmount.keySet());
+
+		String name = operation.getName();
+		switch(operation.getType())
+		{
+		case ADD_USER:
+			return new PersistentBill(users.plus(name, users.size()), itemVsAmount, itemsVsParticipants, itemVsPayer, tipsAndTaxes, calculationMode);
+		case ADD_ITEM:
+			return new PersistentBill(users, itemVsAmount.plus(name, operation.getAmount()),
+					itemsVsParticipants.plus(name, Collections.<String>emptySet()), itemVsPayer, tipsAndTaxes, calculationMode);
+		case SET_PARTICIPANTS:
+			PersistentHashMap<String,Integer> newUsers = users;
+			for(String participant : operation.getParticipants())
+			{
+				if(!newUsers.containsKey(participant))
+				{
+					newUsers = newUsers.plus(participant, newUsers.size());
+				}
+			}
+			return new PersistentBill(newUsers, itemVsAmount, itemsVsParticipants.plus(name, participantsOf(operation.getParticipants())),
+					itemVsPayer, tipsAndTaxes, calculationMode);
+		case SET_TIPS_AND_TAXES:
+			return new PersistentBill(users, itemVsAmount, itemsVsParticipants, itemVsPayer, operation.getAmount(), calculationMode);
+		case DELETE_ITEM:
+			return new PersistentBill(users, itemVsAmount.minus(name), itemsVsParticipants.minus(name), itemVsPayer.minus(name),
+					tipsAndTaxes, calculationMode);
+		case EDIT_ITEM:
+			String newName = operation.getNewName();
+			PersistentHashMap<String,String> newItemVsPayer = itemVsPayer.minus(name);
+			if(itemVsPayer.containsKey(name))
+			{
+				newItemVsPayer = newItemVsPayer.plus(newName, itemVsPayer.get(name));
+			}
+			return new PersistentBill(users, itemVsAmount.minus(name).plus(newName, operation.getAmount()),
+					itemsVsParticipants.minus(name).plus(newName, itemsVsParticipants.get(name)), newItemVsPayer, tipsAndTaxes, calculationMode);
+		case SET_PAYER:
+			return new PersistentBill(users, itemVsAmount, itemsVsParticipants, itemVsPayer.plus(name, operation.getPayer()),
+					tipsAndTaxes, calculationMode);
+		default:
+			throw new IllegalArgumentException("Unknown operation type : " + operation.getType());
+		}
+	}
+
+	/**
+	 * Applies the operations in order. If one is not valid, an InvalidOperationException tells which one and no version is returned
+	 * @return the version after the last operation. This version does not change
+	 */
+	public PersistentBill applyAll(List<BillOperationTO> operations) {
+		if(operations == null)
+		{
+			throw new IllegalArgumentException("Operations cannot be null");
+		}
+		PersistentBill bill = this;
+		for(int index = 0; index < operations.size(); index++)
+		{
+			try
+			{
+				bill = bill.apply(operations.get(index));
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new InvalidOperationException(index, e.getMessage());
+			}
+		}
+		return bill;
+	}
+
+	/**
+	 * @return a new mutable copy of this version. Its calculated data is computed on the first read
+	 */
+	public BillDetailsTO toBillDetailsTO() {
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		String[] usersInOrder = new String[users.size()];
+		for(Map.Entry<String,Integer> userAndOrder : users.entrySet())
+		{
+			usersInOrder[userAndOrder.getValue()] = userAndOrder.getKey();
+		}
+		billDetailsTO.getUsers().addAll(Arrays.asList(usersInOrder));
+		billDetailsTO.getItemVsAmount().putAll(itemVsAmount);
+		for(Map.Entry<String,Set<String>> itemAndParticipants : itemsVsParticipants.entrySet())
+		{
+			billDetailsTO.getItemsVsParticipants().put(itemAndParticipants.getKey(), new HashSet<>(itemAndParticipants.getValue()));
+		}
+		billDetailsTO.getItemVsPayer().putAll(itemVsPayer);
+		billDetailsTO.setTipsAndTaxes(tipsAndTaxes);
+		billDetailsTO.setCalculationMode(calculationMode);
+		BillSplitterServiceImpl.computeEntireBill(billDetailsTO);
+		return billDetailsTO;
+	}
+
+	/**
+	 * Hash of the user entered data: calculation mode, users in order, items with their amounts, participants and payers,
+	 * tips and taxes and their payer. Two versions with the same data have the same fingerprint, whatever the operations that led to them
+	 * @return 32 hex digits: the first 128 bits of the SHA-256 of the data
+	 */
+	public String getFingerprint() {
+		String fingerprint = this.fingerprint;
+		if(fingerprint == null)
+		{
+			fingerprint = computeFingerprint();
+			this.fingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+
+	private String computeFingerprint() {
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is required of every JVM", e);
+		}
+		updateString(digest, calculationMode.name());
+		String[] usersInOrder = new String[users.size()];
+		for(Map.Entry<String,Integer> userAndOrder : users.entrySet())
+		{
+			usersInOrder[userAndOrder.getValue()] = userAndOrder.getKey();
+		}
+		updateLong(digest, usersInOrder.length);
+		for(String user : usersInOrder)
+		{
+			updateString(digest, user);
+		}
+		String[] items = itemVsAmount.keySet().toArray(new String[itemVsAmount.size()]);
+		Arrays.sort(items);
+		updateLong(digest, items.length);
+		for(String item : items)
+		{
+			updateString(digest, item);
+			updateLong(digest, Double.doubleToLongBits(itemVsAmount.get(item)));
+			Set<String> participants = itemsVsParticipants.get(item);
+			String[] sortedParticipants = participants == null ? new String[0] : participants.toArray(new String[participants.size()]);
+			Arrays.sort(sortedParticipants);
+			updateLong(digest, sortedParticipants.length);
+			for(String participant : sortedParticipants)
+			{
+				updateString(digest, participant);
+			}
+			updateString(digest, itemVsPayer.get(item));
+		}
+		updateLong(digest, Double.doubleToLongBits(tipsAndTaxes));
+		updateString(digest, itemVsPayer.get(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES));
+
+		byte[] hash = digest.digest();
+		char[] hex = new char[32];
+		for(int i = 0; i < 16; i++)
+		{
+			hex[2 * i] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+			hex[2 * i + 1] = Character.forDigit(hash[i] & 0xF, 16);
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Length first, so that consecutive strings cannot be confused. A null string has length -1
+	 */
+	private static void updateString(MessageDigest digest, String string) {
+		if(string == null)
+		{
+			updateLong(digest, -1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		updateLong(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	private static void updateLong(MessageDigest digest, long value) {
+		for(int shift = 56; shift >= 0; shift -= 8)
+		{
+			digest.update((byte)(value >>> shift));
+		}
+	}
+
+	private static Set<String> participantsOf(Set<String> participants) {
+		return Collections.unmodifiableSet(new HashSet<>(participants));
+	}
+
+	/**
+	 * Read only
+	 */
+	public Set<String> getUsers() {
+		return users.keySet();
+	}
+
+	/**
+	 * Read only. Key: user name, value: order in which the user was added, from 0
+	 */
+	public Map<String,Integer> getUserOrder() {
+		return users;
+	}
+
+	/**
+	 * Read only
+	 */
+	public Map<String,Double> getItemVsAmount() {
+		return itemVsAmount;
+	}
+
+	/**
+	 * Read only
+	 */
+	public Map<String,Set<String>> getItemsVsParticipants() {
+		return itemsVsParticipants;
+	}
+
+	/**
+	 * Read only
+	 */
+	public Map<String,String> getItemVsPayer() {
+		return itemVsPayer;
+	}
+
+	public double getTipsAndTaxes() {
+		return tipsAndTaxes;
+	}
+
+	public CalculationMode getCalculationMode() {
+		return calculationMode;
+	}
+}
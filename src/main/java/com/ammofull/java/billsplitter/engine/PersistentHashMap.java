@@ -0,0 +1,421 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable hash map in which plus and minus return a new map and leave this one as it is (a hash array mapped trie).
+ * The keys are spread by 5 bits of their hash per level over nodes of up to 32 slots. A change copies only the nodes
+ * on the path to its key, O(log32 n), and the new map shares every other node with the old one.
+ * Keys with the same hash end up in a collision node.
+ *
+ * It is a read only java.util.Map: put, remove and clear throw UnsupportedOperationException. Keys cannot be null
+ */
+final class PersistentHashMap<K,V> extends AbstractMap<K,V> {
+
+	private static final int BITS_PER_LEVEL = 5;
+
+	private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+	private static final Object NOT_FOUND = new Object();
+
+	private static final BitmapNode EMPTY_NODE = new BitmapNode(0, new Object[0]);
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentHashMap EMPTY = new PersistentHashMap<>(EMPTY_NODE, 0);
+
+	private final Node root;
+
+	private final int size;
+
+	private Set<Map.Entry<K,V>> entrySet;
+
+	private PersistentHashMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K,V> PersistentHashMap<K,V> empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @return a map with the entries of the given map
+	 */
+	static <K,V> PersistentHashMap<K,V> copyOf(Map<? extends K, ? extends V> map) {
+		PersistentHashMap<K,V> copy = empty();
+		for(Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+		{
+			copy = copy.plus(entry.getKey(), entry.getValue());
+		}
+		return copy;
+	}
+
+	/**
+	 * @return a map with the key mapped to the value, this map if it already is
+	 */
+	PersistentHashMap<K,V> plus(K key, V value) {
+		if(key == null)
+		{
+			throw new IllegalArgumentException("Key cannot be null");
+		}
+		boolean[] addedKey = new boolean[1];
+		Node newRoot = root.plus(0, key.hashCode(), key, value, addedKey);
+		if(newRoot == root)
+		{
+			return this;
+		}
+		return new PersistentHashMap<>(newRoot, addedKey[0] ? size + 1 : size);
+	}
+
+	/**
+	 * @return a map without the key, this map if the key is not in it
+	 */
+	PersistentHashMap<K,V> minus(Object key) {
+		if(key == null)
+		{
+			return this;
+		}
+		Node newRoot = root.minus(0, key.hashCode(), key);
+		if(newRoot == root)
+		{
+			return this;
+		}
+		return newRoot == null ? PersistentHashMap.<K,V>empty() : new PersistentHashMap<K,V>(newRoot, size - 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		if(key == null)
+		{
+			return null;
+		}
+		Object value = root.find(0, key.hashCode(), key);
+		return value == NOT_FOUND ? null : (V)value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key != null && root.find(0, key.hashCode(), key) != NOT_FOUND;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Set<Map.Entry<K,V>> entrySet() {
+		if(entrySet == null)
+		{
+			entrySet = new AbstractSet<Map.Entry<K,V>>() {
+				@Override
+				public Iterator<Map.Entry<K,V>> iterator() {
+					return new EntryIterator<>(root);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	private static int slot(int hash, int shift) {
+		return 1 << ((hash >>> shift) & LEVEL_MASK);
+	}
+
+	/**
+	 * The slots of a node are pairs in array: (key, value) for an entry, (null, child node) for a sub trie
+	 */
+	private abstract static class Node {
+
+		final Object[] array;
+
+		Node(Object[] array) {
+			this.array = array;
+		}
+
+		/**
+		 * @return the value of the key or NOT_FOUND
+		 */
+		abstract Object find(int shift, int hash, Object key);
+
+		/**
+		 * @return this node if nothing changed. addedKey[0] is set when the key was not in the trie
+		 */
+		abstract Node plus(int shift, int hash, Object key, Object value, boolean[] addedKey);
+
+		/**
+		 * @return this node if the key is not in it, null if the node is empty without it
+		 */
+		abstract Node minus(int shift, int hash, Object key);
+	}
+
+	/**
+	 * Node with up to 32 slots. Only the used slots are stored, bitmap tells which ones they are
+	 */
+	private static final class BitmapNode extends Node {
+
+		private final int bitmap;
+
+		BitmapNode(int bitmap, Object[] array) {
+			super(array);
+			this.bitmap = bitmap;
+		}
+
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		Object find(int shift, int hash, Object key) {
+			int bit = slot(hash, shift);
+			if((bitmap & bit) == 0)
+			{
+				return NOT_FOUND;
+			}
+			int index = index(bit);
+			Object keyOrNull = array[2 * index];
+			Object valueOrNode = array[2 * index + 1];
+			if(keyOrNull == null)
+			{
+				return ((Node)valueOrNode).find(shift + BITS_PER_LEVEL, hash, key);
+			}
+			return key.equals(keyOrNull) ? valueOrNode : NOT_FOUND;
+		}
+
+		@Override
+		Node plus(int shift, int hash, Object key, Object value, boolean[] addedKey) {
+			int bit = slot(hash, shift);
+			int index = index(bit);
+			if((bitmap & bit) == 0)
+			{
+				Object[] newArray = new Object[array.length + 2];
+				System.arraycopy(array, 0, newArray, 0, 2 * index);
+				newArray[2 * index] = key;
+				newArray[2 * index + 1] = value;
+				System.arraycopy(array, 2 * index, newArray, 2 * index + 2, array.length - 2 * index);
+				addedKey[0] = true;
+				return new BitmapNode(bitmap | bit, newArray);
+			}
+
+			Object keyOrNull = array[2 * index];
+			Object valueOrNode = array[2 * index + 1];
+			if(keyOrNull == null)
+			{
+				Node child = ((Node)valueOrNode).plus(shift + BITS_PER_LEVEL, hash, key, value, addedKey);
+				return child == valueOrNode ? this : withSlot(index, null, child);
+			}
+			if(key.equals(keyOrNull))
+			{
+				return value == valueOrNode ? this : withSlot(index, keyOrNull, value);
+			}
+			// Two keys in the same slot: they move to a child node
+			addedKey[0] = true;
+			return withSlot(index, null, pair(shift + BITS_PER_LEVEL, keyOrNull, valueOrNode, hash, key, value));
+		}
+
+		@Override
+		Node minus(int shift, int hash, Object key) {
+			int bit = slot(hash, shift);
+			if((bitmap & bit) == 0)
+			{
+				return this;
+			}
+			int index = index(bit);
+			Object keyOrNull = array[2 * index];
+			Object valueOrNode = array[2 * index + 1];
+			if(keyOrNull == null)
+			{
+				Node child = ((Node)valueOrNode).minus(shift + BITS_PER_LEVEL, hash, key);
+				if(child == valueOrNode)
+				{
+					return this;
+				}
+				if(child != null)
+				{
+					return withSlot(index, null, child);
+				}
+			}
+			else if(!key.equals(keyOrNull))
+			{
+				return this;
+			}
+
+			if(bitmap == bit)
+			{
+				return null;
+			}
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, 2 * index);
+			System.arraycopy(array, 2 * index + 2, newArray, 2 * index, newArray.length - 2 * index);
+			return new BitmapNode(bitmap & ~bit, newArray);
+		}
+
+		private Node withSlot(int index, Object key, Object value) {
+			Object[] newArray = array.clone();
+			newArray[2 * index] = key;
+			newArray[2 * index + 1] = value;
+			return new BitmapNode(bitmap, newArray);
+		}
+
+		private static Node pair(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+			int hash1 = key1.hashCode();
+			if(hash1 == hash2)
+			{
+				return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+			}
+			boolean[] addedKey = new boolean[1];
+			return EMPTY_NODE.plus(shift, hash1, key1, value1, addedKey).plus(shift, hash2, key2, value2, addedKey);
+		}
+	}
+
+	/**
+	 * Keys with the same hash, compared with equals
+	 */
+	private static final class CollisionNode extends Node {
+
+		private final int hash;
+
+		CollisionNode(int hash, Object[] array) {
+			super(array);
+			this.hash = hash;
+		}
+
+		private int indexOf(Object key) {
+			for(int i = 0; i < array.length; i += 2)
+			{
+				if(key.equals(array[i]))
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		Object find(int shift, int hash, Object key) {
+			int i = hash == this.hash ? indexOf(key) : -1;
+			return i < 0 ? NOT_FOUND : array[i + 1];
+		}
+
+		@Override
+		Node plus(int shift, int hash, Object key, Object value, boolean[] addedKey) {
+			if(hash != this.hash)
+			{
+				// Another hash in the same path: this node goes one level down
+				Node parent = new BitmapNode(slot(this.hash, shift), new Object[] {null, this});
+				return parent.plus(shift, hash, key, value, addedKey);
+			}
+			int i = indexOf(key);
+			if(i >= 0)
+			{
+				if(array[i + 1] == value)
+				{
+					return this;
+				}
+				Object[] newArray = array.clone();
+				newArray[i + 1] = value;
+				return new CollisionNode(hash, newArray);
+			}
+			Object[] newArray = new Object[array.length + 2];
+			System.arraycopy(array, 0, newArray, 0, array.length);
+			newArray[array.length] = key;
+			newArray[array.length + 1] = value;
+			addedKey[0] = true;
+			return new CollisionNode(hash, newArray);
+		}
+
+		@Override
+		Node minus(int shift, int hash, Object key) {
+			int i = hash == this.hash ? indexOf(key) : -1;
+			if(i < 0)
+			{
+				return this;
+			}
+			if(array.length == 2)
+			{
+				return null;
+			}
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, i);
+			System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+			return new CollisionNode(hash, newArray);
+		}
+	}
+
+	/**
+	 * Depth first walk of the trie, with a stack of the nodes being walked
+	 */
+	private static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+
+		private final Deque<Object[]> arrays = new ArrayDeque<>();
+
+		private final Deque<Integer> positions = new ArrayDeque<>();
+
+		private Map.Entry<K,V> next;
+
+		EntryIterator(Node root) {
+			arrays.push(root.array);
+			positions.push(0);
+			advance();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next = null;
+			while(next == null && !arrays.isEmpty())
+			{
+				Object[] array = arrays.peek();
+				int position = positions.pop();
+				if(position == array.length)
+				{
+					arrays.pop();
+					continue;
+				}
+				positions.push(position + 2);
+				if(array[position] == null)
+				{
+					arrays.push(((Node)array[position + 1]).array);
+					positions.push(0);
+				}
+				else
+				{
+					next = new AbstractMap.SimpleImmutableEntry<>((K)array[position], (V)array[position + 1]);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K,V> next() {
+			if(next == null)
+			{
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K,V> entry = next;
+			advance();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes who pays whom to settle a group of bills.
+ * 1) Every bill adds to the balance of each member: what the member paid minus what the member owes (the total per head contribution).
+ *    Balances are kept in cents, so that netting many bills does not accumulate rounding errors
+ * 2) The members who are owed money (creditors) and the ones who owe money (debtors) go in two max heaps.
+ *    The largest debtor pays the largest creditor the smaller of the two balances, and whoever is not settled goes back in its heap.
+ *
+ * Each transfer settles at least one member, so there are fewer transfers than members with a non zero balance.
+ * Finding the minimal number of transfers is NP-hard, this greedy matching is close to it in practice and runs in O(n log n).
+ *
+ * With CalculationMode.DECIMAL the truncated cents of the tips and taxes allocation are owed by nobody,
+ * so the payers keep a few cents of unsettled balance, bounded by maxResidueCents. With FIXED_POINT_CENTS every balance is settled
+ */
+class SettlementEngine {
+
+	private final Map<String,Integer> memberOrdinals = new HashMap<>();
+
+	private String[] members = new String[BillLedger.INITIAL_CAPACITY];
+
+	private long[] balanceCents = new long[BillLedger.INITIAL_CAPACITY];
+
+	private int memberCount;
+
+	/**
+	 * Forgets the balances but keeps the arrays, so that one engine can settle group after group
+	 */
+	void clear()
+	{
+		memberOrdinals.clear();
+		Arrays.fill(members, 0, memberCount, null);
+		Arrays.fill(balanceCents, 0, memberCount, 0L);
+		memberCount = 0;
+	}
+
+	/**
+	 * Adds what the bill's payers paid and what its users owe to the balances. The bill must be computed.
+	 * Only what is split between users is paid for: an item without participants is rejected,
+	 * and tips and taxes count only when they are allocated (see BillLedger.hasTipsAndTaxesAllocation())
+	 * @throws IllegalArgumentException if an item has an amount but no participants,
+	 * or if the bill does not balance within the rounding residue (see maxResidueCents)
+	 */
+	void addBill(BillDetailsTO billDetailsTO)
+	{
+		Map<String,String> itemVsPayer = billDetailsTO.getItemVsPayer();
+		Map<String,Set<String>> itemsVsParticipants = billDetailsTO.getItemsVsParticipants();
+		long billBalanceCents = 0;
+		for(Map.Entry<String,Double> itemAndAmount : billDetailsTO.getItemVsAmount().entrySet())
+		{
+			long cents = FixedPointBillLedger.toCents(itemAndAmount.getValue());
+			if(cents == 0)
+			{
+				continue;
+			}
+			Set<String> participants = itemsVsParticipants.get(itemAndAmount.getKey());
+			if(participants == null || participants.isEmpty())
+			{
+				throw new IllegalArgumentException("No participants for " + itemAndAmount.getKey() + ", nobody owes it. Call addContributionsForItem method first");
+			}
+			addBalance(payerOf(itemAndAmount.getKey(), itemVsPayer), cents);
+			billBalanceCents += cents;
+		}
+
+		Double tipsAndTaxes = billDetailsTO.getTipsAndTaxes();
+		long tipsAndTaxesCents = 0;
+		if(tipsAndTaxes != null && tipsAndTaxes != 0.0 && billDetailsTO.getLedger().hasTipsAndTaxesAllocation())
+		{
+			tipsAndTaxesCents = FixedPointBillLedger.toCents(tipsAndTaxes);
+			addBalance(payerOf(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, itemVsPayer), tipsAndTaxesCents);
+			billBalanceCents += tipsAndTaxesCents;
+		}
+
+		Map<String,Double> userVsTotal = billDetailsTO.getUserVsTotalPerHeadContribution();
+		for(Map.Entry<String,Double> userAndTotal : userVsTotal.entrySet())
+		{
+			long cents = FixedPointBillLedger.toCents(userAndTotal.getValue());
+			addBalance(userAndTotal.getKey(), -cents);
+			billBalanceCents -= cents;
+		}
+
+		long maxResidueCents = maxResidueCents(billDetailsTO.getCalculationMode(), userVsTotal.size(), billDetailsTO.getItemVsAmount().size(), tipsAndTaxesCents);
+		if(Math.abs(billBalanceCents) > maxResidueCents)
+		{
+			throw new IllegalArgumentException("Bill does not balance: " + billBalanceCents + " cents paid for are not owed by its users");
+		}
+	}
+
+	/**
+	 * With FIXED_POINT_CENTS a bill balances exactly. With DECIMAL every amount is rounded to the cent,
+	 * and each user's tips and taxes share is truncated twice (the percentage to 0.01 and the share to the cent):
+	 * a cent per user and per item, plus per user a cent and 0.01% of tips and taxes
+	 */
+	static long maxResidueCents(CalculationMode calculationMode, int userCount, int itemCount, long tipsAndTaxesCents)
+	{
+		if(calculationMode == CalculationMode.FIXED_POINT_CENTS)
+		{
+			return 0;
+		}
+		return userCount + itemCount + userCount * (1 + (Math.abs(tipsAndTaxesCents) + 9999) / 10000);
+	}
+
+	private static String payerOf(String itemName, Map<String,String> itemVsPayer)
+	{
+		String payer = itemVsPayer == null ? null : itemVsPayer.get(itemName);
+		if(payer == null)
+		{
+			throw new IllegalArgumentException("No payer for " + itemName + ". Call setPayerForItem method first");
+		}
+		return payer;
+	}
+
+	/**
+	 * Positive cents: the member is owed money, negative: the member owes money
+	 */
+	void addBalance(String member, long cents)
+	{
+		Integer ordinal = memberOrdinals.get(member);
+		if(ordinal == null)
+		{
+			if(memberCount == members.length)
+			{
+				members = Arrays.copyOf(members, memberCount * 2);
+				balanceCents = Arrays.copyOf(balanceCents, memberCount * 2);
+			}
+			ordinal = memberCount++;
+			members[ordinal] = member;
+			memberOrdinals.put(member, ordinal);
+		}
+		balanceCents[ordinal] += cents;
+	}
+
+	/**
+	 * @return the transfers that settle the balances
+	 */
+	List<TransferTO> settle()
+	{
+		BalanceHeap creditors = new BalanceHeap(memberCount);
+		BalanceHeap debtors = new BalanceHeap(memberCount);
+		for(int member = 0; member < memberCount; member++)
+		{
+			if(balanceCents[member] > 0)
+			{
+				creditors.push(member, balanceCents[member]);
+			}
+			else if(balanceCents[member] < 0)
+			{
+				debtors.push(member, -balanceCents[member]);
+			}
+		}
+
+		List<TransferTO> transfers = new ArrayList<>();
+		while(!creditors.isEmpty() && !debtors.isEmpty())
+		{
+			int creditor = creditors.peekMember();
+			long credit = creditors.peekAmount();
+			int debtor = debtors.peekMember();
+			long debt = debtors.peekAmount();
+			creditors.pop();
+			debtors.pop();
+
+			long transferCents = Math.min(credit, debt);
+			transfers.add(new TransferTO(members[debtor], members[creditor], transferCents / 100.0));
+
+			if(credit > transferCents)
+			{
+				creditors.push(creditor, credit - transferCents);
+			}
+			if(debt > transferCents)
+			{
+				debtors.push(debtor, debt - transferCents);
+			}
+		}
+		return transfers;
+	}
+
+	/**
+	 * Binary max heap of (member ordinal, positive cents) in two primitive arrays. Ties go to the lower ordinal, so that the result is deterministic
+	 */
+	private static class BalanceHeap {
+
+		private final int[] members;
+
+		private final long[] amounts;
+
+		private int size;
+
+		BalanceHeap(int capacity)
+		{
+			members = new int[capacity];
+			amounts = new long[capacity];
+		}
+
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		int peekMember()
+		{
+			return members[0];
+		}
+
+		long peekAmount()
+		{
+			return amounts[0];
+		}
+
+		void push(int member, long amount)
+		{
+			int child = size++;
+			while(child > 0)
+			{
+				int parent = (child - 1) / 2;
+				if(!comesBefore(member, amount, members[parent], amounts[parent]))
+				{
+					break;
+				}
+				members[child] = members[parent];
+				amounts[child] = amounts[parent];
+				child = parent;
+			}
+			members[child] = member;
+			amounts[child] = amount;
+		}
+
+		void pop()
+		{
+			size--;
+			int member = members[size];
+			long amount = amounts[size];
+			int root = 0;
+			while(true)
+			{
+				int child = 2 * root + 1;
+				if(child >= size)
+				{
+					break;
+				}
+				if(child + 1 < size && comesBefore(members[child + 1], amounts[child + 1], members[child], amounts[child]))
+				{
+					child++;
+				}
+				if(!comesBefore(members[child], amounts[child], member, amount))
+				{
+					break;
+				}
+				members[root] = members[child];
+				amounts[root] = amounts[child];
+				root = child;
+			}
+			members[root] = member;
+			amounts[root] = amount;
+		}
+
+		private static boolean comesBefore(int member, long amount, int otherMember, long otherAmount)
+		{
+			return amount > otherAmount || (amount == otherAmount && member < otherMember);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map of user entered data of a BillDetailsTO, backed by the given map, see TrackedSet.
+ * Values that can be changed in place (the participants of an item) are handed out through track
+ */
+class TrackedMap<K,V> extends AbstractMap<K,V> {
+
+	private final Map<K,V> map;
+
+	private final BillDetailsTO owner;
+
+	TrackedMap(Map<K,V> map, BillDetailsTO owner)
+	{
+		this.map = map;
+		this.owner = owner;
+	}
+
+	/**
+	 * @return the value as handed out, the value itself unless it can be changed in place
+	 */
+	V track(V value)
+	{
+		return value;
+	}
+
+	@Override
+	public int size()
+	{
+		return map.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return map.containsKey(key);
+	}
+
+	@Override
+	public V get(Object key)
+	{
+		return track(map.get(key));
+	}
+
+	@Override
+	public V put(K key, V value)
+	{
+		V previous = map.put(key, value);
+		owner.modified();
+		return previous;
+	}
+
+	@Override
+	public V remove(Object key)
+	{
+		if(!map.containsKey(key))
+		{
+			return null;
+		}
+		V previous = map.remove(key);
+		owner.modified();
+		return previous;
+	}
+
+	@Override
+	public void clear()
+	{
+		map.clear();
+		owner.modified();
+	}
+
+	@Override
+	public Set<Map.Entry<K,V>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<K,V>>() {
+			@Override
+			public int size() {
+				return map.size();
+			}
+
+			@Override
+			public Iterator<Map.Entry<K,V>> iterator() {
+				final Iterator<Map.Entry<K,V>> iterator = map.entrySet().iterator();
+				return new Iterator<Map.Entry<K,V>>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Map.Entry<K,V> next() {
+						final Map.Entry<K,V> entry = iterator.next();
+						return new SimpleEntry<K,V>(entry.getKey(), track(entry.getValue())) {
+							@Override
+							public V setValue(V value) {
+								super.setValue(value);
+								owner.modified();
+								return entry.setValue(value);
+							}
+						};
+					}
+
+					@Override
+					public void remove() {
+						iterator.remove();
+						owner.modified();
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o == this || map.equals(o);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return map.hashCode();
+	}
+}
@@ -0,0 +1,110 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Set of user entered data of a BillDetailsTO, backed by the given set. Every change made through it is counted by the bill,
+ * so that the engine knows its ledger does not account for the bill anymore (see BillDetailsTO.getLedger)
+ */
+class TrackedSet<E> extends AbstractSet<E> {
+
+	private final Set<E> set;
+
+	private final BillDetailsTO owner;
+
+	TrackedSet(Set<E> set, BillDetailsTO owner)
+	{
+		this.set = set;
+		this.owner = owner;
+	}
+
+	@Override
+	public int size()
+	{
+		return set.size();
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return set.contains(o);
+	}
+
+	@Override
+	public boolean add(E e)
+	{
+		boolean added = set.add(e);
+		if(added)
+		{
+			owner.modified();
+		}
+		return added;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c)
+	{
+		boolean added = set.addAll(c);
+		if(added)
+		{
+			owner.modified();
+		}
+		return added;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		boolean removed = set.remove(o);
+		if(removed)
+		{
+			owner.modified();
+		}
+		return removed;
+	}
+
+	@Override
+	public void clear()
+	{
+		set.clear();
+		owner.modified();
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		final Iterator<E> iterator = set.iterator();
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				owner.modified();
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o == this || set.equals(o);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return set.hashCode();
+	}
+}
@@ -0,0 +1,51 @@
+package com.ammofull.java.billsplitter.engine;
+
+/**
+ * One payment of a settlement: from pays amount to to. See BillSplitterService.settleBills
+ */
+public class TransferTO {
+
+	private String from;
+
+	private String to;
+
+	private Double amount;
+
+	public TransferTO() {
+	}
+
+	public TransferTO(String from, String to, Double amount) {
+		this.from = from;
+		this.to = to;
+		this.amount = amount;
+	}
+
+	public String getFrom() {
+		return from;
+	}
+
+	public void setFrom(String from) {
+		this.from = from;
+	}
+
+	public String getTo() {
+		return to;
+	}
+
+	public void setTo(String to) {
+		this.to = to;
+	}
+
+	public Double getAmount() {
+		return amount;
+	}
+
+	public void setAmount(Double amount) {
+		this.amount = amount;
+	}
+
+	@Override
+	public String toString() {
+		return from + " pays " + amount + " to " + to;
+	}
+}
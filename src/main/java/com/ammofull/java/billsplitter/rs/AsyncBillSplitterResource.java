@@ -0,0 +1,130 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+
+import com.ammofull.java.billsplitter.api.BillSplitterService;
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+
+/**
+ * The endpoints of BillSplitterResource under /async. The HTTP worker thread only suspends the request:
+ * the engine computes the bill on the BillComputeExecutor, entirely, so that writing the response does not compute anything.
+ * An invalid request gets 400 Bad Request, a request not answered within the timeout of the executor 503 Service Unavailable
+ */
+@Path("/ammofull/billsplitter/async")
+@Singleton
+public class AsyncBillSplitterResource {
+
+	private final BillSplitterService billSplitterService;
+
+	private final BillComputeExecutor billComputeExecutor;
+
+	@Inject
+	public AsyncBillSplitterResource(BillSplitterService billSplitterService, BillComputeExecutor billComputeExecutor)
+	{
+		this.billSplitterService = billSplitterService;
+		this.billComputeExecutor = billComputeExecutor;
+	}
+
+	@Path("/user/{user}")
+	@POST
+	@Consumes({MediaType.APPLICATION_JSON, BillSplitterResource.BINARY_BILL})
+	@Produces({MediaType.APPLICATION_JSON, BillSplitterResource.BINARY_BILL_PRODUCED})
+	public void addUser(@PathParam("user") final String user, final BillDetailsTO billDetailsTO, @Suspended AsyncResponse asyncResponse)
+	{
+		compute(asyncResponse, new BillComputation() {
+			@Override
+			BillDetailsTO apply() {
+				return billSplitterService.addUser(user, billDetailsTO);
+			}
+		});
+	}
+
+	@Path("/item/{itemname}/{amount}")
+	@POST
+	@Consumes({MediaType.APPLICATION_JSON, BillSplitterResource.BINARY_BILL})
+	@Produces({MediaType.APPLICATION_JSON, BillSplitterResource.BINARY_BILL_PRODUCED})
+	public void addItem(@PathParam("itemname") final String itemName, @PathParam("amount") final Double amount, final BillDetailsTO billDetailsTO,
+			@Suspended AsyncResponse asyncResponse)
+	{
+		compute(asyncResponse, new BillComputation() {
+			@Override
+			BillDetailsTO apply() {
+				return billSplitterService.addItem(itemName, amount, billDetailsTO);
+			}
+		});
+	}
+
+	@Path("/contribution/{itemname}/")
+	@POST
+	@Consumes({MediaType.APPLICATION_JSON, BillSplitterResource.BINARY_BILL})
+	@Produces({MediaType.APPLICATION_JSON, BillSplitterResource.BINARY_BILL_PRODUCED})
+	public void addContributionsForItem(@PathParam("itemname") final String itemName, @QueryParam("user") final Set<String> participants,
+			final BillDetailsTO billDetailsTO, @Suspended AsyncResponse asyncResponse)
+	{
+		compute(asyncResponse, new BillComputation() {
+			@Override
+			BillDetailsTO apply() {
+				return billSplitterService.addContributionsForItem(itemName, participants, billDetailsTO);
+			}
+		});
+	}
+
+	/**
+	 * See BillSplitterResource.applyOperations(BillBatchTO)
+	 */
+	@Path("/batch")
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void applyOperations(final BillBatchTO billBatchTO, @Suspended AsyncResponse asyncResponse)
+	{
+		compute(asyncResponse, new BillComputation() {
+			@Override
+			BillDetailsTO apply() {
+				if(billBatchTO == null)
+				{
+					throw new IllegalArgumentException("Batch cannot be null");
+				}
+				return billSplitterService.applyOperations(billBatchTO.getOperations(), billBatchTO.getBill());
+			}
+		});
+	}
+
+	private void compute(AsyncResponse asyncResponse, BillComputation computation)
+	{
+		billComputeExecutor.submit(asyncResponse, computation);
+	}
+
+	/**
+	 * Applies a change to a bill, then computes the bill
+	 */
+	private abstract class BillComputation implements Callable<BillDetailsTO> {
+
+		abstract BillDetailsTO apply();
+
+		@Override
+		public BillDetailsTO call() {
+			try
+			{
+				return billSplitterService.computeNow(apply());
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw BillSplitterResource.badRequest(e);
+			}
+		}
+	}
+}
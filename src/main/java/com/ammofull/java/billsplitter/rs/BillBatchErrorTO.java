@@ -0,0 +1,38 @@
+package com.ammofull.java.billsplitter.rs;
+
+/**
+ * Answer of POST /ammofull/billsplitter/batch when an operation is not valid. None of the operations has been applied
+ */
+public class BillBatchErrorTO {
+
+	/**
+	 * Position of the invalid operation in BillBatchTO.operations
+	 */
+	private int operationIndex;
+
+	private String message;
+
+	public BillBatchErrorTO() {
+	}
+
+	public BillBatchErrorTO(int operationIndex, String message) {
+		this.operationIndex = operationIndex;
+		this.message = message;
+	}
+
+	public int getOperationIndex() {
+		return operationIndex;
+	}
+
+	public void setOperationIndex(int operationIndex) {
+		this.operationIndex = operationIndex;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+}
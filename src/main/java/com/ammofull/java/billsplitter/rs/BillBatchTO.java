@@ -0,0 +1,40 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.util.List;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+
+/**
+ * Body of POST /ammofull/billsplitter/batch: a bill, or none for a new one, and the operations to apply to it in order
+ */
+public class BillBatchTO {
+
+	private BillDetailsTO bill;
+
+	private List<BillOperationTO> operations;
+
+	public BillBatchTO() {
+	}
+
+	public BillBatchTO(BillDetailsTO bill, List<BillOperationTO> operations) {
+		this.bill = bill;
+		this.operations = operations;
+	}
+
+	public BillDetailsTO getBill() {
+		return bill;
+	}
+
+	public void setBill(BillDetailsTO bill) {
+		this.bill = bill;
+	}
+
+	public List<BillOperationTO> getOperations() {
+		return operations;
+	}
+
+	public void setOperations(List<BillOperationTO> operations) {
+		this.operations = operations;
+	}
+}
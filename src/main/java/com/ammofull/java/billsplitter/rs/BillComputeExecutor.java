@@ -0,0 +1,156 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+
+/**
+ * Runs the engine work of the asynchronous endpoints away from the HTTP worker threads, so that a large bill does not hold up small requests.
+ * Either a bounded pool of platform threads with a bounded queue, or one virtual thread per request on a JDK that has them.
+ * Virtual threads are not bounded: the timeout is then what limits the work in progress.
+ * A request that finds the queue full, or that is not answered within the timeout, gets 503 Service Unavailable
+ */
+public class BillComputeExecutor {
+
+	private final ExecutorService executorService;
+
+	private final long timeoutMillis;
+
+	private final boolean virtualThreads;
+
+	/**
+	 * @param threads size of the pool of platform threads
+	 * @param queueCapacity requests waiting for a thread of the pool, beyond which requests are turned away
+	 * @param timeoutMillis time a request has to be answered, from its submission
+	 * @param virtualThreads one virtual thread per request instead of the pool, when the JDK has them. The pool is used otherwise
+	 */
+	public BillComputeExecutor(int threads, int queueCapacity, long timeoutMillis, boolean virtualThreads) {
+		if(threads <= 0 || queueCapacity <= 0 || timeoutMillis <= 0)
+		{
+			throw new IllegalArgumentException("Threads, queue capacity and timeout must be positive");
+		}
+		ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+		if(virtualThreadExecutor != null)
+		{
+			this.executorService = virtualThreadExecutor;
+		}
+		else
+		{
+			this.executorService = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueCapacity), new ComputeThreadFactory());
+		}
+		this.virtualThreads = virtualThreadExecutor != null;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Executor configured by the system properties billsplitter.compute.threads (default the number of processors),
+	 * billsplitter.compute.queueCapacity (default 1024), billsplitter.compute.timeoutMillis (default 10000)
+	 * and billsplitter.compute.virtualThreads (default false)
+	 */
+	public static BillComputeExecutor fromSystemProperties() {
+		return new BillComputeExecutor(Integer.getInteger("billsplitter.compute.threads", Runtime.getRuntime().availableProcessors()),
+				Integer.getInteger("billsplitter.compute.queueCapacity", 1024),
+				Long.getLong("billsplitter.compute.timeoutMillis", 10000),
+				Boolean.getBoolean("billsplitter.compute.virtualThreads"));
+	}
+
+	/**
+	 * Resumes the response with what the computation returns or throws, or with 503 Service Unavailable if it is not done within the timeout.
+	 * A computation that times out is interrupted
+	 */
+	public void submit(final AsyncResponse asyncResponse, final Callable<?> computation) {
+		final FutureTask<Void> task = new FutureTask<>(new Runnable() {
+			@Override
+			public void run() {
+				if(asyncResponse.isDone())
+				{
+					// Timed out while queued
+					return;
+				}
+				try
+				{
+					asyncResponse.resume(computation.call());
+				}
+				catch(Throwable t)
+				{
+					asyncResponse.resume(t);
+				}
+			}
+		}, null);
+		// Before the submission, so that it cannot miss a computation that ends quickly
+		asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+			@Override
+			public void handleTimeout(AsyncResponse timedOutResponse) {
+				timedOutResponse.resume(new ServiceUnavailableException("Bill not computed in " + timeoutMillis + " ms"));
+				task.cancel(true);
+			}
+		});
+		asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		try
+		{
+			executorService.execute(task);
+		}
+		catch(RejectedExecutionException e)
+		{
+			asyncResponse.resume(new ServiceUnavailableException("Too many bills being computed, retry later"));
+		}
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Stops taking computations and waits for the running ones
+	 */
+	public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		executorService.shutdown();
+		if(!executorService.awaitTermination(timeout, unit))
+		{
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Looked up by reflection, the sources are built for JDKs without virtual threads
+	 * @return Executors.newVirtualThreadPerTaskExecutor(), or null if the JDK does not have it
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return null;
+		}
+	}
+
+	private static class ComputeThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "bill-compute-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Reads a BillDetailsTO token by token, filling the maps of a new bill in place instead of building
+ * each one through a generic map deserializer. Accepts the same JSON as bean deserialization, users keep their order.
+ * The model holds boxed amounts, so reading still boxes them once
+ */
+public class BillDetailsDeserializer extends StdDeserializer<BillDetailsTO> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String USERS = "users";
+	static final String ITEMS_VS_PARTICIPANTS = "itemsVsParticipants";
+	static final String ITEM_VS_AMOUNT = "itemVsAmount";
+	static final String TIPS_AND_TAXES = "tipsAndTaxes";
+	static final String ITEM_VS_PAYER = "itemVsPayer";
+	static final String CALCULATION_MODE = "calculationMode";
+	static final String ITEMS_VS_PER_HEAD_CONTRIBUTIONS = "itemsVsPerHeadContributions";
+	static final String USER_VS_PERCENTAGE_CONTRIB_IN_THE_BILL = "userVsPercentageContribInTheBill";
+	static final String USER_VS_TOTAL_PER_HEAD_CONTRIBUTION = "userVsTotalPerHeadContribution";
+
+	public BillDetailsDeserializer() {
+		super(BillDetailsTO.class);
+	}
+
+	@Override
+	public BillDetailsTO deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if(token == JsonToken.START_OBJECT)
+		{
+			token = parser.nextToken();
+		}
+		if(token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT)
+		{
+			throw context.mappingException(BillDetailsTO.class, token);
+		}
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		for(; token == JsonToken.FIELD_NAME; token = parser.nextToken())
+		{
+			String field = parser.getCurrentName();
+			boolean isNull = parser.nextToken() == JsonToken.VALUE_NULL;
+			switch(field)
+			{
+			case USERS:
+				if(isNull)
+				{
+					billDetailsTO.setUsers(null);
+				}
+				else
+				{
+					readNames(parser, context, billDetailsTO.getUsers());
+				}
+				break;
+			case ITEMS_VS_PARTICIPANTS:
+				if(isNull)
+				{
+					billDetailsTO.setItemsVsParticipants(null);
+				}
+				else
+				{
+					Map<String,Set<String>> itemsVsParticipants = billDetailsTO.getItemsVsParticipants();
+					for(String item = firstField(parser, context); item != null; item = nextField(parser))
+					{
+						Set<String> participants = null;
+						if(parser.getCurrentToken() != JsonToken.VALUE_NULL)
+						{
+							participants = new HashSet<>();
+							readNames(parser, context, participants);
+						}
+						itemsVsParticipants.put(item, participants);
+					}
+				}
+				break;
+			case ITEM_VS_AMOUNT:
+				if(isNull)
+				{
+					billDetailsTO.setItemVsAmount(null);
+				}
+				else
+				{
+					readAmounts(parser, context, billDetailsTO.getItemVsAmount());
+				}
+				break;
+			case TIPS_AND_TAXES:
+				billDetailsTO.setTipsAndTaxes(readAmount(parser, context));
+				break;
+			case ITEM_VS_PAYER:
+				if(isNull)
+				{
+					billDetailsTO.setItemVsPayer(null);
+				}
+				else
+				{
+					Map<String,String> itemVsPayer = billDetailsTO.getItemVsPayer();
+					for(String item = firstField(parser, context); item != null; item = nextField(parser))
+					{
+						itemVsPayer.put(item, readName(parser, context));
+					}
+				}
+				break;
+			case CALCULATION_MODE:
+				billDetailsTO.setCalculationMode(isNull ? null : readCalculationMode(parser, context));
+				break;
+			case ITEMS_VS_PER_HEAD_CONTRIBUTIONS:
+				if(isNull)
+				{
+					billDetailsTO.setItemsVsPerHeadContributions(null);
+				}
+				else
+				{
+					Map<String,Map<String,Double>> itemsVsPerHeadContributions = billDetailsTO.getItemsVsPerHeadContributions();
+					for(String item = firstField(parser, context); item != null; item = nextField(parser))
+					{
+						Map<String,Double> contributions = null;
+						if(parser.getCurrentToken() != JsonToken.VALUE_NULL)
+						{
+							contributions = new HashMap<>();
+							readAmounts(parser, context, contributions);
+						}
+						itemsVsPerHeadContributions.put(item, contributions);
+					}
+				}
+				break;
+			case USER_VS_PERCENTAGE_CONTRIB_IN_THE_BILL:
+				if(isNull)
+				{
+					billDetailsTO.setUserVsPercentageContribInTheBill(null);
+				}
+				else
+				{
+					readAmounts(parser, context, billDetailsTO.getUserVsPercentageContribInTheBill());
+				}
+				break;
+			case USER_VS_TOTAL_PER_HEAD_CONTRIBUTION:
+				if(isNull)
+				{
+					billDetailsTO.setUserVsTotalPerHeadContribution(null);
+				}
+				else
+				{
+					readAmounts(parser, context, billDetailsTO.getUserVsTotalPerHeadContribution());
+				}
+				break;
+			default:
+				handleUnknownProperty(parser, context, billDetailsTO, field);
+			}
+		}
+		return billDetailsTO;
+	}
+
+	private static CalculationMode readCalculationMode(JsonParser parser, DeserializationContext context) throws IOException {
+		String name = readName(parser, context);
+		try
+		{
+			return CalculationMode.valueOf(name);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw context.weirdStringException(name, CalculationMode.class, "not one of the calculation modes");
+		}
+	}
+
+	private static void readNames(JsonParser parser, DeserializationContext context, Set<String> names) throws IOException {
+		if(parser.getCurrentToken() != JsonToken.START_ARRAY)
+		{
+			throw context.wrongTokenException(parser, JsonToken.START_ARRAY, "expected a list of names");
+		}
+		while(parser.nextToken() != JsonToken.END_ARRAY)
+		{
+			names.add(readName(parser, context));
+		}
+	}
+
+	private static String readName(JsonParser parser, DeserializationContext context) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if(token == JsonToken.VALUE_NULL)
+		{
+			return null;
+		}
+		if(token != JsonToken.VALUE_STRING)
+		{
+			throw context.wrongTokenException(parser, JsonToken.VALUE_STRING, "expected a name");
+		}
+		return parser.getText();
+	}
+
+	private static void readAmounts(JsonParser parser, DeserializationContext context, Map<String,Double> amounts) throws IOException {
+		for(String name = firstField(parser, context); name != null; name = nextField(parser))
+		{
+			amounts.put(name, readAmount(parser, context));
+		}
+	}
+
+	/**
+	 * Numbers, and numbers in strings as bean deserialization accepts them
+	 */
+	private static Double readAmount(JsonParser parser, DeserializationContext context) throws IOException {
+		switch(parser.getCurrentToken())
+		{
+		case VALUE_NULL:
+			return null;
+		case VALUE_NUMBER_FLOAT:
+		case VALUE_NUMBER_INT:
+			return parser.getDoubleValue();
+		case VALUE_STRING:
+			String text = parser.getText().trim();
+			try
+			{
+				return Double.valueOf(text);
+			}
+			catch(NumberFormatException e)
+			{
+				throw context.weirdStringException(text, Double.class, "not a valid amount");
+			}
+		default:
+			throw context.wrongTokenException(parser, JsonToken.VALUE_NUMBER_FLOAT, "expected an amount");
+		}
+	}
+
+	/**
+	 * Enters the object at the current token and moves to the value of its first field
+	 * @return the name of the first field, or null if the object is empty
+	 */
+	private static String firstField(JsonParser parser, DeserializationContext context) throws IOException {
+		if(parser.getCurrentToken() != JsonToken.START_OBJECT)
+		{
+			throw context.wrongTokenException(parser, JsonToken.START_OBJECT, "expected a map");
+		}
+		return nextField(parser);
+	}
+
+	/**
+	 * Moves to the value of the next field of the current object
+	 * @return the name of the field, or null at the end of the object
+	 */
+	private static String nextField(JsonParser parser) throws IOException {
+		if(parser.nextToken() != JsonToken.FIELD_NAME)
+		{
+			return null;
+		}
+		String name = parser.getCurrentName();
+		parser.nextToken();
+		return name;
+	}
+}
@@ -0,0 +1,155 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.IndexedAmounts;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes a BillDetailsTO straight to the generator, in the same shape as bean serialization.
+ * The calculated data of a computed bill is read as IndexedAmounts, so its amounts are written without being boxed
+ */
+public class BillDetailsSerializer extends StdSerializer<BillDetailsTO> {
+
+	public BillDetailsSerializer() {
+		super(BillDetailsTO.class);
+	}
+
+	@Override
+	public void serialize(BillDetailsTO billDetailsTO, JsonGenerator generator, SerializerProvider provider) throws IOException {
+		generator.writeStartObject();
+
+		generator.writeFieldName(BillDetailsDeserializer.USERS);
+		writeNames(billDetailsTO.getUsers(), generator);
+
+		generator.writeFieldName(BillDetailsDeserializer.ITEMS_VS_PARTICIPANTS);
+		Map<String,Set<String>> itemsVsParticipants = billDetailsTO.getItemsVsParticipants();
+		if(itemsVsParticipants == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeStartObject();
+			for(Map.Entry<String,Set<String>> itemAndParticipants : itemsVsParticipants.entrySet())
+			{
+				generator.writeFieldName(itemAndParticipants.getKey());
+				writeNames(itemAndParticipants.getValue(), generator);
+			}
+			generator.writeEndObject();
+		}
+
+		generator.writeFieldName(BillDetailsDeserializer.ITEM_VS_AMOUNT);
+		writeAmounts(billDetailsTO.getItemVsAmount(), generator);
+
+		generator.writeFieldName(BillDetailsDeserializer.TIPS_AND_TAXES);
+		writeAmount(billDetailsTO.getTipsAndTaxes(), generator);
+
+		generator.writeFieldName(BillDetailsDeserializer.ITEM_VS_PAYER);
+		Map<String,String> itemVsPayer = billDetailsTO.getItemVsPayer();
+		if(itemVsPayer == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeStartObject();
+			for(Map.Entry<String,String> itemAndPayer : itemVsPayer.entrySet())
+			{
+				generator.writeStringField(itemAndPayer.getKey(), itemAndPayer.getValue());
+			}
+			generator.writeEndObject();
+		}
+
+		generator.writeFieldName(BillDetailsDeserializer.CALCULATION_MODE);
+		if(billDetailsTO.getCalculationMode() == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeString(billDetailsTO.getCalculationMode().name());
+		}
+
+		generator.writeFieldName(BillDetailsDeserializer.ITEMS_VS_PER_HEAD_CONTRIBUTIONS);
+		Map<String,Map<String,Double>> itemsVsPerHeadContributions = billDetailsTO.getItemsVsPerHeadContributions();
+		if(itemsVsPerHeadContributions == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeStartObject();
+			for(Map.Entry<String,Map<String,Double>> itemAndContributions : itemsVsPerHeadContributions.entrySet())
+			{
+				generator.writeFieldName(itemAndContributions.getKey());
+				writeAmounts(itemAndContributions.getValue(), generator);
+			}
+			generator.writeEndObject();
+		}
+
+		generator.writeFieldName(BillDetailsDeserializer.USER_VS_PERCENTAGE_CONTRIB_IN_THE_BILL);
+		writeAmounts(billDetailsTO.getUserVsPercentageContribInTheBill(), generator);
+
+		generator.writeFieldName(BillDetailsDeserializer.USER_VS_TOTAL_PER_HEAD_CONTRIBUTION);
+		writeAmounts(billDetailsTO.getUserVsTotalPerHeadContribution(), generator);
+
+		generator.writeEndObject();
+	}
+
+	private static void writeNames(Set<String> names, JsonGenerator generator) throws IOException {
+		if(names == null)
+		{
+			generator.writeNull();
+			return;
+		}
+		generator.writeStartArray();
+		for(String name : names)
+		{
+			generator.writeString(name);
+		}
+		generator.writeEndArray();
+	}
+
+	private static void writeAmounts(Map<String,Double> amounts, JsonGenerator generator) throws IOException {
+		if(amounts == null)
+		{
+			generator.writeNull();
+			return;
+		}
+		generator.writeStartObject();
+		if(amounts instanceof IndexedAmounts)
+		{
+			IndexedAmounts indexedAmounts = (IndexedAmounts)amounts;
+			for(int index = 0; index < indexedAmounts.size(); index++)
+			{
+				generator.writeNumberField(indexedAmounts.nameAt(index), indexedAmounts.amountAt(index));
+			}
+		}
+		else
+		{
+			for(Map.Entry<String,Double> nameAndAmount : amounts.entrySet())
+			{
+				generator.writeFieldName(nameAndAmount.getKey());
+				writeAmount(nameAndAmount.getValue(), generator);
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	private static void writeAmount(Double amount, JsonGenerator generator) throws IOException {
+		if(amount == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeNumber(amount.doubleValue());
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Results computed from a bill, by the fingerprint of the bill (see PersistentBill.getFingerprint) and the kind of result.
+ * Bills with the same data share their results, whatever their session. The results are shared and must not be changed
+ *
+ * Thread safe. The results are in a ConcurrentHashMap, so a lookup takes no lock. Bounded, approximately least recently used first:
+ * as in BillSessionStore, each use is numbered and one thread at a time evicts the results with the oldest last use.
+ * The threads that find it busy do not wait for it, so the cache can go a little over its size for a while
+ */
+public class BillResultCache {
+
+	private final int maxEntries;
+
+	/**
+	 * Size the cache is brought back to by an eviction, an eighth below maxEntries so that the sort of the victims is amortized over the next puts
+	 */
+	private final int evictedSize;
+
+	private final ConcurrentHashMap<String,Result> results = new ConcurrentHashMap<>();
+
+	/**
+	 * Orders the uses of the results, for the least recently used
+	 */
+	private final AtomicLong useCount = new AtomicLong();
+
+	/**
+	 * Held by the thread picking the victims
+	 */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	public BillResultCache(int maxEntries) {
+		if(maxEntries <= 0)
+		{
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.evictedSize = maxEntries - maxEntries / 8;
+	}
+
+	/**
+	 * Cache of billsplitter.session.resultCacheEntries results (default 1024)
+	 */
+	public static BillResultCache fromSystemProperties() {
+		return new BillResultCache(Integer.getInteger("billsplitter.session.resultCacheEntries", 1024));
+	}
+
+	/**
+	 * @return the cached result, or null
+	 */
+	public Object get(String fingerprint, String kind) {
+		Result result = results.get(key(fingerprint, kind));
+		if(result == null)
+		{
+			return null;
+		}
+		result.lastUse = useCount.incrementAndGet();
+		return result.value;
+	}
+
+	public void put(String fingerprint, String kind, Object result) {
+		results.put(key(fingerprint, kind), new Result(result, useCount.incrementAndGet()));
+		evictOverSize();
+	}
+
+	public int size() {
+		return results.size();
+	}
+
+	/**
+	 * Evicts the least recently used results down to about evictedSize. If another thread is evicting, returns at once.
+	 * The last uses are sorted, O(n log n), for the last use from which the results are kept.
+	 * A result used in the meantime is kept whatever its last use was
+	 */
+	private void evictOverSize() {
+		if(results.size() <= maxEntries || !evictionLock.tryLock())
+		{
+			return;
+		}
+		try
+		{
+			List<Result> candidates = new ArrayList<>(results.values());
+			if(candidates.size() <= evictedSize)
+			{
+				return;
+			}
+			long[] lastUses = new long[candidates.size()];
+			for(int i = 0; i < lastUses.length; i++)
+			{
+				lastUses[i] = candidates.get(i).lastUse;
+			}
+			Arrays.sort(lastUses);
+			long lastEvictedUse = lastUses[lastUses.length - evictedSize - 1];
+			for(Map.Entry<String,Result> entry : results.entrySet())
+			{
+				if(entry.getValue().lastUse <= lastEvictedUse)
+				{
+					// Not if it was put again in the meantime
+					results.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	private static String key(String fingerprint, String kind) {
+		return fingerprint + '/' + kind;
+	}
+
+	private static class Result {
+
+		private final Object value;
+
+		/**
+		 * Order of the last use among all the uses
+		 */
+		private volatile long lastUse;
+
+		Result(Object value, long lastUse) {
+			this.value = value;
+			this.lastUse = lastUse;
+		}
+	}
+}
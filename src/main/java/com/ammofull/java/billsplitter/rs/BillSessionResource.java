@@ -0,0 +1,268 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.ConcurrentBill;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+
+/**
+ * Bills held by the server (see BillSessionStore). A client creates a bill once, then sends only the operations to /bill/{id}/...
+ * The operations answer 204 No Content: the client reads the bill or the totals when it needs them.
+ * Reads do not wait for the operations, and operations on different items of a bill run in parallel (see ConcurrentBill).
+ * Reads are conditional: a client polling an unchanged bill gets 304 Not Modified, and the results are cached (see BillResultCache)
+ */
+@Path("/ammofull/billsplitter/bill")
+@Singleton
+public class BillSessionResource {
+	
+	private final BillSessionStore billSessionStore;
+	
+	private final BillResultCache billResultCache;
+	
+	@Inject
+	public BillSessionResource(BillSessionStore billSessionStore, BillResultCache billResultCache)
+	{
+		this.billSessionStore = billSessionStore;
+		this.billResultCache = billResultCache;
+	}
+	
+	/**
+	 * Creates a bill, empty or with the user entered data of the given one
+	 * @return 201 Created with the id of the bill as body and its URI as location
+	 */
+	@POST
+	@Consumes({MediaType.APPLICATION_JSON, BillSplitterResource.COMPACT_BILL_JSON})
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response createBill(CompactBillTO compactBillTO, @Context UriInfo uriInfo)
+	{
+		BillDetailsTO billDetailsTO;
+		try
+		{
+			billDetailsTO = compactBillTO == null ? null : compactBillTO.toBillDetailsTO();
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw badRequest(e);
+		}
+		String id = billSessionStore.create(billDetailsTO);
+		URI location = uriInfo.getAbsolutePathBuilder().path(id).build();
+		return Response.created(location).entity(id).build();
+	}
+	
+	/**
+	 * Strong ETag from the fingerprint of the bill and the coding: 304 Not Modified if the bill is unchanged since the client's If-None-Match
+	 */
+	@Path("/{id}")
+	@GET
+	@Produces({MediaType.APPLICATION_JSON, BillSplitterResource.COMPACT_BILL_JSON})
+	public Response getBill(@PathParam("id") String id, @QueryParam("totals") final boolean withTotals, @Context Request request,
+			@Context HttpHeaders headers)
+	{
+		return conditionalRead(id, request, headers, withTotals ? "compact-totals" : "compact", new BillResult() {
+			@Override
+			Object of(BillDetailsTO computedBill) {
+				return CompactBillTO.of(computedBill, withTotals);
+			}
+		});
+	}
+	
+	/**
+	 * Strong ETag from the fingerprint of the bill, as getBill
+	 * @return user name vs total per head contribution
+	 */
+	@Path("/{id}/totals")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getTotals(@PathParam("id") String id, @Context Request request, @Context HttpHeaders headers)
+	{
+		return conditionalRead(id, request, headers, "totals", new BillResult() {
+			@Override
+			Object of(BillDetailsTO computedBill) {
+				return new LinkedHashMap<>(computedBill.getUserVsTotalPerHeadContribution());
+			}
+		});
+	}
+	
+	@Path("/{id}")
+	@DELETE
+	public void deleteBill(@PathParam("id") String id)
+	{
+		if(!billSessionStore.delete(id))
+		{
+			throw new NotFoundException("No bill " + id);
+		}
+	}
+	
+	@Path("/{id}/user/{user}")
+	@POST
+	public void addUser(@PathParam("id") String id, @PathParam("user") String user)
+	{
+		apply(id, BillOperationTO.addUser(user));
+	}
+	
+	@Path("/{id}/item/{itemname}/{amount}")
+	@POST
+	public void addItem(@PathParam("id") String id, @PathParam("itemname") String itemName, @PathParam("amount") Double amount)
+	{
+		apply(id, BillOperationTO.addItem(itemName, amount));
+	}
+	
+	@Path("/{id}/item/{itemname}")
+	@DELETE
+	public void deleteItem(@PathParam("id") String id, @PathParam("itemname") String itemName)
+	{
+		apply(id, BillOperationTO.deleteItem(itemName));
+	}
+	
+	@Path("/{id}/contribution/{itemname}")
+	@POST
+	public void addContributionsForItem(@PathParam("id") String id, @PathParam("itemname") String itemName, @QueryParam("user") Set<String> participants)
+	{
+		apply(id, BillOperationTO.setParticipants(itemName, participants));
+	}
+	
+	@Path("/{id}/tips/{amount}")
+	@POST
+	public void addTipsAndTaxes(@PathParam("id") String id, @PathParam("amount") Double amount)
+	{
+		apply(id, BillOperationTO.setTipsAndTaxes(amount));
+	}
+	
+	/**
+	 * Applies a batch of operations at once, see BillSplitterService.applyOperations. Readers see all of them or none
+	 */
+	@Path("/{id}/operations")
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	public void applyOperations(@PathParam("id") String id, List<BillOperationTO> operations)
+	{
+		apply(id, operations);
+	}
+	
+	private void apply(String id, BillOperationTO operation)
+	{
+		apply(id, Collections.singletonList(operation));
+	}
+	
+	/**
+	 * Applies the operations to the bill
+	 * @throws NotFoundException if there is no such bill
+	 * @throws BadRequestException if an operation is not valid for the bill
+	 */
+	private void apply(String id, final List<BillOperationTO> operations)
+	{
+		Boolean applied;
+		try
+		{
+			applied = billSessionStore.apply(id, new BillSessionStore.BillAction<Boolean>() {
+				@Override
+				public Boolean apply(ConcurrentBill bill) {
+					bill.applyAll(operations);
+					return Boolean.TRUE;
+				}
+			});
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw badRequest(e);
+		}
+		if(applied == null)
+		{
+			throw new NotFoundException("No bill " + id);
+		}
+	}
+	
+	/**
+	 * Reads the bill
+	 * @throws NotFoundException if there is no such bill
+	 */
+	private <T> T read(String id, BillSessionStore.BillAction<T> action)
+	{
+		T result = billSessionStore.read(id, action);
+		if(result == null)
+		{
+			throw new NotFoundException("No bill " + id);
+		}
+		return result;
+	}
+	
+	/**
+	 * Answers 304 Not Modified if the client has the current version of the result, else the result, taken from the BillResultCache
+	 * or computed from the bill. The ETag is the fingerprint of the bill and the kind of result, plus the coding if the response is compressed.
+	 * The client has the current version if its If-None-Match holds the ETag of the plain result or of the coding it accepts
+	 * @throws NotFoundException if there is no such bill
+	 */
+	private Response conditionalRead(String id, final Request request, final HttpHeaders headers, final String kind, final BillResult billResult)
+	{
+		return read(id, new BillSessionStore.BillAction<Response>() {
+			@Override
+			public Response apply(ConcurrentBill bill) {
+				PersistentBill snapshot = bill.getSnapshot();
+				String fingerprint = snapshot.getFingerprint();
+				EntityTag entityTag = new EntityTag(fingerprint + '-' + kind);
+				Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+				String coding = CompressionInterceptor.negotiate(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+				if(notModified == null && coding != null)
+				{
+					notModified = request.evaluatePreconditions(CompressionInterceptor.withCoding(entityTag, coding));
+				}
+				if(notModified != null)
+				{
+					return notModified.build();
+				}
+				Object result = billResultCache.get(fingerprint, kind);
+				if(result == null)
+				{
+					BillDetailsTO computedBill = bill.getComputedBill();
+					if(bill.getSnapshot() != snapshot)
+					{
+						// A writer published a version in between: compute the one of the fingerprint
+						computedBill = snapshot.toBillDetailsTO();
+					}
+					result = billResult.of(computedBill);
+					billResultCache.put(fingerprint, kind, result);
+				}
+				return Response.ok(result).tag(entityTag).build();
+			}
+		});
+	}
+	
+	private static BadRequestException badRequest(IllegalArgumentException e)
+	{
+		return new BadRequestException(Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build());
+	}
+	
+	/**
+	 * A result computed from a bill, to be cached by the fingerprint of the bill
+	 */
+	private abstract static class BillResult {
+		
+		abstract Object of(BillDetailsTO computedBill);
+	}
+}
@@ -0,0 +1,502 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.ConcurrentBill;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Bills held by the server between calls, by bill id, so that a client sends only the operation and not the whole bill.
+ * 1) A session that has not been used for ttlMillis expires: it is dropped when it is next looked up, or by the next eviction
+ * 2) When the estimated size of the sessions goes over the memory budget, the least recently used ones are evicted:
+ *    dropped, or written to the spill directory if there is one and read back on their next use
+ *
+ * Thread safe. The sessions are in a ConcurrentHashMap, so looking up a session in memory takes no lock.
+ * The IO of a session, spilling or reading it back, holds only the lock of its stripe of ids: a lookup in memory never waits for it.
+ * One thread at a time picks the victims, by last use, and the threads that find it busy do not wait for it: the budget is soft.
+ * A bill is a ConcurrentBill: reads do not wait for the writers of the bill, and writers of different items of a bill run in parallel
+ */
+public class BillSessionStore {
+
+	/**
+	 * Reads or changes the bill of a session. Must not return null
+	 */
+	public interface BillAction<T> {
+		T apply(ConcurrentBill bill);
+	}
+
+	private static final String SPILL_FILE_SUFFIX = ".bill.json";
+
+	private static final int SPILL_LOCK_STRIPES = 64;
+
+	/**
+	 * Rough heap cost of the bill object and its empty maps, then of each user, item and participant
+	 */
+	private static final long BILL_BYTES = 1024;
+
+	private static final long USER_BYTES = 160;
+
+	private static final long ITEM_BYTES = 400;
+
+	private static final long PARTICIPANT_BYTES = 64;
+
+	private static final Comparator<Session> LEAST_RECENTLY_USED_FIRST = new Comparator<Session>() {
+		@Override
+		public int compare(Session session, Session otherSession) {
+			long lastUse = session.lastUse;
+			long otherLastUse = otherSession.lastUse;
+			return lastUse < otherLastUse ? -1 : lastUse == otherLastUse ? 0 : 1;
+		}
+	};
+
+	private final long ttlMillis;
+
+	private final long memoryBudgetBytes;
+
+	/**
+	 * Null when evicted sessions are dropped
+	 */
+	private final File spillDirectory;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final ConcurrentHashMap<String,Session> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Held to take a session out of the map to spill it, to bring one back from the spill directory, and to delete a spilled one,
+	 * so that a lookup in between cannot miss the session in both places
+	 */
+	private final ReentrantLock[] spillLocks = new ReentrantLock[SPILL_LOCK_STRIPES];
+
+	/**
+	 * Held by the thread picking the victims
+	 */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Orders the uses of the sessions, for the least recently used. Unlike the wall clock, two uses never tie
+	 */
+	private final AtomicLong useCount = new AtomicLong();
+
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	public BillSessionStore(long ttlMillis, long memoryBudgetBytes, File spillDirectory) {
+		if(ttlMillis <= 0 || memoryBudgetBytes <= 0)
+		{
+			throw new IllegalArgumentException("TTL and memory budget must be positive");
+		}
+		if(spillDirectory != null && !spillDirectory.isDirectory() && !spillDirectory.mkdirs())
+		{
+			throw new IllegalArgumentException("Cannot create spill directory " + spillDirectory);
+		}
+		this.ttlMillis = ttlMillis;
+		this.memoryBudgetBytes = memoryBudgetBytes;
+		this.spillDirectory = spillDirectory;
+		for(int stripe = 0; stripe < SPILL_LOCK_STRIPES; stripe++)
+		{
+			spillLocks[stripe] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Store configured by the system properties billsplitter.session.ttlMinutes (default 60),
+	 * billsplitter.session.memoryBudgetMb (default 64) and billsplitter.session.spillDirectory (default none)
+	 */
+	public static BillSessionStore fromSystemProperties() {
+		String spillDirectory = System.getProperty("billsplitter.session.spillDirectory");
+		return new BillSessionStore(Long.getLong("billsplitter.session.ttlMinutes", 60) * 60 * 1000,
+				Long.getLong("billsplitter.session.memoryBudgetMb", 64) * 1024 * 1024,
+				spillDirectory == null ? null : new File(spillDirectory));
+	}
+
+	/**
+	 * @param billDetailsTO first version of the bill, or null for an empty bill
+	 * @return the id of the new session
+	 */
+	public String create(BillDetailsTO billDetailsTO) {
+		Session session = new Session(UUID.randomUUID().toString(), PersistentBill.of(billDetailsTO == null ? new BillDetailsTO() : billDetailsTO));
+		touch(session, System.currentTimeMillis());
+		sessions.put(session.id, session);
+		resize(session, estimateBytes(session.bill.getSnapshot()));
+		evictOverBudget(session);
+		return session.id;
+	}
+
+	/**
+	 * Runs an action that changes the bill of the session. It is not evicted while the action runs, so that no change is lost
+	 * @return what the action returns, or null if there is no such session (unknown, expired or dropped)
+	 */
+	public <T> T apply(String id, BillAction<T> action) {
+		while(true)
+		{
+			Session session = getSession(id);
+			if(session == null)
+			{
+				return null;
+			}
+			T result;
+			session.evictionLock.readLock().lock();
+			try
+			{
+				if(session.evicted)
+				{
+					// Evicted between the lookup and now: look it up again, from the spill directory
+					continue;
+				}
+				result = action.apply(session.bill);
+			}
+			finally
+			{
+				session.evictionLock.readLock().unlock();
+			}
+			resize(session, estimateBytes(session.bill.getSnapshot()));
+			evictOverBudget(session);
+			return result;
+		}
+	}
+
+	/**
+	 * Runs an action that only reads the bill of the session. It does not wait for the actions that change the bill
+	 * @return what the action returns, or null if there is no such session (unknown, expired or dropped)
+	 */
+	public <T> T read(String id, BillAction<T> action) {
+		Session session = getSession(id);
+		return session == null ? null : action.apply(session.bill);
+	}
+
+	/**
+	 * @return false if there was no such session
+	 */
+	public boolean delete(String id) {
+		Session session = sessions.get(id);
+		if(session != null && unlink(session))
+		{
+			markEvicted(session);
+			return true;
+		}
+		File file = spillFile(id);
+		if(file == null)
+		{
+			return false;
+		}
+		ReentrantLock spillLock = spillLockOf(id);
+		spillLock.lock();
+		try
+		{
+			return file.delete();
+		}
+		finally
+		{
+			spillLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of sessions in memory
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return the estimated size of the sessions in memory
+	 */
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	private Session getSession(String id) {
+		long now = System.currentTimeMillis();
+		Session session = sessions.get(id);
+		if(session != null && isExpired(session, now))
+		{
+			if(unlink(session))
+			{
+				markEvicted(session);
+			}
+			return null;
+		}
+		if(session == null)
+		{
+			session = readBackSpilledSession(id, now);
+			if(session == null)
+			{
+				return null;
+			}
+		}
+		touch(session, now);
+		evictOverBudget(session);
+		return session;
+	}
+
+	/**
+	 * Under the lock of the id's stripe: a session being spilled is either still in the map or already in its file
+	 */
+	private Session readBackSpilledSession(String id, long now) {
+		if(spillDirectory == null)
+		{
+			return null;
+		}
+		ReentrantLock spillLock = spillLockOf(id);
+		spillLock.lock();
+		try
+		{
+			Session session = sessions.get(id);
+			if(session == null)
+			{
+				session = readSpilledSession(id, now);
+				if(session == null)
+				{
+					return null;
+				}
+				touch(session, now);
+				sessions.put(id, session);
+				resize(session, estimateBytes(session.bill.getSnapshot()));
+			}
+			return session;
+		}
+		finally
+		{
+			spillLock.unlock();
+		}
+	}
+
+	private boolean isExpired(Session session, long now) {
+		return now - session.lastAccess > ttlMillis;
+	}
+
+	private void touch(Session session, long now) {
+		session.lastAccess = now;
+		session.lastUse = useCount.incrementAndGet();
+	}
+
+	/**
+	 * Evicts the least recently used sessions but the given one, which is in use, and the expired ones on the way.
+	 * A session bigger than the budget alone stays in memory. If another thread is evicting, returns at once.
+	 * The victims are picked from a copy of the map sorted by last use, O(n log n), and only their own stripe is locked while they are spilled
+	 */
+	private void evictOverBudget(Session inUse) {
+		if(usedBytes.get() <= memoryBudgetBytes || !evictionLock.tryLock())
+		{
+			return;
+		}
+		try
+		{
+			List<Session> candidates = new ArrayList<>(sessions.values());
+			Collections.sort(candidates, LEAST_RECENTLY_USED_FIRST);
+			long now = System.currentTimeMillis();
+			for(Session session : candidates)
+			{
+				if(usedBytes.get() <= memoryBudgetBytes)
+				{
+					break;
+				}
+				if(session != inUse)
+				{
+					evict(session, now);
+				}
+			}
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the session out of the map, waits for its writers, then spills it unless it has expired
+	 */
+	private void evict(Session session, long now) {
+		ReentrantLock spillLock = spillLockOf(session.id);
+		spillLock.lock();
+		try
+		{
+			if(!unlink(session))
+			{
+				// Deleted or expired in the meantime
+				return;
+			}
+			markEvicted(session);
+			if(!isExpired(session, now))
+			{
+				spill(session);
+			}
+		}
+		finally
+		{
+			spillLock.unlock();
+		}
+	}
+
+	/**
+	 * @return false if the session was not in the map any more
+	 */
+	private boolean unlink(Session session) {
+		if(!sessions.remove(session.id, session))
+		{
+			return false;
+		}
+		synchronized(session)
+		{
+			session.unlinked = true;
+			usedBytes.addAndGet(-session.estimatedBytes);
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for the actions changing the bill to finish
+	 */
+	private static void markEvicted(Session session) {
+		session.evictionLock.writeLock().lock();
+		session.evicted = true;
+		session.evictionLock.writeLock().unlock();
+	}
+
+	/**
+	 * Does nothing once the session is out of the map, whose size no longer counts
+	 */
+	private void resize(Session session, long estimatedBytes) {
+		synchronized(session)
+		{
+			if(!session.unlinked)
+			{
+				usedBytes.addAndGet(estimatedBytes - session.estimatedBytes);
+				session.estimatedBytes = estimatedBytes;
+			}
+		}
+	}
+
+	private ReentrantLock spillLockOf(String id) {
+		return spillLocks[(id.hashCode() & Integer.MAX_VALUE) % SPILL_LOCK_STRIPES];
+	}
+
+	/**
+	 * O(items)
+	 */
+	static long estimateBytes(PersistentBill bill) {
+		long bytes = BILL_BYTES + bill.getUsers().size() * USER_BYTES;
+		for(Set<String> participants : bill.getItemsVsParticipants().values())
+		{
+			bytes += ITEM_BYTES + participants.size() * PARTICIPANT_BYTES;
+		}
+		return bytes;
+	}
+
+	/////////////
+	/// SPILL ///
+	///////////
+
+	private File spillFile(String id) {
+		// Ids are UUIDs created here, anything else cannot be a spilled session
+		if(spillDirectory == null || !id.matches("[0-9a-f\\-]{36}"))
+		{
+			return null;
+		}
+		return new File(spillDirectory, id + SPILL_FILE_SUFFIX);
+	}
+
+	/**
+	 * Writes the user entered data of the current version in the compact format, without computing it.
+	 * The file's last modified time is the last access of the session.
+	 * Called once the session is marked evicted, so the bill does not change any more
+	 */
+	private void spill(Session session) {
+		File file = spillFile(session.id);
+		if(file == null)
+		{
+			return;
+		}
+		try
+		{
+			objectMapper.writeValue(file, CompactBillTO.of(session.bill.getSnapshot()));
+			file.setLastModified(session.lastAccess);
+		}
+		catch(IOException e)
+		{
+			// The session is dropped, as it would be without a spill directory
+			file.delete();
+		}
+	}
+
+	private Session readSpilledSession(String id, long now) {
+		File file = spillFile(id);
+		if(file == null || !file.isFile())
+		{
+			return null;
+		}
+		try
+		{
+			if(now - file.lastModified() > ttlMillis)
+			{
+				return null;
+			}
+			CompactBillTO compactBillTO = objectMapper.readValue(file, CompactBillTO.class);
+			return new Session(id, PersistentBill.of(compactBillTO.toBillDetailsTO()));
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private static class Session {
+
+		private final String id;
+
+		private final ConcurrentBill bill;
+
+		/**
+		 * Held shared by the actions changing the bill, exclusively to mark the session evicted
+		 */
+		private final ReadWriteLock evictionLock = new ReentrantReadWriteLock();
+
+		/**
+		 * Wall clock time of the last use, for the TTL
+		 */
+		private volatile long lastAccess;
+
+		/**
+		 * Order of the last use among all the uses, for the least recently used
+		 */
+		private volatile long lastUse;
+
+		/**
+		 * Guarded by the session
+		 */
+		private long estimatedBytes;
+
+		/**
+		 * Set when the session is taken out of the map. Guarded by the session
+		 */
+		private boolean unlinked;
+
+		/**
+		 * Set when the session is no longer in the store. Guarded by evictionLock
+		 */
+		private boolean evicted;
+
+		Session(String id, PersistentBill bill) {
+			this.id = id;
+			this.bill = new ConcurrentBill(bill);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.jersey.CommonProperties;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+
+/**
+ * The JAX-RS application: the resources and providers of the rs package, sharing the singletons of BillSplitterBinder.
+ * They are registered one by one, with auto discovery off, so that starting does not scan the class path.
+ * Responses are compressed from a size on (see CompressionInterceptor). A response within billsplitter.server.outboundBufferBytes
+ * (default 8 KB) is buffered and sent with its Content-Length, a longer one is streamed chunked as it is serialized.
+ * The compute executor is shut down with the container
+ */
+public class BillSplitterApplication extends ResourceConfig {
+
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+	private static final int DEFAULT_OUTBOUND_BUFFER_BYTES = 8 * 1024;
+
+	public BillSplitterApplication() {
+		this(new BillSplitterBinder());
+	}
+
+	public BillSplitterApplication(final BillSplitterBinder billSplitterBinder) {
+		register(BillSplitterResource.class);
+		register(AsyncBillSplitterResource.class);
+		register(BillSessionResource.class);
+		register(JacksonFeature.class);
+		register(BillSplitterObjectMapperProvider.class);
+		register(BinaryBillProvider.class);
+		register(CompressionInterceptor.fromSystemProperties());
+		property(CommonProperties.FEATURE_AUTO_DISCOVERY_DISABLE, true);
+		property(ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER,
+				Integer.getInteger("billsplitter.server.outboundBufferBytes", DEFAULT_OUTBOUND_BUFFER_BYTES));
+		register(billSplitterBinder);
+		register(new ContainerLifecycleListener() {
+			@Override
+			public void onStartup(Container container) {
+			}
+
+			@Override
+			public void onReload(Container container) {
+			}
+
+			@Override
+			public void onShutdown(Container container) {
+				try
+				{
+					billSplitterBinder.getBillComputeExecutor().shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,53 @@
+package com.ammofull.java.billsplitter.rs;
+
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+
+import com.ammofull.java.billsplitter.api.BillSplitterService;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+
+/**
+ * Binds the one instance of the engine, of the session store, of the result cache and of the compute executor that the resources share
+ */
+public class BillSplitterBinder extends AbstractBinder {
+
+	private final BillSplitterService billSplitterService;
+
+	private final BillSessionStore billSessionStore;
+
+	private final BillResultCache billResultCache;
+
+	private final BillComputeExecutor billComputeExecutor;
+
+	/**
+	 * Engine, session store, result cache and compute executor configured by the system properties, see BillSessionStore.fromSystemProperties(),
+	 * BillResultCache.fromSystemProperties() and BillComputeExecutor.fromSystemProperties()
+	 */
+	public BillSplitterBinder() {
+		this(new BillSplitterServiceImpl(), BillSessionStore.fromSystemProperties(), BillResultCache.fromSystemProperties(),
+				BillComputeExecutor.fromSystemProperties());
+	}
+
+	public BillSplitterBinder(BillSplitterService billSplitterService, BillSessionStore billSessionStore, BillResultCache billResultCache,
+			BillComputeExecutor billComputeExecutor) {
+		if(billSplitterService == null || billSessionStore == null || billResultCache == null || billComputeExecutor == null)
+		{
+			throw new IllegalArgumentException("Service, session store, result cache and compute executor cannot be null");
+		}
+		this.billSplitterService = billSplitterService;
+		this.billSessionStore = billSessionStore;
+		this.billResultCache = billResultCache;
+		this.billComputeExecutor = billComputeExecutor;
+	}
+
+	public BillComputeExecutor getBillComputeExecutor() {
+		return billComputeExecutor;
+	}
+
+	@Override
+	protected void configure() {
+		bind(billSplitterService).to(BillSplitterService.class);
+		bind(billSessionStore).to(BillSessionStore.class);
+		bind(billResultCache).to(BillResultCache.class);
+		bind(billComputeExecutor).to(BillComputeExecutor.class);
+	}
+}
@@ -0,0 +1,34 @@
+package com.ammofull.java.billsplitter.rs;
+
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * The ObjectMapper used by the JSON provider: bean serialization, except for BillDetailsTO which is streamed
+ * by BillDetailsSerializer and BillDetailsDeserializer
+ */
+@Provider
+public class BillSplitterObjectMapperProvider implements ContextResolver<ObjectMapper> {
+
+	private static final ObjectMapper OBJECT_MAPPER = newObjectMapper();
+
+	/**
+	 * @return a new ObjectMapper with the streaming BillDetailsTO (de)serializers registered
+	 */
+	public static ObjectMapper newObjectMapper() {
+		SimpleModule module = new SimpleModule("BillSplitter", Version.unknownVersion());
+		module.addSerializer(BillDetailsTO.class, new BillDetailsSerializer());
+		module.addDeserializer(BillDetailsTO.class, new BillDetailsDeserializer());
+		return new ObjectMapper().registerModule(module);
+	}
+
+	@Override
+	public ObjectMapper getContext(Class<?> type) {
+		return OBJECT_MAPPER;
+	}
+}
@@ -2,6 +2,9 @@ package com.ammofull.java.billsplitter.rs;
 
 import java.util.Set;
 
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -9,44 +12,172 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import com.ammofull.java.billsplitter.api.BillSplitterService;
 import com.ammofull.java.billsplitter.engine.BillDetailsTO;
-import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.InvalidOperationException;
 
 
 
 
+/**
+ * One instance serves every request, with the engine bound by BillSplitterBinder
+ */
 @Path("/ammofull/billsplitter")
+@Singleton
 public class BillSplitterResource {	
 	
+	/**
+	 * Media type of CompactBillTO. The endpoints below accept and return it in place of BillDetailsTO.
+	 * With the query parameter totals=true, the response has the total per head contribution of every user
+	 */
+	public static final String COMPACT_BILL_JSON = "application/vnd.ammofull.bill+json";
+	
+	/**
+	 * Media type of BillDetailsTO in the binary format of BinaryBillCodec, for the calls between services.
+	 * The endpoints taking a BillDetailsTO accept and return it as well as JSON, by content negotiation
+	 */
+	public static final String BINARY_BILL = "application/vnd.ammofull.bill";
+	
+	/**
+	 * JSON stays the answer of a client that accepts both, e.g. one that sends no Accept header
+	 */
+	static final String BINARY_BILL_PRODUCED = BINARY_BILL + ";qs=0.5";
+	
+	private final BillSplitterService billSplitterService;
+	
+	@Inject
+	public BillSplitterResource(BillSplitterService billSplitterService)
+	{
+		this.billSplitterService = billSplitterService;
+	}
+	
 	@Path("/user/{user}")
 	@POST
-	@Consumes({MediaType.APPLICATION_JSON})
-	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes({MediaType.APPLICATION_JSON, BINARY_BILL})
+	@Produces({MediaType.APPLICATION_JSON, BINARY_BILL_PRODUCED})
 	public BillDetailsTO addUser(@PathParam("user") String user , BillDetailsTO billDetailsTO)
 	{
-		BillSplitterService billSplitterService = new BillSplitterServiceImpl();
 		return billSplitterService.addUser(user,billDetailsTO);		
 	}
 	
 	@Path("/item/{itemname}/{amount}")
 	@POST
-	@Consumes({MediaType.APPLICATION_JSON})
-	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes({MediaType.APPLICATION_JSON, BINARY_BILL})
+	@Produces({MediaType.APPLICATION_JSON, BINARY_BILL_PRODUCED})
 	public BillDetailsTO addItem(@PathParam("itemname") String itemName, @PathParam("amount") Double amount, BillDetailsTO billDetailsTO)
 	{
-		BillSplitterService billSplitterService = new BillSplitterServiceImpl();
 		return billSplitterService.addItem(itemName, amount, billDetailsTO);
 	}	
 	
 	@Path("/contribution/{itemname}/")
 	@POST
-	@Consumes({MediaType.APPLICATION_JSON})
-	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes({MediaType.APPLICATION_JSON, BINARY_BILL})
+	@Produces({MediaType.APPLICATION_JSON, BINARY_BILL_PRODUCED})
 	public BillDetailsTO addContributionsForItem(@PathParam("itemname") String itemName, @QueryParam("user") Set<String> participants, BillDetailsTO billDetailsTO)
 	{
-		BillSplitterService billSplitterService = new BillSplitterServiceImpl();
 		return billSplitterService.addContributionsForItem(itemName, participants, billDetailsTO);
 	}	
+	
+	/**
+	 * Applies the operations of the batch to its bill in order, and computes the bill once
+	 * @return the computed bill, or 400 Bad Request with a BillBatchErrorTO telling which operation is not valid
+	 */
+	@Path("/batch")
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public BillDetailsTO applyOperations(BillBatchTO billBatchTO)
+	{
+		if(billBatchTO == null)
+		{
+			throw badRequest(new IllegalArgumentException("Batch cannot be null"));
+		}
+		try
+		{
+			return billSplitterService.applyOperations(billBatchTO.getOperations(), billBatchTO.getBill());
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw badRequest(e);
+		}
+	}
+	
+	/**
+	 * @return 400 Bad Request with a BillBatchErrorTO for an invalid operation of a batch, with the message as text otherwise
+	 */
+	static BadRequestException badRequest(IllegalArgumentException e)
+	{
+		Response.ResponseBuilder response = Response.status(Response.Status.BAD_REQUEST);
+		if(e instanceof InvalidOperationException)
+		{
+			response.entity(new BillBatchErrorTO(((InvalidOperationException)e).getOperationIndex(), e.getMessage())).type(MediaType.APPLICATION_JSON);
+		}
+		else
+		{
+			response.entity(e.getMessage()).type(MediaType.TEXT_PLAIN);
+		}
+		return new BadRequestException(response.build());
+	}
+	
+	///////////////////////////
+	/// COMPACT WIRE FORMAT ///
+	/////////////////////////
+	
+	@Path("/user/{user}")
+	@POST
+	@Consumes(COMPACT_BILL_JSON)
+	@Produces(COMPACT_BILL_JSON)
+	public CompactBillTO addUser(@PathParam("user") String user, @QueryParam("totals") boolean withTotals, CompactBillTO compactBillTO)
+	{
+		try
+		{
+			return CompactBillTO.of(addUser(user, toBillDetailsTO(compactBillTO)), withTotals);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw badRequest(e);
+		}
+	}
+	
+	@Path("/item/{itemname}/{amount}")
+	@POST
+	@Consumes(COMPACT_BILL_JSON)
+	@Produces(COMPACT_BILL_JSON)
+	public CompactBillTO addItem(@PathParam("itemname") String itemName, @PathParam("amount") Double amount, @QueryParam("totals") boolean withTotals, CompactBillTO compactBillTO)
+	{
+		try
+		{
+			return CompactBillTO.of(addItem(itemName, amount, toBillDetailsTO(compactBillTO)), withTotals);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw badRequest(e);
+		}
+	}
+	
+	@Path("/contribution/{itemname}/")
+	@POST
+	@Consumes(COMPACT_BILL_JSON)
+	@Produces(COMPACT_BILL_JSON)
+	public CompactBillTO addContributionsForItem(@PathParam("itemname") String itemName, @QueryParam("user") Set<String> participants, @QueryParam("totals") boolean withTotals, CompactBillTO compactBillTO)
+	{
+		try
+		{
+			return CompactBillTO.of(addContributionsForItem(itemName, participants, toBillDetailsTO(compactBillTO)), withTotals);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw badRequest(e);
+		}
+	}
+	
+	/**
+	 * The bill is computed by the engine of the resource, through which it goes next
+	 */
+	private static BillDetailsTO toBillDetailsTO(CompactBillTO compactBillTO)
+	{
+		return compactBillTO == null ? null : compactBillTO.toBillDetailsTO();
+	}
 }
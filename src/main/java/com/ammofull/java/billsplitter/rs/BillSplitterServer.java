@@ -0,0 +1,214 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+
+/**
+ * Production launcher of BillSplitterApplication on Grizzly (HTTP/1.1), sized by the system properties read in fromSystemProperties().
+ * Once started, the server replays a BillSplitterWarmUp workload, then reports ready.
+ * On SIGTERM or the end of the JVM, the server stops accepting connections and lets the requests in progress finish within a grace period.
+ *
+ * With billsplitter.server.exitAfterWarmUp=true, main() stops right after the warm up: the build runs it that way, under
+ * -XX:ArchiveClassesAtExit, to write the AppCDS archive of the appcds profile
+ */
+public class BillSplitterServer {
+
+	private final URI baseUri;
+
+	private int selectorThreads = Runtime.getRuntime().availableProcessors();
+
+	private int workerThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+	/**
+	 * Requests waiting for a worker thread, -1 for no limit
+	 */
+	private int workerQueueLimit = -1;
+
+	private int keepAliveIdleSeconds = 30;
+
+	/**
+	 * Requests served on one connection before it is closed, -1 for no limit
+	 */
+	private int keepAliveMaxRequests = -1;
+
+	private int maxHeaderBytes = 8 * 1024;
+
+	private long maxRequestBytes = 1024 * 1024;
+
+	private long shutdownGraceSeconds = 30;
+
+	private int warmUpIterations = 0;
+
+	public BillSplitterServer(URI baseUri) {
+		if(baseUri == null)
+		{
+			throw new IllegalArgumentException("Base URI cannot be null");
+		}
+		this.baseUri = baseUri;
+	}
+
+	/**
+	 * Server configured by the system properties billsplitter.server.baseUri (default http://0.0.0.0:8080/),
+	 * billsplitter.server.selectorThreads (default the number of processors), billsplitter.server.workerThreads (default twice the number of processors),
+	 * billsplitter.server.workerQueueLimit (default no limit), billsplitter.server.keepAliveIdleSeconds (default 30),
+	 * billsplitter.server.keepAliveMaxRequests (default no limit), billsplitter.server.maxHeaderBytes (default 8 KB),
+	 * billsplitter.server.maxRequestBytes (default 1 MB), billsplitter.server.shutdownGraceSeconds (default 30)
+	 * and billsplitter.server.warmUpIterations (default 0, no warm up)
+	 */
+	public static BillSplitterServer fromSystemProperties() {
+		BillSplitterServer server = new BillSplitterServer(URI.create(System.getProperty("billsplitter.server.baseUri", "http://0.0.0.0:8080/")));
+		server.setSelectorThreads(Integer.getInteger("billsplitter.server.selectorThreads", server.selectorThreads));
+		server.setWorkerThreads(Integer.getInteger("billsplitter.server.workerThreads", server.workerThreads));
+		server.setWorkerQueueLimit(Integer.getInteger("billsplitter.server.workerQueueLimit", server.workerQueueLimit));
+		server.setKeepAliveIdleSeconds(Integer.getInteger("billsplitter.server.keepAliveIdleSeconds", server.keepAliveIdleSeconds));
+		server.setKeepAliveMaxRequests(Integer.getInteger("billsplitter.server.keepAliveMaxRequests", server.keepAliveMaxRequests));
+		server.setMaxHeaderBytes(Integer.getInteger("billsplitter.server.maxHeaderBytes", server.maxHeaderBytes));
+		server.setMaxRequestBytes(Long.getLong("billsplitter.server.maxRequestBytes", server.maxRequestBytes));
+		server.setShutdownGraceSeconds(Long.getLong("billsplitter.server.shutdownGraceSeconds", server.shutdownGraceSeconds));
+		server.setWarmUpIterations(Integer.getInteger("billsplitter.server.warmUpIterations", server.warmUpIterations));
+		return server;
+	}
+
+	/**
+	 * Starts the server with the given application, to which it adds the request size limit, and warms it up
+	 * @throws IOException if the server cannot start, or does not answer the warm up as expected
+	 */
+	public HttpServer start(BillSplitterApplication application) throws IOException {
+		application.register(new RequestSizeLimitFilter(maxRequestBytes));
+		HttpServer httpServer = GrizzlyHttpServerFactory.createHttpServer(baseUri, application, false);
+		for(NetworkListener listener : httpServer.getListeners())
+		{
+			TCPNIOTransport transport = listener.getTransport();
+			transport.setSelectorRunnersCount(selectorThreads);
+			transport.setWorkerThreadPoolConfig(ThreadPoolConfig.defaultConfig().copy()
+					.setPoolName("billsplitter-worker")
+					.setCorePoolSize(workerThreads)
+					.setMaxPoolSize(workerThreads)
+					.setQueueLimit(workerQueueLimit));
+			listener.getKeepAlive().setIdleTimeoutInSeconds(keepAliveIdleSeconds);
+			listener.getKeepAlive().setMaxRequestsCount(keepAliveMaxRequests);
+			listener.setMaxHttpHeaderSize(maxHeaderBytes);
+		}
+		httpServer.start();
+		if(warmUpIterations > 0)
+		{
+			try
+			{
+				new BillSplitterWarmUp(baseUri).run(warmUpIterations);
+			}
+			catch(IOException e)
+			{
+				httpServer.shutdownNow();
+				throw e;
+			}
+		}
+		return httpServer;
+	}
+
+	/**
+	 * Stops accepting connections, then waits up to the grace period for the requests in progress
+	 */
+	public void stop(HttpServer httpServer) {
+		try
+		{
+			httpServer.shutdown(shutdownGraceSeconds, TimeUnit.SECONDS).get(shutdownGraceSeconds + 1, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			httpServer.shutdownNow();
+		}
+		catch(ExecutionException | TimeoutException e)
+		{
+			httpServer.shutdownNow();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final BillSplitterServer server = fromSystemProperties();
+		final HttpServer httpServer = server.start(new BillSplitterApplication());
+		if(Boolean.getBoolean("billsplitter.server.exitAfterWarmUp"))
+		{
+			server.stop(httpServer);
+			return;
+		}
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread("billsplitter-shutdown") {
+			@Override
+			public void run() {
+				server.stop(httpServer);
+				stopped.countDown();
+			}
+		});
+		System.out.println("Bill splitter ready on " + server.baseUri);
+		stopped.await();
+	}
+
+	public void setSelectorThreads(int selectorThreads) {
+		validatePositive(selectorThreads, "Selector threads");
+		this.selectorThreads = selectorThreads;
+	}
+
+	public void setWorkerThreads(int workerThreads) {
+		validatePositive(workerThreads, "Worker threads");
+		this.workerThreads = workerThreads;
+	}
+
+	public void setWorkerQueueLimit(int workerQueueLimit) {
+		this.workerQueueLimit = workerQueueLimit;
+	}
+
+	public void setKeepAliveIdleSeconds(int keepAliveIdleSeconds) {
+		this.keepAliveIdleSeconds = keepAliveIdleSeconds;
+	}
+
+	public void setKeepAliveMaxRequests(int keepAliveMaxRequests) {
+		this.keepAliveMaxRequests = keepAliveMaxRequests;
+	}
+
+	public void setMaxHeaderBytes(int maxHeaderBytes) {
+		validatePositive(maxHeaderBytes, "Header size limit");
+		this.maxHeaderBytes = maxHeaderBytes;
+	}
+
+	public void setMaxRequestBytes(long maxRequestBytes) {
+		validatePositive(maxRequestBytes, "Request size limit");
+		this.maxRequestBytes = maxRequestBytes;
+	}
+
+	public void setShutdownGraceSeconds(long shutdownGraceSeconds) {
+		if(shutdownGraceSeconds < 0)
+		{
+			throw new IllegalArgumentException("Shutdown grace period cannot be negative");
+		}
+		this.shutdownGraceSeconds = shutdownGraceSeconds;
+	}
+
+	/**
+	 * @param warmUpIterations iterations of BillSplitterWarmUp run before start() returns, 0 for none
+	 */
+	public void setWarmUpIterations(int warmUpIterations) {
+		if(warmUpIterations < 0)
+		{
+			throw new IllegalArgumentException("Warm up iterations cannot be negative");
+		}
+		this.warmUpIterations = warmUpIterations;
+	}
+
+	private static void validatePositive(long value, String name) {
+		if(value <= 0)
+		{
+			throw new IllegalArgumentException(name + " must be positive");
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays a synthetic workload against a started server before it reports ready, so that the first real requests
+ * find the JIT compiled code, the Jackson serializers and the Jersey routing already in place.
+ * Every iteration sends, over HTTP, a batch building a bill, then the bill to the JSON, binary and asynchronous endpoints
+ */
+public class BillSplitterWarmUp {
+
+	private static final int USERS = 8;
+
+	private static final int ITEMS = 30;
+
+	private final ObjectMapper objectMapper = BillSplitterObjectMapperProvider.newObjectMapper();
+
+	private final String baseUri;
+
+	/**
+	 * @param baseUri base URI of the server. A wildcard host is replaced by localhost
+	 */
+	public BillSplitterWarmUp(URI baseUri) {
+		String host = baseUri.getHost();
+		String uri = baseUri.toString();
+		if(host == null || "0.0.0.0".equals(host))
+		{
+			uri = baseUri.getScheme() + "://localhost:" + baseUri.getPort() + baseUri.getPath();
+		}
+		this.baseUri = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+	}
+
+	/**
+	 * @return the time taken in milliseconds
+	 * @throws IOException if the server does not answer a request as expected
+	 */
+	public long run(int iterations) throws IOException {
+		long start = System.nanoTime();
+		for(int iteration = 0; iteration < iterations; iteration++)
+		{
+			CalculationMode calculationMode = iteration % 2 == 0 ? CalculationMode.DECIMAL : CalculationMode.FIXED_POINT_CENTS;
+			BillDetailsTO billDetailsTO = new BillDetailsTO();
+			billDetailsTO.setCalculationMode(calculationMode);
+			byte[] bill = post("/ammofull/billsplitter/batch", MediaType.APPLICATION_JSON,
+					objectMapper.writeValueAsBytes(new BillBatchTO(billDetailsTO, operations(iteration))));
+
+			post("/ammofull/billsplitter/user/WarmUpUser", MediaType.APPLICATION_JSON, bill);
+			post("/ammofull/billsplitter/async/item/WarmUpItem/10", MediaType.APPLICATION_JSON, bill);
+
+			ByteArrayOutputStream binaryBill = new ByteArrayOutputStream();
+			BinaryBillCodec.write(objectMapper.readValue(bill, BillDetailsTO.class), binaryBill);
+			post("/ammofull/billsplitter/user/WarmUpUser", BillSplitterResource.BINARY_BILL, binaryBill.toByteArray());
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private static List<BillOperationTO> operations(int iteration) {
+		List<BillOperationTO> operations = new ArrayList<>();
+		List<String> users = new ArrayList<>();
+		for(int user = 0; user < USERS; user++)
+		{
+			users.add("User" + user);
+			operations.add(BillOperationTO.addUser("User" + user));
+		}
+		for(int item = 0; item < ITEMS; item++)
+		{
+			String itemName = "Item" + item;
+			operations.add(BillOperationTO.addItem(itemName, 1.0 + (item * 7 + iteration) % 50));
+			int first = item % USERS;
+			operations.add(BillOperationTO.setParticipants(itemName, new HashSet<>(users.subList(first, Math.min(USERS, first + 3)))));
+			operations.add(BillOperationTO.setPayer(itemName, users.get(item % USERS)));
+		}
+		operations.add(BillOperationTO.setTipsAndTaxes(12.5));
+		return operations;
+	}
+
+	private byte[] post(String path, String mediaType, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(baseUri + path).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", mediaType);
+		connection.setRequestProperty("Accept", mediaType);
+		connection.setFixedLengthStreamingMode(body.length);
+		try(OutputStream out = connection.getOutputStream())
+		{
+			out.write(body);
+		}
+		int status = connection.getResponseCode();
+		if(status != HttpURLConnection.HTTP_OK)
+		{
+			connection.disconnect();
+			throw new IOException("Warm up request " + path + " answered " + status);
+		}
+		// Read to the end and closed, so that the connection is kept alive for the next request
+		try(InputStream in = connection.getInputStream())
+		{
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for(int count = in.read(buffer); count >= 0; count = in.read(buffer))
+			{
+				response.write(buffer, 0, count);
+			}
+			return response.toByteArray();
+		}
+	}
+}
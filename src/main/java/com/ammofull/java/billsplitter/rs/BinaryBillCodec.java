@@ -0,0 +1,299 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+
+/**
+ * Binary form of the user entered data of a BillDetailsTO, see BinaryBillProvider. The calculated data is not sent:
+ * the engine computes it again from the inputs on the reading side, as for CompactBillTO.
+ *
+ * Layout, every int is an unsigned LEB128 varint:
+ * 1) Version byte, calculation mode byte
+ * 2) String table: count, then every name as its UTF-8 length and bytes. The users come first, in order
+ * 3) User count
+ * 4) Item count, then for every item: name, amount, payer, participant count and participants
+ * 5) Tips and taxes amount and payer
+ * Names, payers and participants are indexes in the string table, a payer is index + 1 with 0 for none.
+ * An amount is its cents, zigzag encoded and shifted left by one, when that is exact. Otherwise it is 1 followed by the 8 bytes of the double
+ */
+public final class BinaryBillCodec {
+
+	private static final int VERSION = 1;
+
+	private static final CalculationMode[] CALCULATION_MODES = CalculationMode.values();
+
+	/**
+	 * Most elements or bytes allocated ahead of reading them
+	 */
+	private static final int MAX_PREALLOCATED = 4096;
+
+	private BinaryBillCodec() {
+	}
+
+	public static void write(BillDetailsTO billDetailsTO, OutputStream out) throws IOException {
+		Map<String,Integer> stringIndexes = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		for(String user : billDetailsTO.getUsers())
+		{
+			addString(user, stringIndexes, strings);
+		}
+		int userCount = strings.size();
+		Map<String,Double> itemVsAmount = billDetailsTO.getItemVsAmount();
+		Map<String,Set<String>> itemsVsParticipants = billDetailsTO.getItemsVsParticipants();
+		Map<String,String> itemVsPayer = billDetailsTO.getItemVsPayer();
+		for(String item : itemVsAmount.keySet())
+		{
+			addString(item, stringIndexes, strings);
+			Set<String> participants = itemsVsParticipants.get(item);
+			if(participants != null)
+			{
+				for(String participant : participants)
+				{
+					addString(participant, stringIndexes, strings);
+				}
+			}
+		}
+		for(String payer : itemVsPayer.values())
+		{
+			addString(payer, stringIndexes, strings);
+		}
+
+		out.write(VERSION);
+		out.write(billDetailsTO.getCalculationMode().ordinal());
+		writeVarint(out, strings.size());
+		for(String string : strings)
+		{
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+		writeVarint(out, userCount);
+		writeVarint(out, itemVsAmount.size());
+		for(Map.Entry<String,Double> itemAndAmount : itemVsAmount.entrySet())
+		{
+			String item = itemAndAmount.getKey();
+			writeVarint(out, stringIndexes.get(item));
+			writeAmount(out, itemAndAmount.getValue());
+			writePayer(out, itemVsPayer.get(item), stringIndexes);
+			Set<String> participants = itemsVsParticipants.get(item);
+			writeVarint(out, participants == null ? 0 : participants.size());
+			if(participants != null)
+			{
+				for(String participant : participants)
+				{
+					writeVarint(out, stringIndexes.get(participant));
+				}
+			}
+		}
+		Double tipsAndTaxes = billDetailsTO.getTipsAndTaxes();
+		writeAmount(out, tipsAndTaxes == null ? 0.0 : tipsAndTaxes);
+		writePayer(out, itemVsPayer.get(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES), stringIndexes);
+	}
+
+	/**
+	 * @return the bill with its user entered data, not computed (see BinaryBillProvider), or null if the stream is empty
+	 * @throws IOException if the stream is cut short or not a bill
+	 */
+	public static BillDetailsTO read(InputStream in) throws IOException {
+		int version = in.read();
+		if(version < 0)
+		{
+			return null;
+		}
+		if(version != VERSION)
+		{
+			throw new IOException("Unknown bill format version " + version);
+		}
+		int calculationMode = readByte(in);
+		if(calculationMode >= CALCULATION_MODES.length)
+		{
+			throw new IOException("Unknown calculation mode " + calculationMode);
+		}
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		billDetailsTO.setCalculationMode(CALCULATION_MODES[calculationMode]);
+
+		// The counts come from the client: nothing is allocated from them before the data they announce has been read
+		int stringCount = readCount(in);
+		List<String> strings = new ArrayList<>(Math.min(stringCount, MAX_PREALLOCATED));
+		for(int i = 0; i < stringCount; i++)
+		{
+			strings.add(readString(in, readCount(in)));
+		}
+		int userCount = readIndex(in, strings.size() + 1);
+		for(int user = 0; user < userCount; user++)
+		{
+			billDetailsTO.getUsers().add(strings.get(user));
+		}
+		int itemCount = readCount(in);
+		for(int i = 0; i < itemCount; i++)
+		{
+			String item = strings.get(readIndex(in, strings.size()));
+			billDetailsTO.getItemVsAmount().put(item, readAmount(in));
+			String payer = readPayer(in, strings);
+			if(payer != null)
+			{
+				billDetailsTO.getItemVsPayer().put(item, payer);
+			}
+			int participantCount = readCount(in);
+			Set<String> participants = new HashSet<>();
+			for(int participant = 0; participant < participantCount; participant++)
+			{
+				participants.add(strings.get(readIndex(in, strings.size())));
+			}
+			billDetailsTO.getItemsVsParticipants().put(item, participants);
+		}
+		billDetailsTO.setTipsAndTaxes(readAmount(in));
+		String tipsAndTaxesPayer = readPayer(in, strings);
+		if(tipsAndTaxesPayer != null)
+		{
+			billDetailsTO.getItemVsPayer().put(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, tipsAndTaxesPayer);
+		}
+		return billDetailsTO;
+	}
+
+	private static void addString(String string, Map<String,Integer> stringIndexes, List<String> strings) {
+		if(string == null)
+		{
+			throw new IllegalArgumentException("Names cannot be null");
+		}
+		if(!stringIndexes.containsKey(string))
+		{
+			stringIndexes.put(string, strings.size());
+			strings.add(string);
+		}
+	}
+
+	private static void writePayer(OutputStream out, String payer, Map<String,Integer> stringIndexes) throws IOException {
+		writeVarint(out, payer == null ? 0 : stringIndexes.get(payer) + 1);
+	}
+
+	private static String readPayer(InputStream in, List<String> strings) throws IOException {
+		int payer = readIndex(in, strings.size() + 1);
+		return payer == 0 ? null : strings.get(payer - 1);
+	}
+
+	private static void writeAmount(OutputStream out, double amount) throws IOException {
+		long cents = Math.round(amount * 100);
+		if(cents / 100.0 == amount && Math.abs(cents) < Long.MAX_VALUE >> 2)
+		{
+			writeVarint(out, ((cents << 1) ^ (cents >> 63)) << 1);
+		}
+		else
+		{
+			writeVarint(out, 1);
+			long bits = Double.doubleToLongBits(amount);
+			for(int shift = 56; shift >= 0; shift -= 8)
+			{
+				out.write((int)(bits >>> shift));
+			}
+		}
+	}
+
+	private static double readAmount(InputStream in) throws IOException {
+		long value = readVarint(in);
+		if((value & 1) == 0)
+		{
+			long zigzag = value >>> 1;
+			return ((zigzag >>> 1) ^ -(zigzag & 1)) / 100.0;
+		}
+		long bits = 0;
+		for(int i = 0; i < 8; i++)
+		{
+			bits = bits << 8 | readByte(in);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	static void writeVarint(OutputStream out, long value) throws IOException {
+		while((value & ~0x7FL) != 0)
+		{
+			out.write((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7)
+		{
+			int b = readByte(in);
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static int readCount(InputStream in) throws IOException {
+		return readIndex(in, 1 << 24);
+	}
+
+	private static int readIndex(InputStream in, int bound) throws IOException {
+		long index = readVarint(in);
+		if(index < 0 || index >= bound)
+		{
+			throw new IOException("Index out of range : " + index);
+		}
+		return (int)index;
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if(b < 0)
+		{
+			throw new EOFException("Bill cut short");
+		}
+		return b;
+	}
+
+	/**
+	 * A long string is read in chunks of MAX_PREALLOCATED bytes, so that a length with no bytes behind it allocates one chunk at most
+	 */
+	private static String readString(InputStream in, int length) throws IOException {
+		if(length <= MAX_PREALLOCATED)
+		{
+			byte[] bytes = new byte[length];
+			readFully(in, bytes, length);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(MAX_PREALLOCATED);
+		byte[] chunk = new byte[MAX_PREALLOCATED];
+		for(int remaining = length; remaining > 0; remaining -= chunk.length)
+		{
+			int count = Math.min(remaining, chunk.length);
+			readFully(in, chunk, count);
+			bytes.write(chunk, 0, count);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+		int read = 0;
+		while(read < length)
+		{
+			int count = in.read(bytes, read, length - read);
+			if(count < 0)
+			{
+				throw new EOFException("Bill cut short");
+			}
+			read += count;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.ammofull.java.billsplitter.api.BillSplitterService;
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+
+/**
+ * Reads and writes BillDetailsTO as BinaryBillCodec, for the media type BillSplitterResource.BINARY_BILL.
+ * A bill read is computed by the engine of the provider: on the server the one bound by BillSplitterBinder.
+ * Register an instance on the client too, which has its own engine
+ */
+@Provider
+@Consumes(BillSplitterResource.BINARY_BILL)
+@Produces(BillSplitterResource.BINARY_BILL)
+public class BinaryBillProvider implements MessageBodyReader<BillDetailsTO>, MessageBodyWriter<BillDetailsTO> {
+
+	private final BillSplitterService billSplitterService;
+
+	/**
+	 * For the clients
+	 */
+	public BinaryBillProvider() {
+		this(new BillSplitterServiceImpl());
+	}
+
+	@Inject
+	public BinaryBillProvider(BillSplitterService billSplitterService) {
+		this.billSplitterService = billSplitterService;
+	}
+
+	@Override
+	public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return type == BillDetailsTO.class;
+	}
+
+	@Override
+	public BillDetailsTO readFrom(Class<BillDetailsTO> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String,String> httpHeaders, InputStream entityStream) throws IOException {
+		BillDetailsTO billDetailsTO;
+		try
+		{
+			billDetailsTO = BinaryBillCodec.read(new BufferedInputStream(entityStream));
+		}
+		catch(IOException | IllegalArgumentException e)
+		{
+			throw new BadRequestException("Malformed bill : " + e.getMessage(), e);
+		}
+		return billDetailsTO == null ? null : billSplitterService.computeBill(billDetailsTO);
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return BillDetailsTO.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Unknown in advance
+	 */
+	@Override
+	public long getSize(BillDetailsTO billDetailsTO, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(BillDetailsTO billDetailsTO, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String,Object> httpHeaders, OutputStream entityStream) throws IOException {
+		OutputStream out = new BufferedOutputStream(entityStream);
+		BinaryBillCodec.write(billDetailsTO, out);
+		// Not closed: the entity stream belongs to the container
+		out.flush();
+	}
+}
@@ -0,0 +1,235 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Wire format of a bill with the user entered data only (media type BillSplitterResource.COMPACT_BILL_JSON).
+ * The server computes the bill anyway, so the calculated maps of BillDetailsTO are not sent.
+ * Users are listed once, in the order they were added, and items refer to them by index.
+ * The totals per user are only sent back when the client asks for them
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CompactBillTO {
+
+	private List<String> users;
+
+	private List<CompactItemTO> items;
+
+	private Double tips;
+
+	/**
+	 * Index of the user who paid tips and taxes, if known
+	 */
+	private Integer tipsPayer;
+
+	private CalculationMode mode;
+
+	/**
+	 * Calculated: total per head contribution of every user, in the order of users. Only in responses, when asked for
+	 */
+	private double[] totals;
+
+	/**
+	 * @param withTotals whether to add the totals per user, which computes the bill if needed
+	 */
+	public static CompactBillTO of(BillDetailsTO billDetailsTO, boolean withTotals) {
+		CompactBillTO compactBillTO = of(new ArrayList<>(billDetailsTO.getUsers()), billDetailsTO.getItemVsAmount(), billDetailsTO.getItemsVsParticipants(),
+				billDetailsTO.getItemVsPayer(), billDetailsTO.getTipsAndTaxes(), billDetailsTO.getCalculationMode());
+
+		if(withTotals)
+		{
+			List<String> users = compactBillTO.getUsers();
+			Map<String,Double> userVsTotal = billDetailsTO.getUserVsTotalPerHeadContribution();
+			double[] totals = new double[users.size()];
+			for(int user = 0; user < totals.length; user++)
+			{
+				Double total = userVsTotal.get(users.get(user));
+				totals[user] = total == null ? 0.0 : total;
+			}
+			compactBillTO.setTotals(totals);
+		}
+		return compactBillTO;
+	}
+
+	/**
+	 * Without totals: the version is not computed
+	 */
+	public static CompactBillTO of(PersistentBill bill) {
+		String[] usersInOrder = new String[bill.getUserOrder().size()];
+		for(Map.Entry<String,Integer> userAndOrder : bill.getUserOrder().entrySet())
+		{
+			usersInOrder[userAndOrder.getValue()] = userAndOrder.getKey();
+		}
+		return of(new ArrayList<>(Arrays.asList(usersInOrder)), bill.getItemVsAmount(), bill.getItemsVsParticipants(), bill.getItemVsPayer(),
+				bill.getTipsAndTaxes(), bill.getCalculationMode());
+	}
+
+	private static CompactBillTO of(List<String> users, Map<String,Double> itemVsAmount, Map<String,Set<String>> itemsVsParticipants,
+			Map<String,String> itemVsPayer, Double tips, CalculationMode mode) {
+		CompactBillTO compactBillTO = new CompactBillTO();
+
+		Map<String,Integer> userIndexes = new HashMap<>();
+		for(String user : users)
+		{
+			userIndexes.put(user, userIndexes.size());
+		}
+
+		List<CompactItemTO> items = new ArrayList<>(itemVsAmount.size());
+		for(Map.Entry<String,Double> itemAndAmount : itemVsAmount.entrySet())
+		{
+			String item = itemAndAmount.getKey();
+			Set<String> participants = itemsVsParticipants.get(item);
+			int[] participantIndexes = new int[participants == null ? 0 : participants.size()];
+			int i = 0;
+			if(participants != null)
+			{
+				for(String participant : participants)
+				{
+					participantIndexes[i++] = indexOf(participant, users, userIndexes);
+				}
+			}
+			Arrays.sort(participantIndexes);
+			String payer = itemVsPayer.get(item);
+			items.add(new CompactItemTO(item, itemAndAmount.getValue(), participantIndexes,
+					payer == null ? null : indexOf(payer, users, userIndexes)));
+		}
+
+		String tipsPayer = itemVsPayer.get(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES);
+		compactBillTO.setTipsPayer(tipsPayer == null ? null : indexOf(tipsPayer, users, userIndexes));
+		compactBillTO.setUsers(users);
+		compactBillTO.setItems(items);
+		compactBillTO.setTips(tips);
+		compactBillTO.setMode(mode);
+		return compactBillTO;
+	}
+
+	/**
+	 * A participant or payer that is not a user of the bill (which the engine does not produce) is added at the end of users
+	 */
+	private static int indexOf(String user, List<String> users, Map<String,Integer> userIndexes) {
+		Integer index = userIndexes.get(user);
+		if(index == null)
+		{
+			index = users.size();
+			users.add(user);
+			userIndexes.put(user, index);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the bill with the user entered data of this one, not computed: the BillSplitterService the bill goes through computes it
+	 */
+	public BillDetailsTO toBillDetailsTO() {
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		List<String> userList = users == null ? new ArrayList<String>() : users;
+		Set<String> userSet = new LinkedHashSet<>(userList);
+		if(userSet.size() != userList.size())
+		{
+			throw new IllegalArgumentException("Users must be unique");
+		}
+		billDetailsTO.setUsers(userSet);
+
+		if(items != null)
+		{
+			for(CompactItemTO item : items)
+			{
+				if(item == null || item.getName() == null)
+				{
+					throw new IllegalArgumentException("Item name cannot be null");
+				}
+				Set<String> participants = new HashSet<>();
+				if(item.getParticipants() != null)
+				{
+					for(int participant : item.getParticipants())
+					{
+						participants.add(userAt(participant, userList));
+					}
+				}
+				billDetailsTO.getItemVsAmount().put(item.getName(), item.getAmount());
+				billDetailsTO.getItemsVsParticipants().put(item.getName(), participants);
+				if(item.getPayer() != null)
+				{
+					billDetailsTO.getItemVsPayer().put(item.getName(), userAt(item.getPayer(), userList));
+				}
+			}
+		}
+
+		if(tipsPayer != null)
+		{
+			billDetailsTO.getItemVsPayer().put(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, userAt(tipsPayer, userList));
+		}
+		billDetailsTO.setTipsAndTaxes(tips == null ? 0.0 : tips);
+		billDetailsTO.setCalculationMode(mode);
+		return billDetailsTO;
+	}
+
+	private static String userAt(int index, List<String> users) {
+		if(index < 0 || index >= users.size())
+		{
+			throw new IllegalArgumentException("No user at index " + index);
+		}
+		return users.get(index);
+	}
+
+	public List<String> getUsers() {
+		return users;
+	}
+
+	public void setUsers(List<String> users) {
+		this.users = users;
+	}
+
+	public List<CompactItemTO> getItems() {
+		return items;
+	}
+
+	public void setItems(List<CompactItemTO> items) {
+		this.items = items;
+	}
+
+	public Double getTips() {
+		return tips;
+	}
+
+	public void setTips(Double tips) {
+		this.tips = tips;
+	}
+
+	public Integer getTipsPayer() {
+		return tipsPayer;
+	}
+
+	public void setTipsPayer(Integer tipsPayer) {
+		this.tipsPayer = tipsPayer;
+	}
+
+	public CalculationMode getMode() {
+		return mode;
+	}
+
+	public void setMode(CalculationMode mode) {
+		this.mode = mode;
+	}
+
+	public double[] getTotals() {
+		return totals;
+	}
+
+	public void setTotals(double[] totals) {
+		this.totals = totals;
+	}
+}
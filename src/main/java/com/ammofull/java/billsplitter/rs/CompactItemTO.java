@@ -0,0 +1,66 @@
+package com.ammofull.java.billsplitter.rs;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * An item of a CompactBillTO. Users are referred to by their index in CompactBillTO.users
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CompactItemTO {
+
+	private String name;
+
+	private double amount;
+
+	/**
+	 * Indexes of the participants, in increasing order
+	 */
+	private int[] participants;
+
+	/**
+	 * Index of the user who paid for the item, if known
+	 */
+	private Integer payer;
+
+	public CompactItemTO() {
+	}
+
+	public CompactItemTO(String name, double amount, int[] participants, Integer payer) {
+		this.name = name;
+		this.amount = amount;
+		this.participants = participants;
+		this.payer = payer;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public void setAmount(double amount) {
+		this.amount = amount;
+	}
+
+	public int[] getParticipants() {
+		return participants;
+	}
+
+	public void setParticipants(int[] participants) {
+		this.participants = participants;
+	}
+
+	public Integer getPayer() {
+		return payer;
+	}
+
+	public void setPayer(Integer payer) {
+		this.payer = payer;
+	}
+}
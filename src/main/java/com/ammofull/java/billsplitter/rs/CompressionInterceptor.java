@@ -0,0 +1,314 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses the JSON and text responses with gzip or deflate, as the client's Accept-Encoding allows (gzip first).
+ * The first minBytes of a response are held back: a response that ends within them goes out as is,
+ * a longer one is compressed from its first byte and streamed while it is written (chunked, see ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER).
+ * The binary bill is compact already and is left alone.
+ * A compressed response is another representation: its ETag, if any, gets the coding as suffix (see withCoding)
+ */
+@Priority(Priorities.ENTITY_CODER)
+public class CompressionInterceptor implements WriterInterceptor {
+
+	static final String GZIP = "gzip";
+
+	static final String DEFLATE = "deflate";
+
+	private static final int COMPRESSION_BUFFER_BYTES = 8192;
+
+	private final int minBytes;
+
+	@Context
+	private HttpHeaders requestHeaders;
+
+	/**
+	 * @param minBytes size from which a response is compressed
+	 */
+	public CompressionInterceptor(int minBytes) {
+		if(minBytes <= 0)
+		{
+			throw new IllegalArgumentException("Compression threshold must be positive");
+		}
+		this.minBytes = minBytes;
+	}
+
+	/**
+	 * Interceptor compressing from billsplitter.compression.minBytes (default 1024)
+	 */
+	public static CompressionInterceptor fromSystemProperties() {
+		return new CompressionInterceptor(Integer.getInteger("billsplitter.compression.minBytes", 1024));
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+		if(!isCompressible(context.getMediaType()) || context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING))
+		{
+			context.proceed();
+			return;
+		}
+		context.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		String encoding = negotiate(requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+		if(encoding == null)
+		{
+			context.proceed();
+			return;
+		}
+		CompressingOutputStream out = new CompressingOutputStream(context, encoding);
+		context.setOutputStream(out);
+		boolean written = false;
+		try
+		{
+			context.proceed();
+			written = true;
+		}
+		finally
+		{
+			if(written)
+			{
+				out.finish();
+			}
+			else
+			{
+				out.abort();
+			}
+		}
+	}
+
+	/**
+	 * @return the ETag of the representation of the given one in the given coding, weak if the given one is
+	 */
+	static EntityTag withCoding(EntityTag entityTag, String coding) {
+		return new EntityTag(entityTag.getValue() + '-' + coding, entityTag.isWeak());
+	}
+
+	private static boolean isCompressible(MediaType mediaType) {
+		if(mediaType == null)
+		{
+			return false;
+		}
+		return "text".equals(mediaType.getType()) || "json".equals(mediaType.getSubtype()) || mediaType.getSubtype().endsWith("+json");
+	}
+
+	/**
+	 * @return gzip or deflate, or null if the client accepts neither. * accepts the codings that are not listed, a coding listed with q=0 is refused
+	 */
+	static String negotiate(String acceptEncoding) {
+		if(acceptEncoding == null)
+		{
+			return null;
+		}
+		// Null while the coding is not listed
+		Boolean gzip = null;
+		Boolean deflate = null;
+		boolean any = false;
+		for(String coding : acceptEncoding.split(","))
+		{
+			String[] nameAndParameters = coding.split(";");
+			String name = nameAndParameters[0].trim().toLowerCase();
+			boolean accepted = !isZeroQuality(nameAndParameters);
+			if(GZIP.equals(name) || "x-gzip".equals(name))
+			{
+				gzip = accepted || Boolean.TRUE.equals(gzip);
+			}
+			else if(DEFLATE.equals(name))
+			{
+				deflate = accepted || Boolean.TRUE.equals(deflate);
+			}
+			else if("*".equals(name))
+			{
+				any |= accepted;
+			}
+		}
+		if(gzip == null ? any : gzip)
+		{
+			return GZIP;
+		}
+		return (deflate == null ? any : deflate) ? DEFLATE : null;
+	}
+
+	private static boolean isZeroQuality(String[] nameAndParameters) {
+		for(int i = 1; i < nameAndParameters.length; i++)
+		{
+			String parameter = nameAndParameters[i].trim();
+			if(parameter.startsWith("q="))
+			{
+				try
+				{
+					return Double.parseDouble(parameter.substring(2).trim()) <= 0;
+				}
+				catch(NumberFormatException e)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Holds back the first minBytes, then sets Content-Encoding, which the container has not sent yet, and compresses
+	 */
+	private class CompressingOutputStream extends OutputStream {
+
+		private final WriterInterceptorContext context;
+
+		private final OutputStream target;
+
+		private final String encoding;
+
+		private byte[] buffer = new byte[minBytes];
+
+		private int count;
+
+		/**
+		 * Null while the response is held back
+		 */
+		private DeflaterOutputStream compressed;
+
+		/**
+		 * The deflater of compressed, ended once the response is finished or aborted
+		 */
+		private Deflater deflater;
+
+		private boolean finished;
+
+		CompressingOutputStream(WriterInterceptorContext context, String encoding) {
+			this.context = context;
+			this.target = context.getOutputStream();
+			this.encoding = encoding;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if(compressed == null)
+			{
+				if(count + length <= buffer.length)
+				{
+					System.arraycopy(bytes, offset, buffer, count, length);
+					count += length;
+					return;
+				}
+				startCompressing();
+			}
+			compressed.write(bytes, offset, length);
+		}
+
+		/**
+		 * Does not send what is held back: a flush before the threshold would commit an uncompressed response
+		 */
+		@Override
+		public void flush() throws IOException {
+			if(compressed != null)
+			{
+				compressed.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			target.close();
+		}
+
+		/**
+		 * Sends what is held back or ends the compressed stream. The target stream is left open for the container
+		 */
+		void finish() throws IOException {
+			if(finished)
+			{
+				return;
+			}
+			finished = true;
+			if(compressed == null)
+			{
+				target.write(buffer, 0, count);
+			}
+			else
+			{
+				// The target is only flushed
+				try
+				{
+					compressed.close();
+				}
+				finally
+				{
+					deflater.end();
+				}
+			}
+			buffer = null;
+		}
+
+		/**
+		 * Gives up on a response that failed while it was written: nothing more is sent and the deflater, if any, is ended
+		 */
+		void abort() {
+			finished = true;
+			if(deflater != null)
+			{
+				deflater.end();
+			}
+			buffer = null;
+		}
+
+		private void startCompressing() throws IOException {
+			context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+			context.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+			Object entityTag = context.getHeaders().getFirst(HttpHeaders.ETAG);
+			if(entityTag != null)
+			{
+				context.getHeaders().putSingle(HttpHeaders.ETAG, withCoding(entityTag instanceof EntityTag ? (EntityTag)entityTag
+						: EntityTag.valueOf(entityTag.toString()), encoding));
+			}
+			OutputStream notClosing = new FilterOutputStream(target) {
+				@Override
+				public void write(byte[] bytes, int offset, int length) throws IOException {
+					out.write(bytes, offset, length);
+				}
+
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+			};
+			if(GZIP.equals(encoding))
+			{
+				compressed = new GZIPOutputStream(notClosing, COMPRESSION_BUFFER_BYTES)
+				{
+					{
+						// GZIPOutputStream creates its own deflater
+						deflater = def;
+					}
+				};
+			}
+			else
+			{
+				deflater = new Deflater();
+				compressed = new DeflaterOutputStream(notClosing, deflater, COMPRESSION_BUFFER_BYTES);
+			}
+			compressed.write(buffer, 0, count);
+			buffer = null;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Response;
+
+/**
+ * Answers 413 Request Entity Too Large to a request whose body is bigger than the limit: at once when its Content-Length says so,
+ * while the body is read when it is chunked. BillSplitterServer registers it with the configured limit
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 100)
+public class RequestSizeLimitFilter implements ContainerRequestFilter {
+
+	private final long maxRequestBytes;
+
+	public RequestSizeLimitFilter(long maxRequestBytes) {
+		if(maxRequestBytes <= 0)
+		{
+			throw new IllegalArgumentException("Request size limit must be positive");
+		}
+		this.maxRequestBytes = maxRequestBytes;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		if(requestContext.getLength() > maxRequestBytes)
+		{
+			throw tooLarge();
+		}
+		if(requestContext.hasEntity())
+		{
+			requestContext.setEntityStream(new LimitedInputStream(requestContext.getEntityStream()));
+		}
+	}
+
+	private WebApplicationException tooLarge() {
+		return new WebApplicationException(Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+				.entity("Request bigger than " + maxRequestBytes + " bytes").build());
+	}
+
+	private class LimitedInputStream extends FilterInputStream {
+
+		private long remaining = maxRequestBytes;
+
+		LimitedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0)
+			{
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			int count = super.read(bytes, offset, length);
+			if(count > 0)
+			{
+				count(count);
+			}
+			return count;
+		}
+
+		private void count(int count) {
+			remaining -= count;
+			if(remaining < 0)
+			{
+				throw tooLarge();
+			}
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.ammofull.java.billsplitter.api.BillSplitterService;
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+
+/**
+ * View of a bill in a SettledBillArchive segment. Nothing is copied when the view is made: every getter decodes
+ * its value from the mapped segment when it is called. Users and items are read by position, users in the order they were added.
+ *
+ * Record layout, offsets from the start of the record:
+ * 0 record length, 4 user count, 8 item count, 12 calculation mode, 13 tips and taxes, 21 tips and taxes payer,
+ * 25 id, then an offset per user, an offset per item, the users and the items.
+ * User: total, percentage, name. Item: amount, payer, participant count, name, participants. Payers and participants are user positions
+ */
+public final class ArchivedBill {
+
+	static final int USER_COUNT = 4;
+
+	static final int ITEM_COUNT = 8;
+
+	static final int CALCULATION_MODE = 12;
+
+	static final int TIPS_AND_TAXES = 13;
+
+	static final int TIPS_AND_TAXES_PAYER = 21;
+
+	static final int HEADER_BYTES = 25;
+
+	/**
+	 * Without the bytes of the name
+	 */
+	static final int USER_BYTES = 18;
+
+	/**
+	 * Without the bytes of the name and the participants
+	 */
+	static final int ITEM_BYTES = 18;
+
+	private static final CalculationMode[] CALCULATION_MODES = CalculationMode.values();
+
+	/**
+	 * Only read with absolute gets, so views on the same segment do not disturb each other
+	 */
+	private final ByteBuffer segment;
+
+	private final int offset;
+
+	/**
+	 * The engine of the archive, see toBillDetailsTO
+	 */
+	private final BillSplitterService billSplitterService;
+
+	ArchivedBill(ByteBuffer segment, int offset, BillSplitterService billSplitterService) {
+		this.segment = segment;
+		this.offset = offset;
+		this.billSplitterService = billSplitterService;
+	}
+
+	int getRecordLength() {
+		return segment.getInt(offset);
+	}
+
+	public String getId() {
+		return getString(offset + HEADER_BYTES);
+	}
+
+	public CalculationMode getCalculationMode() {
+		return CALCULATION_MODES[segment.get(offset + CALCULATION_MODE)];
+	}
+
+	public double getTipsAndTaxes() {
+		return segment.getDouble(offset + TIPS_AND_TAXES);
+	}
+
+	/**
+	 * @return the position of the user who paid the tips and taxes, -1 if none
+	 */
+	public int getTipsAndTaxesPayer() {
+		return segment.getInt(offset + TIPS_AND_TAXES_PAYER);
+	}
+
+	public int getUserCount() {
+		return segment.getInt(offset + USER_COUNT);
+	}
+
+	public String getUserName(int user) {
+		return getString(userPosition(user) + USER_BYTES - 2);
+	}
+
+	/**
+	 * @return the total per head contribution of the user when the bill was archived
+	 */
+	public double getUserTotal(int user) {
+		return segment.getDouble(userPosition(user));
+	}
+
+	public double getUserPercentage(int user) {
+		return segment.getDouble(userPosition(user) + 8);
+	}
+
+	public int getItemCount() {
+		return segment.getInt(offset + ITEM_COUNT);
+	}
+
+	public String getItemName(int item) {
+		return getString(itemPosition(item) + ITEM_BYTES - 2);
+	}
+
+	public double getItemAmount(int item) {
+		return segment.getDouble(itemPosition(item));
+	}
+
+	/**
+	 * @return the position of the user who paid for the item, -1 if none
+	 */
+	public int getItemPayer(int item) {
+		return segment.getInt(itemPosition(item) + 8);
+	}
+
+	public int getItemParticipantCount(int item) {
+		return segment.getInt(itemPosition(item) + 12);
+	}
+
+	/**
+	 * @return the position of the index-th participant of the item
+	 */
+	public int getItemParticipant(int item, int index) {
+		if(index < 0 || index >= getItemParticipantCount(item))
+		{
+			throw new IndexOutOfBoundsException("Participant " + index + " of item " + item);
+		}
+		int namePosition = itemPosition(item) + ITEM_BYTES - 2;
+		return segment.getInt(namePosition + 2 + segment.getShort(namePosition) + 4 * index);
+	}
+
+	/**
+	 * Decodes the whole bill
+	 * @return a new computed bill
+	 */
+	public BillDetailsTO toBillDetailsTO() {
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		String[] users = new String[getUserCount()];
+		for(int user = 0; user < users.length; user++)
+		{
+			users[user] = getUserName(user);
+			billDetailsTO.getUsers().add(users[user]);
+		}
+		for(int item = 0; item < getItemCount(); item++)
+		{
+			String itemName = getItemName(item);
+			billDetailsTO.getItemVsAmount().put(itemName, getItemAmount(item));
+			Set<String> participants = new HashSet<>();
+			for(int index = 0; index < getItemParticipantCount(item); index++)
+			{
+				participants.add(users[getItemParticipant(item, index)]);
+			}
+			billDetailsTO.getItemsVsParticipants().put(itemName, participants);
+			if(getItemPayer(item) >= 0)
+			{
+				billDetailsTO.getItemVsPayer().put(itemName, users[getItemPayer(item)]);
+			}
+		}
+		if(getTipsAndTaxesPayer() >= 0)
+		{
+			billDetailsTO.getItemVsPayer().put(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, users[getTipsAndTaxesPayer()]);
+		}
+		billDetailsTO.setTipsAndTaxes(getTipsAndTaxes());
+		billDetailsTO.setCalculationMode(getCalculationMode());
+		return billSplitterService.computeBill(billDetailsTO);
+	}
+
+	private int userPosition(int user) {
+		if(user < 0 || user >= getUserCount())
+		{
+			throw new IndexOutOfBoundsException("User " + user);
+		}
+		return offset + segment.getInt(userOffsets() + 4 * user);
+	}
+
+	private int itemPosition(int item) {
+		if(item < 0 || item >= getItemCount())
+		{
+			throw new IndexOutOfBoundsException("Item " + item);
+		}
+		return offset + segment.getInt(userOffsets() + 4 * (getUserCount() + item));
+	}
+
+	private int userOffsets() {
+		int idPosition = offset + HEADER_BYTES;
+		return idPosition + 2 + segment.getShort(idPosition);
+	}
+
+	private String getString(int position) {
+		byte[] bytes = new byte[segment.getShort(position)];
+		for(int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = segment.get(position + 2 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
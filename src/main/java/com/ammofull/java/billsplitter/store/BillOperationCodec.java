@@ -0,0 +1,140 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO.OperationType;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+
+/**
+ * Binary form of the operations in the log and in the snapshots.
+ * A bill is stored as the operations that build it from an empty bill, so that reading it back goes through the same validation
+ */
+final class BillOperationCodec {
+
+	private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+	private BillOperationCodec() {
+	}
+
+	static void writeOperations(DataOutput out, List<BillOperationTO> operations) throws IOException {
+		out.writeInt(operations.size());
+		for(BillOperationTO operation : operations)
+		{
+			if(operation == null || operation.getType() == null)
+			{
+				throw new IllegalArgumentException("Operation type cannot be null");
+			}
+			out.writeByte(operation.getType().ordinal());
+			writeNullableString(out, operation.getName());
+			writeNullableString(out, operation.getNewName());
+			out.writeBoolean(operation.getAmount() != null);
+			if(operation.getAmount() != null)
+			{
+				out.writeDouble(operation.getAmount());
+			}
+			Set<String> participants = operation.getParticipants();
+			out.writeInt(participants == null ? -1 : participants.size());
+			if(participants != null)
+			{
+				for(String participant : participants)
+				{
+					writeNullableString(out, participant);
+				}
+			}
+			writeNullableString(out, operation.getPayer());
+		}
+	}
+
+	static List<BillOperationTO> readOperations(DataInput in) throws IOException {
+		int operationCount = in.readInt();
+		if(operationCount < 0)
+		{
+			throw new IOException("Invalid operation count " + operationCount);
+		}
+		List<BillOperationTO> operations = new ArrayList<>(operationCount);
+		for(int i = 0; i < operationCount; i++)
+		{
+			int type = in.readUnsignedByte();
+			if(type >= OPERATION_TYPES.length)
+			{
+				throw new IOException("Invalid operation type " + type);
+			}
+			String name = readNullableString(in);
+			String newName = readNullableString(in);
+			Double amount = in.readBoolean() ? in.readDouble() : null;
+			int participantCount = in.readInt();
+			Set<String> participants = null;
+			if(participantCount >= 0)
+			{
+				participants = new HashSet<>();
+				for(int participant = 0; participant < participantCount; participant++)
+				{
+					participants.add(readNullableString(in));
+				}
+			}
+			BillOperationTO operation = new BillOperationTO(OPERATION_TYPES[type], name, newName, amount, participants);
+			operation.setPayer(readNullableString(in));
+			operations.add(operation);
+		}
+		return operations;
+	}
+
+	/**
+	 * @return the operations that build the bill from an empty bill of the same calculation mode
+	 */
+	static List<BillOperationTO> operationsOf(PersistentBill bill) {
+		List<BillOperationTO> operations = new ArrayList<>();
+
+		// Users first, in the order they were added, so that they get the same order back
+		String[] usersInOrder = new String[bill.getUserOrder().size()];
+		for(Map.Entry<String,Integer> userAndOrder : bill.getUserOrder().entrySet())
+		{
+			usersInOrder[userAndOrder.getValue()] = userAndOrder.getKey();
+		}
+		for(String user : usersInOrder)
+		{
+			operations.add(BillOperationTO.addUser(user));
+		}
+		for(Map.Entry<String,Double> itemAndAmount : bill.getItemVsAmount().entrySet())
+		{
+			operations.add(BillOperationTO.addItem(itemAndAmount.getKey(), itemAndAmount.getValue()));
+		}
+		for(Map.Entry<String,Set<String>> itemAndParticipants : bill.getItemsVsParticipants().entrySet())
+		{
+			if(!itemAndParticipants.getValue().isEmpty())
+			{
+				operations.add(BillOperationTO.setParticipants(itemAndParticipants.getKey(), itemAndParticipants.getValue()));
+			}
+		}
+		if(bill.getTipsAndTaxes() != 0.0)
+		{
+			operations.add(BillOperationTO.setTipsAndTaxes(bill.getTipsAndTaxes()));
+		}
+		for(Map.Entry<String,String> itemAndPayer : bill.getItemVsPayer().entrySet())
+		{
+			operations.add(BillOperationTO.setPayer(itemAndPayer.getKey(), itemAndPayer.getValue()));
+		}
+		return Collections.unmodifiableList(operations);
+	}
+
+	private static void writeNullableString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if(value != null)
+		{
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullableString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
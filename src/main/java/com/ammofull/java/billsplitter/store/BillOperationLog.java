@@ -0,0 +1,498 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of records on local disk. The log is made of segment files, each named after the sequence number of its first record.
+ * A record is: int length, int CRC32, long sequence number, payload. The length and the CRC cover the sequence number and the payload.
+ *
+ * Group commit: append only queues the record. One thread writes all the queued records with one FileChannel write
+ * and makes them durable with one fsync, then wakes up the threads waiting for them. The records appended during an fsync
+ * make the next batch, so the more writers, the more records per fsync
+ */
+final class BillOperationLog implements Closeable {
+
+	/**
+	 * Reads a record of the log during replay
+	 */
+	interface RecordHandler {
+		void record(long sequence, byte[] payload) throws IOException;
+	}
+
+	static final String SEGMENT_SUFFIX = ".wal";
+
+	/**
+	 * Length and CRC
+	 */
+	private static final int HEADER_BYTES = 8;
+
+	private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+	private final File directory;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition pendingNotEmpty = lock.newCondition();
+
+	private final Condition progress = lock.newCondition();
+
+	/**
+	 * Guarded by lock
+	 */
+	private List<Entry> pending = new ArrayList<>();
+
+	/**
+	 * Guarded by lock
+	 */
+	private long lastSequence;
+
+	/**
+	 * Every record up to this one has been fsynced. Guarded by lock
+	 */
+	private long durableSequence;
+
+	/**
+	 * Guarded by lock
+	 */
+	private long rollsRequested;
+
+	/**
+	 * Guarded by lock
+	 */
+	private long rollsDone;
+
+	/**
+	 * Once set, the log fails every call. Guarded by lock
+	 */
+	private IOException failure;
+
+	/**
+	 * Guarded by lock
+	 */
+	private boolean closed;
+
+	/**
+	 * Current segment. Only used by the flusher once the log is open
+	 */
+	private FileChannel channel;
+
+	private final Thread flusher;
+
+	/**
+	 * Opens the log for appending after the given record. See replay for the records already in the log
+	 */
+	BillOperationLog(File directory, long lastSequence) throws IOException {
+		this.directory = directory;
+		this.lastSequence = lastSequence;
+		this.durableSequence = lastSequence;
+		channel = openSegment(lastSequence + 1);
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, "billsplitter-wal");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Queues the record, see awaitDurable
+	 * @return the sequence number of the record
+	 */
+	long append(byte[] payload) throws IOException {
+		if(payload.length > MAX_RECORD_BYTES - 8)
+		{
+			throw new IllegalArgumentException("Record too large : " + payload.length + " bytes");
+		}
+		lock.lock();
+		try
+		{
+			checkUsable();
+			long sequence = ++lastSequence;
+			pending.add(new Entry(sequence, frame(sequence, payload)));
+			pendingNotEmpty.signal();
+			return sequence;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until the record and every record before it are on disk
+	 */
+	void awaitDurable(long sequence) throws IOException {
+		lock.lock();
+		try
+		{
+			while(durableSequence < sequence)
+			{
+				checkFailure();
+				progress.await();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the log");
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Starts a new segment after the last appended record and waits until the previous segment is closed
+	 * @return the sequence number of the last record of the previous segments
+	 */
+	long roll() throws IOException {
+		lock.lock();
+		try
+		{
+			checkUsable();
+			long sequence = lastSequence;
+			pending.add(new Entry(sequence, null));
+			long roll = ++rollsRequested;
+			pendingNotEmpty.signal();
+			while(rollsDone < roll)
+			{
+				checkFailure();
+				progress.await();
+			}
+			return sequence;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while rolling the log");
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes the segments that only hold records up to the given one. Call it with the sequence number returned by roll
+	 */
+	void deleteSegmentsUpTo(long sequence) {
+		for(File segment : segments(directory))
+		{
+			if(startOf(segment) <= sequence)
+			{
+				segment.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued records, then stops the flusher
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try
+		{
+			closed = true;
+			pendingNotEmpty.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		try
+		{
+			flusher.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		lock.lock();
+		try
+		{
+			checkFailure();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void checkUsable() throws IOException {
+		checkFailure();
+		if(closed)
+		{
+			throw new IOException("Log is closed");
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if(failure != null)
+		{
+			throw new IOException("Write ahead log failed", failure);
+		}
+	}
+
+	/////////////////
+	/// FLUSHER ///
+	///////////////
+
+	private void flush() {
+		while(true)
+		{
+			List<Entry> batch;
+			lock.lock();
+			try
+			{
+				while(pending.isEmpty() && !closed)
+				{
+					pendingNotEmpty.awaitUninterruptibly();
+				}
+				if(pending.isEmpty())
+				{
+					return;
+				}
+				batch = pending;
+				pending = new ArrayList<>();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			long durable = -1;
+			int rolls = 0;
+			try
+			{
+				List<ByteBuffer> frames = new ArrayList<>(batch.size());
+				for(Entry entry : batch)
+				{
+					if(entry.frame != null)
+					{
+						frames.add(entry.frame);
+						durable = entry.sequence;
+					}
+					else
+					{
+						write(frames);
+						frames.clear();
+						channel.force(false);
+						channel.close();
+						channel = openSegment(entry.sequence + 1);
+						rolls++;
+					}
+				}
+				write(frames);
+				channel.force(false);
+			}
+			catch(IOException e)
+			{
+				lock.lock();
+				try
+				{
+					failure = e;
+					progress.signalAll();
+				}
+				finally
+				{
+					lock.unlock();
+				}
+				return;
+			}
+
+			lock.lock();
+			try
+			{
+				if(durable >= 0)
+				{
+					durableSequence = durable;
+				}
+				rollsDone += rolls;
+				progress.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	private void write(List<ByteBuffer> frames) throws IOException {
+		if(frames.isEmpty())
+		{
+			return;
+		}
+		ByteBuffer[] buffers = frames.toArray(new ByteBuffer[frames.size()]);
+		ByteBuffer last = buffers[buffers.length - 1];
+		// A gathering write may write only part of the buffers
+		while(last.hasRemaining())
+		{
+			channel.write(buffers);
+		}
+	}
+
+	/**
+	 * The directory is synced too, so that the records fsynced to a new segment are not lost with its directory entry
+	 */
+	private FileChannel openSegment(long firstSequence) throws IOException {
+		File segment = new File(directory, String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+		FileChannel segmentChannel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		syncDirectory(directory);
+		return segmentChannel;
+	}
+
+	/**
+	 * Makes the files created, renamed or deleted in the directory so far durable
+	 */
+	static void syncDirectory(File directory) throws IOException {
+		try(FileChannel directoryChannel = FileChannel.open(directory.toPath(), StandardOpenOption.READ))
+		{
+			directoryChannel.force(true);
+		}
+	}
+
+	private static ByteBuffer frame(long sequence, byte[] payload) {
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + 8 + payload.length);
+		frame.putInt(8 + payload.length);
+		frame.putInt(0);
+		frame.putLong(sequence);
+		frame.put(payload);
+		CRC32 crc = new CRC32();
+		crc.update(frame.array(), HEADER_BYTES, 8 + payload.length);
+		frame.putInt(4, (int)crc.getValue());
+		frame.flip();
+		return frame;
+	}
+
+	//////////////
+	/// REPLAY ///
+	////////////
+
+	/**
+	 * Reads the records after the given one, in order. A record cut short or corrupt at the end of the last segment
+	 * is a write that did not finish before a crash: the segment is truncated before it
+	 * @return the sequence number of the last record in the log, or afterSequence if it is greater
+	 * @throws IOException if a record is corrupt anywhere else
+	 */
+	static long replay(File directory, long afterSequence, RecordHandler handler) throws IOException {
+		long lastSequence = afterSequence;
+		File[] segments = segments(directory);
+		for(int i = 0; i < segments.length; i++)
+		{
+			File segment = segments[i];
+			long size = segment.length();
+			long position = 0;
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment))))
+			{
+				while(position < size)
+				{
+					byte[] body = readRecord(in, size - position);
+					if(body == null)
+					{
+						break;
+					}
+					long sequence = ByteBuffer.wrap(body).getLong();
+					if(sequence > lastSequence)
+					{
+						handler.record(sequence, Arrays.copyOfRange(body, 8, body.length));
+						lastSequence = sequence;
+					}
+					position += HEADER_BYTES + body.length;
+				}
+			}
+			if(position < size)
+			{
+				if(i < segments.length - 1)
+				{
+					throw new IOException("Corrupt record in " + segment + " at " + position);
+				}
+				try(FileChannel truncated = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE))
+				{
+					truncated.truncate(position);
+				}
+			}
+		}
+		return lastSequence;
+	}
+
+	/**
+	 * @return the sequence number and the payload of the record, or null if it is cut short or corrupt
+	 */
+	private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+		if(remaining < HEADER_BYTES)
+		{
+			return null;
+		}
+		int length = in.readInt();
+		int crc = in.readInt();
+		if(length < 8 || length > MAX_RECORD_BYTES || length > remaining - HEADER_BYTES)
+		{
+			return null;
+		}
+		byte[] body = new byte[length];
+		in.readFully(body);
+		CRC32 actualCrc = new CRC32();
+		actualCrc.update(body);
+		return (int)actualCrc.getValue() == crc ? body : null;
+	}
+
+	/**
+	 * @return the segments of the log, oldest first
+	 */
+	private static File[] segments(File directory) {
+		File[] segments = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if(segments == null)
+		{
+			return new File[0];
+		}
+		// Fixed width names: name order is sequence order
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static long startOf(File segment) {
+		String name = segment.getName();
+		return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * A queued record, or a request to roll the log after the given sequence number when frame is null
+	 */
+	private static class Entry {
+
+		private final long sequence;
+
+		private final ByteBuffer frame;
+
+		Entry(long sequence, ByteBuffer frame) {
+			this.sequence = sequence;
+			this.frame = frame;
+		}
+	}
+}
@@ -0,0 +1,554 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+
+/**
+ * Bills kept on local disk, event sourced: every change is a record of a write ahead log (see BillOperationLog),
+ * and a call that changes a bill returns once its record is on disk.
+ * 1) Every snapshotEveryRecords records, a snapshot of all the bills is written in the background and the log segments it covers are deleted
+ * 2) Opening the store reads the last snapshot and replays the records after it
+ *
+ * Thread safe. Reads do not lock. Changes to a bill are applied and logged in the same order, changes to different bills in parallel.
+ * A change whose record cannot be written is rolled back: the bill goes back to its last version on disk.
+ * The log fails for good then (see BillOperationLog), so the store serves the bills as they are on disk and takes no more changes
+ */
+public class DurableBillStore implements Closeable {
+
+	public static final int DEFAULT_SNAPSHOT_EVERY_RECORDS = 100000;
+
+	static final String SNAPSHOT_FILE = "bills.snapshot";
+
+	private static final int SNAPSHOT_MAGIC = 0x42534e31;
+
+	private static final byte RECORD_CREATE = 1;
+
+	private static final byte RECORD_OPERATIONS = 2;
+
+	private static final byte RECORD_DELETE = 3;
+
+	private static final CalculationMode[] CALCULATION_MODES = CalculationMode.values();
+
+	private final File directory;
+
+	private final int snapshotEveryRecords;
+
+	private final ConcurrentHashMap<String,StoredBill> bills = new ConcurrentHashMap<>();
+
+	/**
+	 * Held shared while a change is applied and logged, exclusively while a snapshot takes the bills and rolls the log,
+	 * so that the snapshot holds exactly the records up to the end of the previous segments
+	 */
+	private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+	private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+	private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "billsplitter-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final BillOperationLog log;
+
+	/**
+	 * Sequence number of the last record in the last snapshot. Guarded by the snapshot executor, volatile for the writers
+	 */
+	private volatile long snapshotSequence;
+
+	private DurableBillStore(File directory, int snapshotEveryRecords) throws IOException {
+		this.directory = directory;
+		this.snapshotEveryRecords = snapshotEveryRecords;
+		snapshotSequence = readSnapshot();
+		long lastSequence = BillOperationLog.replay(directory, snapshotSequence, new BillOperationLog.RecordHandler() {
+			@Override
+			public void record(long sequence, byte[] payload) throws IOException {
+				replay(payload);
+			}
+		});
+		log = new BillOperationLog(directory, lastSequence);
+	}
+
+	public static DurableBillStore open(File directory) throws IOException {
+		return open(directory, DEFAULT_SNAPSHOT_EVERY_RECORDS);
+	}
+
+	/**
+	 * Opens the store in the directory, creating it if needed, and recovers the bills from the last snapshot and the log
+	 */
+	public static DurableBillStore open(File directory, int snapshotEveryRecords) throws IOException {
+		if(snapshotEveryRecords <= 0)
+		{
+			throw new IllegalArgumentException("Snapshot interval must be positive");
+		}
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create store directory " + directory);
+		}
+		return new DurableBillStore(directory, snapshotEveryRecords);
+	}
+
+	/**
+	 * Creates an empty bill
+	 * @return its id
+	 */
+	public String create(CalculationMode calculationMode) throws IOException {
+		String id = UUID.randomUUID().toString();
+		PersistentBill bill = PersistentBill.empty(calculationMode);
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeByte(RECORD_CREATE);
+		out.writeUTF(id);
+		out.writeByte(bill.getCalculationMode().ordinal());
+
+		StoredBill storedBill = new StoredBill(bill);
+		long sequence;
+		snapshotLock.readLock().lock();
+		try
+		{
+			sequence = log.append(payload.toByteArray());
+			bills.put(id, storedBill);
+		}
+		finally
+		{
+			snapshotLock.readLock().unlock();
+		}
+		try
+		{
+			awaitDurable(sequence);
+		}
+		catch(IOException e)
+		{
+			if(!(e instanceof InterruptedIOException))
+			{
+				// Nobody knows the id yet
+				bills.remove(id, storedBill);
+			}
+			throw e;
+		}
+		return id;
+	}
+
+	/**
+	 * Lock free. The bill may hold changes whose record is not on disk yet: their calls have not returned
+	 * @return the current version of the bill, or null if there is no such bill
+	 */
+	public PersistentBill get(String id) {
+		StoredBill storedBill = bills.get(id);
+		return storedBill == null ? null : storedBill.bill;
+	}
+
+	/**
+	 * Read only
+	 */
+	public Set<String> getBillIds() {
+		return Collections.unmodifiableSet(bills.keySet());
+	}
+
+	/**
+	 * Applies the operations to the bill as one change, see PersistentBill.applyAll, and waits until it is on disk
+	 * @return the new version of the bill, or null if there is no such bill
+	 * @throws IOException if the change cannot be written, in which case it is rolled back
+	 */
+	public PersistentBill apply(String id, List<BillOperationTO> operations) throws IOException {
+		StoredBill storedBill = bills.get(id);
+		if(storedBill == null)
+		{
+			return null;
+		}
+		byte[] record = operationsRecord(id, operations);
+		PersistentBill bill;
+		long sequence;
+		snapshotLock.readLock().lock();
+		try
+		{
+			synchronized(storedBill)
+			{
+				if(storedBill.deleted)
+				{
+					return null;
+				}
+				// Validated before it is logged: the log holds only valid changes, replayed without surprise
+				bill = storedBill.bill.applyAll(operations);
+				sequence = log.append(record);
+				storedBill.bill = bill;
+			}
+		}
+		finally
+		{
+			snapshotLock.readLock().unlock();
+		}
+		try
+		{
+			awaitDurable(sequence);
+		}
+		catch(IOException e)
+		{
+			storedBill.rollBack(e);
+			throw e;
+		}
+		storedBill.durable(sequence, bill);
+		return bill;
+	}
+
+	/**
+	 * @return false if there was no such bill
+	 */
+	public boolean delete(String id) throws IOException {
+		StoredBill storedBill = bills.get(id);
+		if(storedBill == null)
+		{
+			return false;
+		}
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeByte(RECORD_DELETE);
+		out.writeUTF(id);
+
+		long sequence;
+		snapshotLock.readLock().lock();
+		try
+		{
+			synchronized(storedBill)
+			{
+				if(storedBill.deleted)
+				{
+					return false;
+				}
+				sequence = log.append(payload.toByteArray());
+				storedBill.deleted = true;
+				bills.remove(id);
+			}
+		}
+		finally
+		{
+			snapshotLock.readLock().unlock();
+		}
+		try
+		{
+			awaitDurable(sequence);
+		}
+		catch(IOException e)
+		{
+			if(!(e instanceof InterruptedIOException))
+			{
+				synchronized(storedBill)
+				{
+					storedBill.deleted = false;
+					bills.put(id, storedBill);
+				}
+			}
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a snapshot of all the bills and deletes the log segments it covers. Waits for it
+	 */
+	public void snapshot() throws IOException {
+		try
+		{
+			snapshotExecutor.submit((Callable<Void>)new SnapshotTask()).get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the snapshot", e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new IOException("Snapshot failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes the queued records. No snapshot is taken: the next open replays the log after the last one
+	 */
+	@Override
+	public void close() throws IOException {
+		snapshotExecutor.shutdown();
+		try
+		{
+			snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		log.close();
+	}
+
+	private void awaitDurable(long sequence) throws IOException {
+		log.awaitDurable(sequence);
+		if(sequence - snapshotSequence >= snapshotEveryRecords && snapshotScheduled.compareAndSet(false, true))
+		{
+			snapshotExecutor.execute(new SnapshotTask());
+		}
+	}
+
+	private static byte[] operationsRecord(String id, List<BillOperationTO> operations) throws IOException {
+		if(operations == null)
+		{
+			throw new IllegalArgumentException("Operations cannot be null");
+		}
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeByte(RECORD_OPERATIONS);
+		out.writeUTF(id);
+		BillOperationCodec.writeOperations(out, operations);
+		return payload.toByteArray();
+	}
+
+	/**
+	 * Applies a record of the log on recovery. A record was valid when it was logged, so it is valid again
+	 */
+	private void replay(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = in.readByte();
+		String id = in.readUTF();
+		switch(type)
+		{
+		case RECORD_CREATE:
+			bills.put(id, new StoredBill(PersistentBill.empty(readCalculationMode(in))));
+			break;
+		case RECORD_OPERATIONS:
+			StoredBill storedBill = bills.get(id);
+			if(storedBill == null)
+			{
+				throw new IOException("Operations for unknown bill " + id);
+			}
+			PersistentBill bill = storedBill.bill.applyAll(BillOperationCodec.readOperations(in));
+			storedBill.bill = bill;
+			storedBill.durableBill = bill;
+			break;
+		case RECORD_DELETE:
+			bills.remove(id);
+			break;
+		default:
+			throw new IOException("Unknown record type " + type);
+		}
+	}
+
+	private static CalculationMode readCalculationMode(DataInputStream in) throws IOException {
+		int mode = in.readUnsignedByte();
+		if(mode >= CALCULATION_MODES.length)
+		{
+			throw new IOException("Unknown calculation mode " + mode);
+		}
+		return CALCULATION_MODES[mode];
+	}
+
+	////////////////
+	/// SNAPSHOT ///
+	//////////////
+
+	/**
+	 * Snapshot file: magic, sequence number of the last record it holds, bill count, then for every bill its id,
+	 * its calculation mode and the operations that build it. Ends with the CRC32 of all that
+	 * @return the sequence number of the last record in the snapshot, 0 if there is none
+	 */
+	private long readSnapshot() throws IOException {
+		File file = new File(directory, SNAPSHOT_FILE);
+		if(!file.isFile())
+		{
+			return 0;
+		}
+		CRC32 crc = new CRC32();
+		try(DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc)))
+		{
+			if(in.readInt() != SNAPSHOT_MAGIC)
+			{
+				throw new IOException("Not a snapshot : " + file);
+			}
+			long sequence = in.readLong();
+			int billCount = in.readInt();
+			Map<String,PersistentBill> snapshotBills = new HashMap<>();
+			for(int i = 0; i < billCount; i++)
+			{
+				String id = in.readUTF();
+				PersistentBill bill = PersistentBill.empty(readCalculationMode(in));
+				snapshotBills.put(id, bill.applyAll(BillOperationCodec.readOperations(in)));
+			}
+			int expectedCrc = (int)crc.getValue();
+			if(in.readInt() != expectedCrc)
+			{
+				throw new IOException("Corrupt snapshot : " + file);
+			}
+			for(Map.Entry<String,PersistentBill> idAndBill : snapshotBills.entrySet())
+			{
+				bills.put(idAndBill.getKey(), new StoredBill(idAndBill.getValue()));
+			}
+			return sequence;
+		}
+	}
+
+	/**
+	 * Written to a temporary file, synced, then renamed over the previous snapshot and the directory synced: a crash leaves one or the other
+	 */
+	private void writeSnapshot(long sequence, Map<String,PersistentBill> snapshotBills) throws IOException {
+		File temporaryFile = new File(directory, SNAPSHOT_FILE + ".tmp");
+		CRC32 crc = new CRC32();
+		try(FileOutputStream fileOut = new FileOutputStream(temporaryFile))
+		{
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(sequence);
+			out.writeInt(snapshotBills.size());
+			for(Map.Entry<String,PersistentBill> idAndBill : snapshotBills.entrySet())
+			{
+				out.writeUTF(idAndBill.getKey());
+				out.writeByte(idAndBill.getValue().getCalculationMode().ordinal());
+				BillOperationCodec.writeOperations(out, BillOperationCodec.operationsOf(idAndBill.getValue()));
+			}
+			out.flush();
+			new DataOutputStream(fileOut).writeInt((int)crc.getValue());
+			fileOut.getFD().sync();
+		}
+		Files.move(temporaryFile.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		// The rename must be on disk before the log segments it covers are deleted
+		BillOperationLog.syncDirectory(directory);
+	}
+
+	/**
+	 * Runs on the snapshot executor, one at a time
+	 */
+	private class SnapshotTask implements Callable<Void>, Runnable {
+
+		@Override
+		public Void call() throws IOException {
+			snapshotScheduled.set(false);
+			Map<String,PersistentBill> snapshotBills = new HashMap<>(bills.size() * 2);
+			long sequence;
+			snapshotLock.writeLock().lock();
+			try
+			{
+				// The versions are immutable: taking them is enough, they are written once the writers are let go
+				for(Map.Entry<String,StoredBill> idAndBill : bills.entrySet())
+				{
+					snapshotBills.put(idAndBill.getKey(), idAndBill.getValue().bill);
+				}
+				sequence = log.roll();
+			}
+			finally
+			{
+				snapshotLock.writeLock().unlock();
+			}
+			writeSnapshot(sequence, snapshotBills);
+			snapshotSequence = sequence;
+			log.deleteSegmentsUpTo(sequence);
+			return null;
+		}
+
+		@Override
+		public void run() {
+			try
+			{
+				call();
+			}
+			catch(IOException e)
+			{
+				// The log still holds every record, the next snapshot will try again
+			}
+		}
+	}
+
+	private static class StoredBill {
+
+		/**
+		 * Written in the bill's monitor, read without it
+		 */
+		private volatile PersistentBill bill;
+
+		/**
+		 * Guarded by the bill's monitor
+		 */
+		private boolean deleted;
+
+		/**
+		 * The last version whose record is on disk, and the sequence number of that record. Guarded by the bill's monitor
+		 */
+		private PersistentBill durableBill;
+
+		private long durableSequence;
+
+		/**
+		 * Set once a record of the bill failed: from then on the bill is its last version on disk
+		 */
+		private boolean rolledBack;
+
+		/**
+		 * @param bill a version that is on disk already
+		 */
+		StoredBill(PersistentBill bill) {
+			this.bill = bill;
+			this.durableBill = bill;
+		}
+
+		/**
+		 * The writers of a bill may learn that their records are on disk in any order, the latest record wins
+		 */
+		synchronized void durable(long sequence, PersistentBill bill) {
+			if(sequence > durableSequence)
+			{
+				durableSequence = sequence;
+				durableBill = bill;
+				if(rolledBack)
+				{
+					this.bill = bill;
+				}
+			}
+		}
+
+		/**
+		 * Back to the last version on disk, which every writer whose record failed agrees on.
+		 * An interrupted writer does not know: its record may still be written, so the bill is kept
+		 */
+		synchronized void rollBack(IOException e) {
+			if(!(e instanceof InterruptedIOException))
+			{
+				rolledBack = true;
+				bill = durableBill;
+			}
+		}
+	}
+}
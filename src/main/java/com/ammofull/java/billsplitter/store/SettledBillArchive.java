@@ -0,0 +1,433 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ammofull.java.billsplitter.api.BillSplitterService;
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+
+/**
+ * Settled bills kept for audit, off heap: every bill is encoded once into a memory mapped segment file,
+ * and reading it gives an ArchivedBill, a view that decodes only what is asked for.
+ * The index from bill id to position is two primitive arrays, so millions of bills make no objects for the GC to trace.
+ *
+ * Record layout, see ArchivedBill for the offsets: header, id, user offsets, item offsets, users, items.
+ * A segment file is zero filled past its last record, the index is rebuilt by scanning the records when the archive is opened.
+ *
+ * Thread safe. Archiving is serialized, reads run in parallel. A mapped segment is released by the GC, not by close
+ */
+public class SettledBillArchive implements Closeable {
+
+	public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	static final String SEGMENT_SUFFIX = ".archive";
+
+	/**
+	 * Computes the bills archived and the ones read back
+	 */
+	private final BillSplitterService billSplitterService;
+
+	private final File directory;
+
+	private final int segmentBytes;
+
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+	/**
+	 * Where the next record goes in the last segment. Guarded by lock
+	 */
+	private int writePosition;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Open addressing hash table. Key: 64 bit hash of the bill id, never 0. Value: segment in the high 32 bits, offset in the low ones.
+	 * Guarded by lock
+	 */
+	private long[] idHashes = new long[1024];
+
+	private long[] addresses = new long[1024];
+
+	private int size;
+
+	private SettledBillArchive(File directory, int segmentBytes, BillSplitterService billSplitterService) {
+		this.billSplitterService = billSplitterService;
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+	}
+
+	public static SettledBillArchive open(File directory, BillSplitterService billSplitterService) throws IOException {
+		return open(directory, DEFAULT_SEGMENT_BYTES, billSplitterService);
+	}
+
+	/**
+	 * Opens the archive in the directory, creating it if needed. A bill must fit in one segment
+	 * @param billSplitterService the engine computing the bills, e.g. the one the application shares
+	 */
+	public static SettledBillArchive open(File directory, int segmentBytes, BillSplitterService billSplitterService) throws IOException {
+		if(billSplitterService == null)
+		{
+			throw new IllegalArgumentException("Service cannot be null");
+		}
+		if(segmentBytes < ArchivedBill.HEADER_BYTES)
+		{
+			throw new IllegalArgumentException("Segment size too small : " + segmentBytes);
+		}
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create archive directory " + directory);
+		}
+		SettledBillArchive archive = new SettledBillArchive(directory, segmentBytes, billSplitterService);
+		archive.scanSegments();
+		return archive;
+	}
+
+	/**
+	 * Encodes the bill and its calculated data, computed first if needed
+	 * @throws IllegalArgumentException if a bill with the same id is already archived, or the bill does not fit in a segment
+	 */
+	public void archive(String id, BillDetailsTO billDetailsTO) throws IOException {
+		if(id == null || billDetailsTO == null)
+		{
+			throw new IllegalArgumentException("Id and bill cannot be null");
+		}
+		BillEncoder encoder = new BillEncoder(id, billSplitterService.computeBill(billDetailsTO));
+		if(encoder.length > segmentBytes)
+		{
+			throw new IllegalArgumentException("Bill " + id + " does not fit in a segment : " + encoder.length + " bytes");
+		}
+		long idHash = hash(id);
+		lock.writeLock().lock();
+		try
+		{
+			if(find(id, idHash) >= 0)
+			{
+				throw new IllegalArgumentException("Bill " + id + " already archived");
+			}
+			if(segments.isEmpty() || writePosition + encoder.length > segments.get(segments.size() - 1).capacity())
+			{
+				segments.add(mapSegment(segments.size()));
+				writePosition = 0;
+			}
+			int segment = segments.size() - 1;
+			encoder.writeTo(segments.get(segment), writePosition);
+			put(idHash, (long)segment << 32 | writePosition);
+			writePosition += encoder.length;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return a view of the archived bill, or null if there is none with this id
+	 */
+	public ArchivedBill get(String id) {
+		lock.readLock().lock();
+		try
+		{
+			int slot = find(id, hash(id));
+			if(slot < 0)
+			{
+				return null;
+			}
+			return new ArchivedBill(segments.get((int)(addresses[slot] >>> 32)), (int)addresses[slot], billSplitterService);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try
+		{
+			return size;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the archived bills to disk
+	 */
+	public void force() {
+		lock.readLock().lock();
+		try
+		{
+			for(MappedByteBuffer segment : segments)
+			{
+				segment.force();
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		force();
+	}
+
+	/**
+	 * FNV-1a over the chars of the id
+	 */
+	private static long hash(String id) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < id.length(); i++)
+		{
+			hash ^= id.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Different ids may have the same hash: the id in the record tells them apart
+	 * @return the slot of the bill in the index, or -1
+	 */
+	private int find(String id, long idHash) {
+		int mask = idHashes.length - 1;
+		for(int slot = (int)(idHash ^ idHash >>> 32) & mask; idHashes[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if(idHashes[slot] == idHash
+					&& new ArchivedBill(segments.get((int)(addresses[slot] >>> 32)), (int)addresses[slot], billSplitterService).getId().equals(id))
+			{
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void put(long idHash, long address) {
+		if(2 * (size + 1) > idHashes.length)
+		{
+			long[] oldIdHashes = idHashes;
+			long[] oldAddresses = addresses;
+			idHashes = new long[oldIdHashes.length * 2];
+			addresses = new long[oldAddresses.length * 2];
+			for(int slot = 0; slot < oldIdHashes.length; slot++)
+			{
+				if(oldIdHashes[slot] != 0)
+				{
+					insert(oldIdHashes[slot], oldAddresses[slot]);
+				}
+			}
+		}
+		insert(idHash, address);
+		size++;
+	}
+
+	private void insert(long idHash, long address) {
+		int mask = idHashes.length - 1;
+		int slot = (int)(idHash ^ idHash >>> 32) & mask;
+		while(idHashes[slot] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		idHashes[slot] = idHash;
+		addresses[slot] = address;
+	}
+
+	////////////////
+	/// SEGMENTS ///
+	//////////////
+
+	private void scanSegments() throws IOException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		Arrays.sort(files);
+		for(int segment = 0; segment < files.length; segment++)
+		{
+			if(!files[segment].getName().equals(segmentName(segment)))
+			{
+				throw new IOException("Missing archive segment " + segmentName(segment));
+			}
+			MappedByteBuffer buffer = mapSegment(segment);
+			segments.add(buffer);
+			int position = 0;
+			while(position + 4 <= buffer.capacity() && buffer.getInt(position) > 0)
+			{
+				ArchivedBill bill = new ArchivedBill(buffer, position, billSplitterService);
+				put(hash(bill.getId()), (long)segment << 32 | position);
+				position += bill.getRecordLength();
+			}
+			writePosition = position;
+		}
+	}
+
+	private MappedByteBuffer mapSegment(int segment) throws IOException {
+		File file = new File(directory, segmentName(segment));
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+		{
+			// A segment keeps the size it was created with, even if the archive is opened with another one
+			long length = Math.max(randomAccessFile.length(), segmentBytes);
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		}
+	}
+
+	private static String segmentName(int segment) {
+		return String.format("%08d", segment) + SEGMENT_SUFFIX;
+	}
+
+	/**
+	 * Encodes the names once to know the record length before writing it
+	 */
+	private static class BillEncoder {
+
+		private final byte[] id;
+
+		private final BillDetailsTO billDetailsTO;
+
+		private final byte[][] userNames;
+
+		private final byte[][] itemNames;
+
+		private final String[] items;
+
+		private final int length;
+
+		BillEncoder(String id, BillDetailsTO billDetailsTO) {
+			this.id = encode(id);
+			this.billDetailsTO = billDetailsTO;
+			Set<String> users = billDetailsTO.getUsers();
+			userNames = new byte[users.size()][];
+			int recordLength = ArchivedBill.HEADER_BYTES + 2 + this.id.length + 4 * users.size();
+			int user = 0;
+			for(String userName : users)
+			{
+				userNames[user] = encode(userName);
+				recordLength += ArchivedBill.USER_BYTES + userNames[user].length;
+				user++;
+			}
+			items = billDetailsTO.getItemVsAmount().keySet().toArray(new String[0]);
+			itemNames = new byte[items.length][];
+			recordLength += 4 * items.length;
+			for(int item = 0; item < items.length; item++)
+			{
+				itemNames[item] = encode(items[item]);
+				Set<String> participants = billDetailsTO.getItemsVsParticipants().get(items[item]);
+				recordLength += ArchivedBill.ITEM_BYTES + itemNames[item].length + 4 * (participants == null ? 0 : participants.size());
+			}
+			length = recordLength;
+		}
+
+		/**
+		 * The length goes last: a record is not seen before it is complete
+		 */
+		void writeTo(MappedByteBuffer segment, int offset) {
+			Map<String,Integer> ordinals = new HashMap<>();
+			for(String user : billDetailsTO.getUsers())
+			{
+				ordinals.put(user, ordinals.size());
+			}
+			Map<String,Double> totals = billDetailsTO.getUserVsTotalPerHeadContribution();
+			Map<String,Double> percentages = billDetailsTO.getUserVsPercentageContribInTheBill();
+			Map<String,String> payers = billDetailsTO.getItemVsPayer();
+
+			segment.putInt(offset + ArchivedBill.USER_COUNT, userNames.length);
+			segment.putInt(offset + ArchivedBill.ITEM_COUNT, items.length);
+			segment.put(offset + ArchivedBill.CALCULATION_MODE, (byte)billDetailsTO.getCalculationMode().ordinal());
+			segment.putDouble(offset + ArchivedBill.TIPS_AND_TAXES, billDetailsTO.getTipsAndTaxes() == null ? 0.0 : billDetailsTO.getTipsAndTaxes());
+			segment.putInt(offset + ArchivedBill.TIPS_AND_TAXES_PAYER,
+					ordinalOf(payers.get(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES), ordinals));
+			int position = putString(segment, offset + ArchivedBill.HEADER_BYTES, id);
+
+			int userOffsets = position;
+			int itemOffsets = userOffsets + 4 * userNames.length;
+			position = itemOffsets + 4 * items.length;
+			int user = 0;
+			for(String userName : billDetailsTO.getUsers())
+			{
+				segment.putInt(userOffsets + 4 * user, position - offset);
+				segment.putDouble(position, valueOf(totals.get(userName)));
+				segment.putDouble(position + 8, valueOf(percentages.get(userName)));
+				position = putString(segment, position + ArchivedBill.USER_BYTES - 2, userNames[user]);
+				user++;
+			}
+			for(int item = 0; item < items.length; item++)
+			{
+				segment.putInt(itemOffsets + 4 * item, position - offset);
+				Set<String> participants = billDetailsTO.getItemsVsParticipants().get(items[item]);
+				int participantCount = participants == null ? 0 : participants.size();
+				segment.putDouble(position, billDetailsTO.getItemVsAmount().get(items[item]));
+				segment.putInt(position + 8, ordinalOf(payers.get(items[item]), ordinals));
+				segment.putInt(position + 12, participantCount);
+				position = putString(segment, position + ArchivedBill.ITEM_BYTES - 2, itemNames[item]);
+				if(participants != null)
+				{
+					for(String participant : participants)
+					{
+						int ordinal = ordinalOf(participant, ordinals);
+						if(ordinal < 0)
+						{
+							throw new IllegalArgumentException(participant + " is not a user of the bill");
+						}
+						segment.putInt(position, ordinal);
+						position += 4;
+					}
+				}
+			}
+			segment.putInt(offset, length);
+		}
+
+		private static int ordinalOf(String user, Map<String,Integer> ordinals) {
+			Integer ordinal = user == null ? null : ordinals.get(user);
+			return ordinal == null ? -1 : ordinal;
+		}
+
+		private static double valueOf(Double value) {
+			return value == null ? 0.0 : value;
+		}
+
+		private static byte[] encode(String name) {
+			if(name == null)
+			{
+				throw new IllegalArgumentException("Name cannot be null");
+			}
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			if(bytes.length > Short.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("Name too long : " + name.substring(0, 32) + "...");
+			}
+			return bytes;
+		}
+
+		/**
+		 * @return the position after the string
+		 */
+		private static int putString(MappedByteBuffer segment, int position, byte[] bytes) {
+			segment.putShort(position, (short)bytes.length);
+			ByteBuffer view = segment.duplicate();
+			view.position(position + 2);
+			view.put(bytes);
+			return position + 2 + bytes.length;
+		}
+	}
+}
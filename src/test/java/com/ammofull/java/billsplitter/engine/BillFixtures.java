@@ -0,0 +1,41 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Bills shared by the tests of the store and of the REST layer
+ */
+public class BillFixtures {
+
+	private BillFixtures() {
+	}
+
+	/**
+	 * Zoe and Amod, added in that order, then Ajay with the participants. Pizza 10.0 for Amod, Ajay and Zoe, paid by Zoe.
+	 * Wine 20.0 for Ajay and Zoe. Tips and taxes 3.0, paid by Ajay
+	 */
+	public static List<BillOperationTO> dinnerOperations()
+	{
+		return Arrays.asList(BillOperationTO.addUser("Zoe"),
+				BillOperationTO.addUser("Amod"),
+				BillOperationTO.addItem("Pizza", 10.0),
+				BillOperationTO.addItem("Wine", 20.0),
+				BillOperationTO.setParticipants("Pizza", new HashSet<>(Arrays.asList("Amod", "Ajay", "Zoe"))),
+				BillOperationTO.setParticipants("Wine", new HashSet<>(Arrays.asList("Ajay", "Zoe"))),
+				BillOperationTO.setTipsAndTaxes(3.0),
+				BillOperationTO.setPayer("Pizza", "Zoe"),
+				BillOperationTO.setPayer(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, "Ajay"));
+	}
+
+	/**
+	 * The bill of dinnerOperations
+	 */
+	public static BillDetailsTO dinner(CalculationMode calculationMode)
+	{
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		billDetailsTO.setCalculationMode(calculationMode);
+		return new BillSplitterServiceImpl().applyOperations(dinnerOperations(), billDetailsTO);
+	}
+}
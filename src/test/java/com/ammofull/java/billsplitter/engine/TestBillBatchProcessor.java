@@ -0,0 +1,111 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TestBillBatchProcessor extends TestCase {
+	
+	private static final int BILL_COUNT = 100;
+	
+	private static final int INVALID_BILL_INDEX = 42;
+	
+	private BillBatchProcessor billBatchProcessor;
+	
+	private List<BillDetailsTO> bills;
+	
+	public void setUp()
+	{
+		billBatchProcessor = new BillBatchProcessor(4);
+		
+		BillSplitterServiceImpl billSplitterServiceImpl = new BillSplitterServiceImpl();
+		Set<String> participants = new HashSet<>(Arrays.asList("User1", "User2"));
+		bills = new ArrayList<>();
+		for(int i = 0; i < BILL_COUNT; i++)
+		{
+			BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 2.0 * (i + 1), null);
+			billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+			bills.add(billDetailsTO);
+		}
+		
+		// An item without amount cannot be computed
+		bills.get(INVALID_BILL_INDEX).getItemsVsParticipants().put("Item2", participants);
+	}
+	
+	public void tearDown()
+	{
+		billBatchProcessor.close();
+		billBatchProcessor = null;
+		bills = null;
+	}
+	
+	public void testResultsInInputOrder()
+	{
+		// When
+		List<BillBatchResult> results = billBatchProcessor.processAll(bills);
+		
+		// Then
+		assertEquals(BILL_COUNT, results.size());
+		for(int i = 0; i < BILL_COUNT; i++)
+		{
+			BillBatchResult result = results.get(i);
+			assertEquals(i, result.getIndex());
+			assertSame(bills.get(i), result.getBillDetailsTO());
+			if(i == INVALID_BILL_INDEX)
+			{
+				assertFalse(result.isSuccessful());
+				assertNotNull(result.getError());
+			}
+			else
+			{
+				assertTrue(result.isSuccessful());
+				assertEquals(i + 1.0, result.getBillDetailsTO().getUserVsTotalPerHeadContribution().get("User1"));
+				assertEquals(i + 1.0, result.getBillDetailsTO().getUserVsTotalPerHeadContribution().get("User2"));
+			}
+		}
+	}
+	
+	public void testResultsInCompletionOrder()
+	{
+		// When
+		Iterator<BillBatchResult> results = billBatchProcessor.process(bills.iterator(), BillBatchProcessor.ResultOrder.COMPLETION_ORDER);
+		
+		// Then: every bill comes exactly once
+		boolean[] seen = new boolean[BILL_COUNT];
+		int failures = 0;
+		while(results.hasNext())
+		{
+			BillBatchResult result = results.next();
+			assertFalse(seen[result.getIndex()]);
+			seen[result.getIndex()] = true;
+			if(!result.isSuccessful())
+			{
+				assertEquals(INVALID_BILL_INDEX, result.getIndex());
+				failures++;
+			}
+		}
+		for(boolean billSeen : seen)
+		{
+			assertTrue(billSeen);
+		}
+		assertEquals(1, failures);
+	}
+	
+	public void testInvalidWorkerThreads()
+	{
+		try
+		{
+			new BillBatchProcessor(0);
+			fail("Exception expected for no worker thread");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+}
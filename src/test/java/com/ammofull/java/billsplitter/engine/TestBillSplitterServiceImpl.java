@@ -1,6 +1,11 @@
 package com.ammofull.java.billsplitter.engine;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -327,6 +332,148 @@ public class TestBillSplitterServiceImpl extends TestCase {
 		assertEquals(amount/2.0,userVsPerHeadTotal.get(user2));
 	}
 	
+	public void testAddParticipantsAgainReplacesPreviousSplit()
+	{
+		// Given
+		Set<String> participants1 = new HashSet<>();
+		participants1.add("User1"); participants1.add("User2");
+		Set<String> participants2 = new HashSet<>();
+		participants2.add("User2");
+		
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billSplitterServiceImpl.addItem("Item2", 30.0, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants1, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item2", participants1, billDetailsTO);
+		
+		// When
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants2, billDetailsTO);
+		
+		// Then
+		Map<String,Double> userVsTotal = billDetailsTO.getUserVsTotalPerHeadContribution();
+		assertEquals(15.0, userVsTotal.get("User1"));
+		assertEquals(25.0, userVsTotal.get("User2"));
+		assertFalse(billDetailsTO.getItemsVsPerHeadContributions().get("Item1").containsKey("User1"));
+		assertEquals(37.5, billDetailsTO.getUserVsPercentageContribInTheBill().get("User1"));
+		assertEquals(62.5, billDetailsTO.getUserVsPercentageContribInTheBill().get("User2"));
+	}
+	
+	public void testBillWithReplacedDataIsComputedAgain()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1"); participants.add("User2");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		
+		// When the user entered data is replaced, e.g. when the bill is read from JSON
+		BillDetailsTO copy = new BillDetailsTO();
+		copy.setUsers(new HashSet<>(billDetailsTO.getUsers()));
+		copy.setItemVsAmount(billDetailsTO.getItemVsAmount());
+		copy.setItemsVsParticipants(billDetailsTO.getItemsVsParticipants());
+		copy = billSplitterServiceImpl.addUser("User3", copy);
+		
+		// Then
+		Map<String,Double> userVsTotal = copy.getUserVsTotalPerHeadContribution();
+		assertEquals(5.0, userVsTotal.get("User1"));
+		assertEquals(5.0, userVsTotal.get("User2"));
+		assertEquals(0.0, userVsTotal.get("User3"));
+	}
+
+	public void testBillChangedInPlaceIsComputedAgain()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1"); participants.add("User2");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		assertEquals(5.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+
+		// When the collections returned by the getters are changed
+		billDetailsTO.getUsers().add("User3");
+		billDetailsTO.getItemVsAmount().put("Item1", 30.0);
+		billDetailsTO.getItemsVsParticipants().get("Item1").add("User3");
+		billSplitterServiceImpl.computeBill(billDetailsTO);
+
+		// Then
+		Map<String,Double> userVsTotal = billDetailsTO.getUserVsTotalPerHeadContribution();
+		assertEquals(10.0, userVsTotal.get("User1"));
+		assertEquals(10.0, userVsTotal.get("User2"));
+		assertEquals(10.0, userVsTotal.get("User3"));
+	}
+
+	public void testBillChangedThroughSettersIsComputedAgain()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1"); participants.add("User2");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		billSplitterServiceImpl.addTipsAndTaxes(2.0, billDetailsTO);
+		assertEquals(6.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+
+		// When
+		billDetailsTO.setTipsAndTaxes(4.0);
+		Map<String,String> itemVsPayer = new HashMap<>();
+		itemVsPayer.put("Item1", "User1");
+		billDetailsTO.setItemVsPayer(itemVsPayer);
+		billSplitterServiceImpl.addUser("User3", billDetailsTO);
+
+		// Then
+		assertEquals(7.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		assertEquals("User1", billDetailsTO.getItemVsPayer().get("Item1"));
+	}
+
+	public void testCalculatedDataIsAReadOnlyViewOfTheBill()
+	{
+		// Given
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addUser("User1", null);
+		Map<String,Double> userVsTotal = billDetailsTO.getUserVsTotalPerHeadContribution();
+		Set<String> participants = new HashSet<>();
+		participants.add("User1"); participants.add("User2");
+		
+		// When
+		billSplitterServiceImpl.addItem("Item1", 10.0, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		
+		// Then
+		assertEquals(2, userVsTotal.size());
+		assertEquals(5.0, userVsTotal.get("User2"));
+		try
+		{
+			userVsTotal.put("User1", 1.0);
+			fail("Calculated data should not be editable");
+		}
+		catch(UnsupportedOperationException e)
+		{
+			assertTrue(true);
+		}
+	}
+	
+	public void testReadsBetweenEditsDoNotChangeTheResult()
+	{
+		// Given
+		Set<String> participants1 = new HashSet<>();
+		participants1.add("User1"); participants1.add("User2");
+		Set<String> participants2 = new HashSet<>();
+		participants2.add("User2"); participants2.add("User3");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addTipsAndTaxes(6.0, null);
+		billSplitterServiceImpl.addItem("Item1", 10.0, billDetailsTO);
+		billSplitterServiceImpl.addItem("Item2", 20.0, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants1, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item2", participants1, billDetailsTO);
+		assertEquals(18.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		
+		// When only the users of one item change, the total bill does not
+		billSplitterServiceImpl.addContributionsForItem("Item2", participants2, billDetailsTO);
+		
+		// Then
+		Map<String,Double> userVsTotal = billDetailsTO.getUserVsTotalPerHeadContribution();
+		assertEquals(5.99, userVsTotal.get("User1"));
+		assertEquals(18.0, userVsTotal.get("User2"));
+		assertEquals(11.99, userVsTotal.get("User3"));
+		assertEquals(3, billDetailsTO.getItemsVsPerHeadContributions().size());
+	}
+	
 	/////////////////////////
 	// ADD TIPS AND TAXES //
 	///////////////////////
@@ -546,5 +693,460 @@ public class TestBillSplitterServiceImpl extends TestCase {
 		assertEquals(56.66,userVsTotalContrib.get(user3));
 	}
 	
-
+	/////////////////////////////
+	// FIXED POINT CENTS MODE //
+	///////////////////////////
+	public void testFixedPointCentsSharesAddUpToTheTotal()
+	{
+		// Given
+		Set<String> participants1 = new HashSet<>();
+		participants1.add("User1"); participants1.add("User2");
+		Set<String> participants2 = new HashSet<>();
+		participants2.add("User2"); participants2.add("User3");
+		Set<String> participants3 = new HashSet<>();
+		participants3.add("User3");
+		
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		billDetailsTO.setCalculationMode(CalculationMode.FIXED_POINT_CENTS);
+		
+		// When
+		billSplitterServiceImpl.addUser("User1", billDetailsTO);
+		billSplitterServiceImpl.addUser("User2", billDetailsTO);
+		billSplitterServiceImpl.addUser("User3", billDetailsTO);
+		billSplitterServiceImpl.addItem("Item1", 10.0, billDetailsTO);
+		billSplitterServiceImpl.addItem("Item2", 20.0, billDetailsTO);
+		billSplitterServiceImpl.addItem("Item3", 30.0, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants1, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item2", participants2, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Item3", participants3, billDetailsTO);
+		billSplitterServiceImpl.addTipsAndTaxes(25.0, billDetailsTO);
+		
+		// Then
+		Map<String,Double> userVsTotalContrib = billDetailsTO.getUserVsTotalPerHeadContribution();
+		assertEquals(7.08, userVsTotalContrib.get("User1"));
+		assertEquals(21.25, userVsTotalContrib.get("User2"));
+		assertEquals(56.67, userVsTotalContrib.get("User3"));
+		
+		Map<String,Double> userVsPercentageContrib = billDetailsTO.getUserVsPercentageContribInTheBill();
+		assertEquals(8.33, userVsPercentageContrib.get("User1"));
+		assertEquals(25.0, userVsPercentageContrib.get("User2"));
+		assertEquals(66.67, userVsPercentageContrib.get("User3"));
+	}
+	
+	public void testFixedPointCentsItemSplitKeepsEveryCent()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1"); participants.add("User2"); participants.add("User3");
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		billDetailsTO.setCalculationMode(CalculationMode.FIXED_POINT_CENTS);
+		billSplitterServiceImpl.addUser("User1", billDetailsTO);
+		billSplitterServiceImpl.addUser("User2", billDetailsTO);
+		billSplitterServiceImpl.addUser("User3", billDetailsTO);
+		billSplitterServiceImpl.addItem("Item1", 10.0, billDetailsTO);
+		
+		// When
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		
+		// Then
+		Map<String,Double> userVsContribution = billDetailsTO.getItemsVsPerHeadContributions().get("Item1");
+		assertEquals(3.34, userVsContribution.get("User1"));
+		assertEquals(3.33, userVsContribution.get("User2"));
+		assertEquals(3.33, userVsContribution.get("User3"));
+	}
+	
+	///////////////////////
+	// APPLY OPERATIONS //
+	/////////////////////
+	public void testApplyOperationsSameAsSingleSteps()
+	{
+		// Given
+		Set<String> participants1 = new HashSet<>();
+		participants1.add("User1"); participants1.add("User2");
+		Set<String> participants2 = new HashSet<>();
+		participants2.add("User2"); participants2.add("User3");
+		Set<String> participants3 = new HashSet<>();
+		participants3.add("User3");
+		
+		List<BillOperationTO> operations = new ArrayList<>();
+		operations.add(BillOperationTO.setTipsAndTaxes(25.0));
+		operations.add(BillOperationTO.addUser("User1"));
+		operations.add(BillOperationTO.addItem("Item1", 10.0));
+		operations.add(BillOperationTO.addItem("Item2", 20.0));
+		operations.add(BillOperationTO.addItem("Item3", 30.0));
+		operations.add(BillOperationTO.setParticipants("Item1", participants1));
+		operations.add(BillOperationTO.setParticipants("Item2", participants2));
+		operations.add(BillOperationTO.setParticipants("Item3", participants3));
+		
+		// When
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.applyOperations(operations, null);
+		
+		// Then
+		Map<String,Double> userVsTotalContrib = billDetailsTO.getUserVsTotalPerHeadContribution();
+		assertEquals(3, billDetailsTO.getUsers().size());
+		assertEquals(7.08,userVsTotalContrib.get("User1"));
+		assertEquals(21.25,userVsTotalContrib.get("User2"));
+		assertEquals(56.66,userVsTotalContrib.get("User3"));
+	}
+	
+	public void testApplyOperationsWithDeleteAndEdit()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1"); participants.add("User2");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		
+		List<BillOperationTO> operations = new ArrayList<>();
+		operations.add(BillOperationTO.addItem("Item2", 30.0));
+		operations.add(BillOperationTO.deleteItem("Item1"));
+		operations.add(BillOperationTO.editItem("Item2", "Item3", 40.0));
+		operations.add(BillOperationTO.setParticipants("Item3", participants));
+		
+		// When
+		billDetailsTO = billSplitterServiceImpl.applyOperations(operations, billDetailsTO);
+		
+		// Then
+		assertEquals(1, billDetailsTO.getItemVsAmount().size());
+		assertEquals(40.0, billDetailsTO.getItemVsAmount().get("Item3"));
+		assertEquals(20.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		assertEquals(20.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User2"));
+	}
+	
+	public void testApplyOperationsInvalidBatchLeavesBillUnchanged()
+	{
+		// Given
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addUser("User1", null);
+		List<BillOperationTO> operations = new ArrayList<>();
+		operations.add(BillOperationTO.addUser("User2"));
+		operations.add(BillOperationTO.addItem("Item1", 10.0));
+		operations.add(BillOperationTO.deleteItem("Item2"));
+		
+		// When
+		try
+		{
+			billSplitterServiceImpl.applyOperations(operations, billDetailsTO);
+			fail("Exception expected for item not present");
+		}
+		catch(InvalidOperationException e)
+		{
+			// Then
+			assertEquals(2, e.getOperationIndex());
+		}
+		assertEquals(1, billDetailsTO.getUsers().size());
+		assertTrue(billDetailsTO.getItemVsAmount().isEmpty());
+	}
+	
+	public void testLargeBillIsSplitInParallel()
+	{
+		// Given: enough items to go above the parallel threshold, each one paid by one of 3 users
+		int itemCount = 3 * 5000;
+		List<BillOperationTO> operations = new ArrayList<>();
+		for(int i = 0; i < itemCount; i++)
+		{
+			String item = "Item" + i;
+			operations.add(BillOperationTO.addItem(item, 1.0));
+			operations.add(BillOperationTO.setParticipants(item, Collections.singleton("User" + (i % 3))));
+		}
+		operations.add(BillOperationTO.setTipsAndTaxes(300.0));
+		
+		// When
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.applyOperations(operations, null);
+		
+		// Then
+		assertEquals(3, billDetailsTO.getUsers().size());
+		for(int user = 0; user < 3; user++)
+		{
+			assertEquals(33.33, billDetailsTO.getUserVsPercentageContribInTheBill().get("User" + user));
+			assertEquals(5099.99, billDetailsTO.getUserVsTotalPerHeadContribution().get("User" + user));
+		}
+	}
+	
+	public void testSettleBills()
+	{
+		// Given: User1 paid the first bill, User2 the second one
+		Set<String> participants = new HashSet<>();
+		participants.add("User1");
+		participants.add("User2");
+		participants.add("User3");
+		
+		BillDetailsTO dinner = billSplitterServiceImpl.addItem("Item1", 30.0, null);
+		dinner = billSplitterServiceImpl.addContributionsForItem("Item1", participants, dinner);
+		dinner = billSplitterServiceImpl.setPayerForItem("Item1", "User1", dinner);
+		
+		List<BillOperationTO> operations = new ArrayList<>();
+		operations.add(BillOperationTO.addItem("Item1", 9.0));
+		operations.add(BillOperationTO.setParticipants("Item1", participants));
+		operations.add(BillOperationTO.setTipsAndTaxes(3.0));
+		operations.add(BillOperationTO.setPayer("Item1", "User2"));
+		operations.add(BillOperationTO.setPayer(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, "User2"));
+		BillDetailsTO lunch = billSplitterServiceImpl.applyOperations(operations, null);
+		
+		// When
+		List<TransferTO> transfers = billSplitterServiceImpl.settleBills(Arrays.asList(dinner, lunch));
+		
+		// Then: each user owes 13.99 (tips and taxes are truncated), User1 paid 30.0 and User2 paid 12.0.
+		// The 3 truncated cents stay with User1
+		assertEquals(2, transfers.size());
+		assertEquals("User3", transfers.get(0).getFrom());
+		assertEquals("User1", transfers.get(0).getTo());
+		assertEquals(13.99, transfers.get(0).getAmount());
+		assertEquals("User2", transfers.get(1).getFrom());
+		assertEquals("User1", transfers.get(1).getTo());
+		assertEquals(1.99, transfers.get(1).getAmount());
+	}
+	
+	public void testSettleBillsWithoutPayer()
+	{
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 30.0, null);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", Collections.singleton("User1"), billDetailsTO);
+		try
+		{
+			billSplitterServiceImpl.settleBills(Collections.singletonList(billDetailsTO));
+			fail("Exception expected for item without payer");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+	
+	public void testSettleBillsWithItemWithoutParticipants()
+	{
+		// Given: nobody participates in Item2, so nobody owes User1 for it
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 30.0, null);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", new HashSet<>(Arrays.asList("User1", "User2")), billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addItem("Item2", 10.0, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.setPayerForItem("Item1", "User1", billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.setPayerForItem("Item2", "User1", billDetailsTO);
+		try
+		{
+			billSplitterServiceImpl.settleBills(Collections.singletonList(billDetailsTO));
+			fail("Exception expected for item without participants");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		
+		// When: Item2 is split too
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item2", Collections.singleton("User2"), billDetailsTO);
+		List<TransferTO> transfers = billSplitterServiceImpl.settleBills(Collections.singletonList(billDetailsTO));
+		
+		// Then
+		assertEquals(1, transfers.size());
+		assertEquals("User2", transfers.get(0).getFrom());
+		assertEquals("User1", transfers.get(0).getTo());
+		assertEquals(25.0, transfers.get(0).getAmount());
+	}
+	
+	public void testSettleBillsWithUnallocatedTipsAndTaxes()
+	{
+		// Given: tips and taxes but no item, so they are allocated to nobody
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addUser("User1", null);
+		billDetailsTO = billSplitterServiceImpl.addUser("User2", billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addTipsAndTaxes(5.0, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.setPayerForItem(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, "User1", billDetailsTO);
+		
+		// Then: nobody owes User1 for them
+		assertTrue(billSplitterServiceImpl.settleBills(Collections.singletonList(billDetailsTO)).isEmpty());
+	}
+	
+	public void testSettleBillsWithFixedPointCentsLeavesNothing()
+	{
+		// Given
+		List<BillOperationTO> operations = new ArrayList<>();
+		operations.add(BillOperationTO.addItem("Item1", 10.0));
+		operations.add(BillOperationTO.setParticipants("Item1", new HashSet<>(Arrays.asList("User1", "User2", "User3"))));
+		operations.add(BillOperationTO.setTipsAndTaxes(1.0));
+		operations.add(BillOperationTO.setPayer("Item1", "User1"));
+		operations.add(BillOperationTO.setPayer(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, "User1"));
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		billDetailsTO.setCalculationMode(CalculationMode.FIXED_POINT_CENTS);
+		billDetailsTO = billSplitterServiceImpl.applyOperations(operations, billDetailsTO);
+		
+		// When
+		List<TransferTO> transfers = billSplitterServiceImpl.settleBills(Collections.singletonList(billDetailsTO));
+		
+		// Then: User1 gets back all the 11.0 but the own share
+		double received = 0;
+		for(TransferTO transfer : transfers)
+		{
+			assertEquals("User1", transfer.getTo());
+			received += transfer.getAmount();
+		}
+		assertEquals(1100 - Math.round(billDetailsTO.getUserVsTotalPerHeadContribution().get("User1") * 100), Math.round(received * 100));
+	}
+	
+	public void testSetPayerInvalidArguments()
+	{
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 30.0, null);
+		try
+		{
+			billSplitterServiceImpl.setPayerForItem("Item1", "User1", billDetailsTO);
+			fail("Exception expected for payer not a user");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		billDetailsTO = billSplitterServiceImpl.addUser("User1", billDetailsTO);
+		try
+		{
+			billSplitterServiceImpl.setPayerForItem("Item2", "User1", billDetailsTO);
+			fail("Exception expected for item not present");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+	
+	public void testDeleteItem()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1");
+		participants.add("User2");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addItem("Item2", 20.0, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item2", Collections.singleton("User1"), billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addItem("Item3", 30.0, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item3", Collections.singleton("User2"), billDetailsTO);
+		assertEquals(25.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		
+		// When
+		billDetailsTO = billSplitterServiceImpl.deleteItem("Item1", billDetailsTO);
+		
+		// Then
+		assertEquals(20.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		assertEquals(30.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User2"));
+		assertEquals(40.0, billDetailsTO.getUserVsPercentageContribInTheBill().get("User1"));
+		assertEquals(2, billDetailsTO.getItemsVsPerHeadContributions().size());
+		assertFalse(billDetailsTO.getItemsVsPerHeadContributions().containsKey("Item1"));
+		assertEquals(30.0, billDetailsTO.getItemsVsPerHeadContributions().get("Item3").get("User2"));
+		
+		try
+		{
+			billSplitterServiceImpl.deleteItem("Item1", billDetailsTO);
+			fail("Exception expected for item not present");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+	
+	public void testEditItem()
+	{
+		// Given
+		Set<String> participants = new HashSet<>();
+		participants.add("User1");
+		participants.add("User2");
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billDetailsTO.setCalculationMode(CalculationMode.FIXED_POINT_CENTS);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", participants, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addItem("Item2", 20.0, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item2", Collections.singleton("User1"), billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.setPayerForItem("Item1", "User2", billDetailsTO);
+		assertEquals(25.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		
+		// When
+		billDetailsTO = billSplitterServiceImpl.editItem("Item1", "Item3", 0.01, billDetailsTO);
+		
+		// Then
+		// The cent goes to one of the two participants
+		Map<String,Double> totals = billDetailsTO.getUserVsTotalPerHeadContribution();
+		assertEquals(2001, Math.round(totals.get("User1") * 100) + Math.round(totals.get("User2") * 100));
+		assertTrue(totals.get("User1") >= 20.0);
+		assertEquals(participants, billDetailsTO.getItemsVsParticipants().get("Item3"));
+		assertEquals("User2", billDetailsTO.getItemVsPayer().get("Item3"));
+		assertFalse(billDetailsTO.getItemVsAmount().containsKey("Item1"));
+		
+		try
+		{
+			billSplitterServiceImpl.editItem("Item3", "Item2", 5.0, billDetailsTO);
+			fail("Exception expected for item name already present");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+	
+	public void testEditAndDeleteTipsAndTaxes()
+	{
+		// Given
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", Collections.singleton("User1"), billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addTipsAndTaxes(2.0, billDetailsTO);
+		assertEquals(12.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		
+		// When
+		billDetailsTO = billSplitterServiceImpl.editTipsAndTaxes(3.0, billDetailsTO);
+		
+		// Then
+		assertEquals(13.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		
+		// When
+		billDetailsTO = billSplitterServiceImpl.deleteTipsAndTaxes(billDetailsTO);
+		
+		// Then
+		assertEquals(10.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		assertFalse(billDetailsTO.getItemsVsPerHeadContributions().containsKey(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES));
+	}
+	
+	public void testEditContributionsFollowsTheOrderUsersWereAdded()
+	{
+		// Given
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addUser("Zoe", null);
+		billDetailsTO = billSplitterServiceImpl.addUser("Adam", billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addUser("Mia", billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addItem("Item1", 30.0, billDetailsTO);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", Collections.singleton("Adam"), billDetailsTO);
+		assertEquals(30.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("Adam"));
+		
+		// When
+		billDetailsTO = billSplitterServiceImpl.editContributionsForItem("Item1", Arrays.asList(true, false, true), billDetailsTO);
+		
+		// Then
+		assertEquals(new HashSet<>(Arrays.asList("Zoe", "Mia")), billDetailsTO.getItemsVsParticipants().get("Item1"));
+		assertEquals(15.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("Zoe"));
+		assertEquals(0.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("Adam"));
+		assertEquals(15.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("Mia"));
+	}
+	
+	public void testEditContributionsInvalidArguments()
+	{
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addUser("User1", null);
+		billDetailsTO = billSplitterServiceImpl.addItem("Item1", 30.0, billDetailsTO);
+		try
+		{
+			billSplitterServiceImpl.editContributionsForItem("Item1", Arrays.asList(true, true), billDetailsTO);
+			fail("Exception expected for one flag per user");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		try
+		{
+			billSplitterServiceImpl.editContributionsForItem("Item1", Arrays.asList(false), billDetailsTO);
+			fail("Exception expected for no participant");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		try
+		{
+			billSplitterServiceImpl.editContributionsForItem("Item2", Arrays.asList(true), billDetailsTO);
+			fail("Exception expected for item not present");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
 }
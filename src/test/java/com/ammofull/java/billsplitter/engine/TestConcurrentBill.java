@@ -0,0 +1,256 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestConcurrentBill extends TestCase {
+
+	private static final int WRITERS = 8;
+
+	private static final int ITEMS_PER_WRITER = 200;
+
+	private ConcurrentBill concurrentBill;
+
+	private ExecutorService executor;
+
+	public void setUp()
+	{
+		concurrentBill = new ConcurrentBill(PersistentBill.empty(CalculationMode.FIXED_POINT_CENTS), 4);
+		executor = Executors.newFixedThreadPool(WRITERS + 1);
+	}
+
+	public void tearDown()
+	{
+		executor.shutdownNow();
+		concurrentBill = null;
+	}
+
+	public void testNoUpdateIsLostWhenWritersEditDifferentItems() throws Exception
+	{
+		// Given
+		List<Future<?>> writers = new ArrayList<>();
+		for(int writer = 0; writer < WRITERS; writer++)
+		{
+			writers.add(executor.submit(itemWriter("User" + writer)));
+		}
+
+		// When
+		for(Future<?> writer : writers)
+		{
+			writer.get();
+		}
+
+		// Then
+		PersistentBill bill = concurrentBill.getSnapshot();
+		assertEquals(WRITERS * ITEMS_PER_WRITER, bill.getItemVsAmount().size());
+		assertEquals(WRITERS, bill.getUsers().size());
+		assertEquals(2L * WRITERS * ITEMS_PER_WRITER, concurrentBill.getVersionNumber());
+		assertEquals(ITEMS_PER_WRITER * 1.0, concurrentBill.getComputedBill().getUserVsTotalPerHeadContribution().get("User0"));
+	}
+
+	public void testReadersSeeWholeBatches() throws Exception
+	{
+		// Given: every batch adds an item and its participant, so that a reader sees either both or none
+		Future<?> writer = executor.submit(itemWriter("User1"));
+
+		// When
+		while(!writer.isDone())
+		{
+			PersistentBill bill = concurrentBill.getSnapshot();
+			for(String item : bill.getItemVsAmount().keySet())
+			{
+				// Then
+				assertEquals(Collections.singleton("User1"), bill.getItemsVsParticipants().get(item));
+			}
+		}
+		writer.get();
+	}
+
+	public void testSameItemOperationsAreAppliedInTurn() throws Exception
+	{
+		// Given
+		concurrentBill.apply(BillOperationTO.addItem("Item1", 10.0));
+		List<Future<?>> writers = new ArrayList<>();
+		for(int writer = 0; writer < WRITERS; writer++)
+		{
+			final String participant = "User" + writer;
+			writers.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					concurrentBill.apply(BillOperationTO.setParticipants("Item1", Collections.singleton(participant)));
+					return null;
+				}
+			}));
+		}
+
+		// When
+		for(Future<?> writer : writers)
+		{
+			writer.get();
+		}
+
+		// Then: the participants of the last writer, and every writer's participant became a user
+		assertEquals(1, concurrentBill.getSnapshot().getItemsVsParticipants().get("Item1").size());
+		assertEquals(WRITERS, concurrentBill.getSnapshot().getUsers().size());
+	}
+
+	public void testInvalidBatchIsNotPublished()
+	{
+		// Given
+		PersistentBill before = concurrentBill.apply(BillOperationTO.addItem("Item1", 10.0));
+		BillDetailsTO computed = concurrentBill.getComputedBill();
+
+		// When
+		try
+		{
+			concurrentBill.applyAll(Arrays.asList(BillOperationTO.addItem("Item2", 5.0), BillOperationTO.deleteItem("Item3")));
+			fail("Exception expected for unknown item");
+		}
+		catch(InvalidOperationException e)
+		{
+			// Then
+			assertEquals(1, e.getOperationIndex());
+		}
+		assertSame(before, concurrentBill.getSnapshot());
+		assertSame(computed, concurrentBill.getComputedBill());
+	}
+
+	public void testComputedVersionsCarriedForwardMatchAFullComputation()
+	{
+		// Given: versions read as they are published, versions nobody reads and more of them than a writer lets pile up
+		List<BillDetailsTO> computedVersions = new ArrayList<>();
+		List<PersistentBill> versions = new ArrayList<>();
+		for(int item = 0; item < 600; item++)
+		{
+			String itemName = "Item" + item;
+			concurrentBill.applyAll(Arrays.asList(BillOperationTO.addItem(itemName, 1.0 + item % 7),
+					BillOperationTO.setParticipants(itemName, new HashSet<>(Arrays.asList("User" + item % 3, "User" + item % 5)))));
+			if(item % 50 == 0)
+			{
+				concurrentBill.apply(BillOperationTO.setTipsAndTaxes(item / 10.0));
+			}
+			if(item % 40 == 0)
+			{
+				concurrentBill.apply(BillOperationTO.editItem("Item" + item / 2, "Renamed" + item, 3.0));
+			}
+			if(item < 300 && item % 3 == 0)
+			{
+				versions.add(concurrentBill.getSnapshot());
+				computedVersions.add(concurrentBill.getComputedBill());
+			}
+		}
+
+		// When: the last 300 items, which a writer caught up with, are read at once
+		BillDetailsTO computed = concurrentBill.getComputedBill();
+
+		// Then
+		assertComputedAsFromScratch(concurrentBill.getSnapshot(), computed);
+		for(int version = 0; version < versions.size(); version++)
+		{
+			assertComputedAsFromScratch(versions.get(version), computedVersions.get(version));
+		}
+		assertComputedAsFromScratch(versions.get(0), new ConcurrentBill(versions.get(0)).getComputedBill());
+	}
+
+	public void testReaderDoesNotWaitForTheWorkingBill() throws Exception
+	{
+		// Given: another thread holds the working bill
+		concurrentBill.apply(BillOperationTO.addItem("Item1", 10.0));
+		final CountDownLatch held = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<?> holder = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws InterruptedException {
+				concurrentBill.workingLock.lock();
+				try
+				{
+					held.countDown();
+					release.await();
+				}
+				finally
+				{
+					concurrentBill.workingLock.unlock();
+				}
+				return null;
+			}
+		});
+		assertTrue(held.await(5, TimeUnit.SECONDS));
+		try
+		{
+			// When
+			concurrentBill.apply(BillOperationTO.setParticipants("Item1", Collections.singleton("User1")));
+			Future<BillDetailsTO> reader = executor.submit(new Callable<BillDetailsTO>() {
+				@Override
+				public BillDetailsTO call() {
+					return concurrentBill.getComputedBill();
+				}
+			});
+
+			// Then
+			assertEquals(10.0, reader.get(5, TimeUnit.SECONDS).getUserVsTotalPerHeadContribution().get("User1"));
+		}
+		finally
+		{
+			release.countDown();
+		}
+		holder.get();
+		assertEquals(10.0, concurrentBill.getComputedBill().getUserVsTotalPerHeadContribution().get("User1"));
+	}
+
+	public void testInvalidArguments()
+	{
+		try
+		{
+			new ConcurrentBill(null);
+			fail("Exception expected for null initial version");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		try
+		{
+			new ConcurrentBill(PersistentBill.empty(null), 0);
+			fail("Exception expected for no lock stripe");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	private static void assertComputedAsFromScratch(PersistentBill bill, BillDetailsTO computed)
+	{
+		BillDetailsTO expected = bill.toBillDetailsTO();
+		assertEquals(expected.getUserVsTotalPerHeadContribution(), computed.getUserVsTotalPerHeadContribution());
+		assertEquals(expected.getUserVsPercentageContribInTheBill(), computed.getUserVsPercentageContribInTheBill());
+		assertEquals(expected.getItemsVsPerHeadContributions(), computed.getItemsVsPerHeadContributions());
+	}
+
+	private Callable<Void> itemWriter(final String user)
+	{
+		return new Callable<Void>() {
+			@Override
+			public Void call() {
+				for(int item = 0; item < ITEMS_PER_WRITER; item++)
+				{
+					String itemName = user + "-Item" + item;
+					concurrentBill.applyAll(Arrays.asList(BillOperationTO.addItem(itemName, 1.0),
+							BillOperationTO.setParticipants(itemName, Collections.singleton(user))));
+				}
+				return null;
+			}
+		};
+	}
+}
@@ -0,0 +1,76 @@
+package com.ammofull.java.billsplitter.engine;
+
+import junit.framework.TestCase;
+
+public class TestLargestRemainderAllocator extends TestCase {
+	
+	private LargestRemainderAllocator allocator;
+	
+	public void setUp()
+	{
+		allocator = new LargestRemainderAllocator();
+	}
+	
+	public void tearDown()
+	{
+		allocator = null;
+	}
+	
+	public void testSharesAddUpToTheAmount()
+	{
+		long[] weights = {500, 1500, 4000};
+		long[] shares = new long[3];
+		
+		allocator.allocate(2500, weights, 3, shares);
+		
+		assertEquals(208, shares[0]);
+		assertEquals(625, shares[1]);
+		assertEquals(1667, shares[2]);
+	}
+	
+	public void testTiesGoToTheLowerIndex()
+	{
+		long[] weights = {1, 1, 1};
+		long[] shares = new long[3];
+		
+		allocator.allocate(100, weights, 3, shares);
+		
+		assertEquals(34, shares[0]);
+		assertEquals(33, shares[1]);
+		assertEquals(33, shares[2]);
+	}
+	
+	public void testNegativeAmountAndZeroWeights()
+	{
+		long[] weights = {0, 1, -5, 1};
+		long[] shares = new long[4];
+		
+		allocator.allocate(-3, weights, 4, shares);
+		
+		assertEquals(0, shares[0]);
+		assertEquals(-2, shares[1]);
+		assertEquals(0, shares[2]);
+		assertEquals(-1, shares[3]);
+	}
+	
+	public void testNoPositiveWeight()
+	{
+		long[] weights = {0, 0};
+		long[] shares = {7, 7};
+		
+		allocator.allocate(100, weights, 2, shares);
+		
+		assertEquals(0, shares[0]);
+		assertEquals(0, shares[1]);
+	}
+	
+	public void testProductDoesNotFitInALong()
+	{
+		long[] weights = {Long.MAX_VALUE / 4, Long.MAX_VALUE / 4};
+		long[] shares = new long[2];
+		
+		allocator.allocate(Long.MAX_VALUE / 2, weights, 2, shares);
+		
+		assertEquals(Long.MAX_VALUE / 2, shares[0] + shares[1]);
+	}
+}
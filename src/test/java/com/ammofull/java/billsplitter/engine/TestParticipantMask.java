@@ -0,0 +1,67 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TestParticipantMask extends TestCase {
+	
+	public void testParticipantsAcrossWords()
+	{
+		ParticipantMask participants = ParticipantMask.of(new int[] {130, 3, 64, 63});
+		
+		assertEquals(4, participants.count());
+		assertTrue(participants.contains(63));
+		assertTrue(participants.contains(64));
+		assertFalse(participants.contains(65));
+		assertFalse(participants.contains(500));
+		
+		assertEquals(3, participants.next(0));
+		assertEquals(63, participants.next(4));
+		assertEquals(130, participants.next(65));
+		assertEquals(-1, participants.next(131));
+		
+		assertEquals(0, participants.rank(3));
+		assertEquals(2, participants.rank(64));
+		assertEquals(3, participants.rank(130));
+		assertEquals(64, participants.select(2));
+		assertEquals(130, participants.select(3));
+	}
+	
+	public void testFlagsInUserOrder()
+	{
+		ParticipantMask participants = ParticipantMask.of(Arrays.asList(false, true, true, false));
+		
+		assertEquals(2, participants.count());
+		assertEquals(1, participants.select(0));
+		assertEquals(2, participants.select(1));
+		assertEquals(0, ParticipantMask.EMPTY.count());
+		assertEquals(-1, ParticipantMask.EMPTY.next(0));
+	}
+	
+	public void testSelectFollowsNext()
+	{
+		int[] users = new int[100];
+		for(int i = 0; i < users.length; i++)
+		{
+			users[i] = 3 * i;
+		}
+		ParticipantMask participants = ParticipantMask.of(users);
+		
+		int index = 0;
+		for(int user = participants.next(0); user >= 0; user = participants.next(user + 1))
+		{
+			assertEquals(user, participants.select(index++));
+		}
+		assertEquals(100, index);
+		try
+		{
+			participants.select(100);
+			fail("Exception expected for an index past the last participant");
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			assertTrue(true);
+		}
+	}
+}
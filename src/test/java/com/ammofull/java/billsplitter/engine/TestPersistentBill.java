@@ -0,0 +1,120 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TestPersistentBill extends TestCase {
+	
+	private BillHistory billHistory;
+	
+	private Set<String> participants;
+	
+	public void setUp()
+	{
+		billHistory = new BillHistory(PersistentBill.empty(CalculationMode.DECIMAL));
+		participants = new HashSet<>(Arrays.asList("User1", "User2"));
+	}
+	
+	public void tearDown()
+	{
+		billHistory = null;
+		participants = null;
+	}
+	
+	public void testOldVersionsDoNotChange()
+	{
+		// Given
+		PersistentBill withItem = billHistory.apply(BillOperationTO.addItem("Item1", 10.0));
+		
+		// When
+		PersistentBill withParticipants = billHistory.apply(BillOperationTO.setParticipants("Item1", participants));
+		PersistentBill edited = billHistory.apply(BillOperationTO.editItem("Item1", "Item2", 20.0));
+		
+		// Then
+		assertTrue(withItem.getUsers().isEmpty());
+		assertTrue(withItem.getItemsVsParticipants().get("Item1").isEmpty());
+		assertEquals(participants, withParticipants.getItemsVsParticipants().get("Item1"));
+		assertEquals(10.0, withParticipants.getItemVsAmount().get("Item1"));
+		assertFalse(edited.getItemVsAmount().containsKey("Item1"));
+		assertEquals(participants, edited.getItemsVsParticipants().get("Item2"));
+		assertEquals(4, billHistory.getVersionCount());
+	}
+	
+	public void testFingerprintDependsOnTheDataOnly()
+	{
+		// Given: the same bill built in two orders, and a bill that differs by a payer
+		PersistentBill bill = PersistentBill.empty(CalculationMode.DECIMAL)
+				.apply(BillOperationTO.addItem("Item1", 10.0))
+				.apply(BillOperationTO.addItem("Item2", 5.0))
+				.apply(BillOperationTO.setParticipants("Item1", participants));
+		PersistentBill sameBill = PersistentBill.empty(CalculationMode.DECIMAL)
+				.apply(BillOperationTO.addItem("Item2", 5.0))
+				.apply(BillOperationTO.addItem("Item3", 3.0))
+				.apply(BillOperationTO.setParticipants("Item3", participants))
+				.apply(BillOperationTO.editItem("Item3", "Item1", 10.0));
+		PersistentBill otherBill = bill.apply(BillOperationTO.setPayer("Item2", "User1"));
+		
+		// Then
+		assertEquals(32, bill.getFingerprint().length());
+		assertEquals(bill.getFingerprint(), sameBill.getFingerprint());
+		assertFalse(bill.getFingerprint().equals(otherBill.getFingerprint()));
+		assertFalse(bill.getFingerprint().equals(PersistentBill.empty(CalculationMode.FIXED_POINT_CENTS).getFingerprint()));
+	}
+	
+	public void testUndoAndRedo()
+	{
+		// Given
+		billHistory.apply(BillOperationTO.addItem("Item1", 10.0));
+		billHistory.apply(BillOperationTO.setParticipants("Item1", participants));
+		PersistentBill withTips = billHistory.apply(BillOperationTO.setTipsAndTaxes(2.0));
+		
+		// When
+		PersistentBill undone = billHistory.undo();
+		
+		// Then
+		assertEquals(0.0, undone.getTipsAndTaxes());
+		assertTrue(billHistory.canRedo());
+		assertSame(withTips, billHistory.redo());
+		assertFalse(billHistory.canRedo());
+		
+		// An operation after an undo drops what could be redone
+		billHistory.undo();
+		billHistory.apply(BillOperationTO.setTipsAndTaxes(4.0));
+		assertFalse(billHistory.canRedo());
+		assertEquals(4.0, billHistory.getCurrent().getTipsAndTaxes());
+	}
+	
+	public void testVersionIsComputedLikeTheMutableBill()
+	{
+		// Given
+		billHistory.apply(BillOperationTO.addItem("Item1", 10.0));
+		billHistory.apply(BillOperationTO.setParticipants("Item1", participants));
+		billHistory.apply(BillOperationTO.setTipsAndTaxes(2.0));
+		
+		// When
+		BillDetailsTO billDetailsTO = billHistory.getCurrent().toBillDetailsTO();
+		
+		// Then
+		assertEquals(6.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User1"));
+		assertEquals(6.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("User2"));
+		assertEquals(PersistentBill.of(billDetailsTO).getItemVsAmount(), billHistory.getCurrent().getItemVsAmount());
+	}
+	
+	public void testInvalidOperationDoesNotAddAVersion()
+	{
+		try
+		{
+			billHistory.apply(BillOperationTO.deleteItem("Item1"));
+			fail("Exception expected for item not present");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		assertEquals(1, billHistory.getVersionCount());
+		assertFalse(billHistory.canUndo());
+	}
+}
@@ -0,0 +1,80 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestPersistentHashMap extends TestCase {
+	
+	public void testPlusLeavesTheOldMapUnchanged()
+	{
+		PersistentHashMap<String,Integer> empty = PersistentHashMap.empty();
+		PersistentHashMap<String,Integer> one = empty.plus("Item1", 1);
+		PersistentHashMap<String,Integer> two = one.plus("Item1", 2);
+		
+		assertTrue(empty.isEmpty());
+		assertEquals(Integer.valueOf(1), one.get("Item1"));
+		assertEquals(Integer.valueOf(2), two.get("Item1"));
+		assertEquals(1, two.size());
+		assertSame(two, two.plus("Item1", two.get("Item1")));
+		assertSame(two, two.minus("Item2"));
+		assertTrue(two.minus("Item1").isEmpty());
+	}
+	
+	public void testSameAsHashMap()
+	{
+		Random random = new Random(42);
+		Map<Integer,Integer> expected = new HashMap<>();
+		PersistentHashMap<Integer,Integer> map = PersistentHashMap.empty();
+		for(int i = 0; i < 20000; i++)
+		{
+			Integer key = random.nextInt(5000);
+			if(random.nextInt(3) == 0)
+			{
+				expected.remove(key);
+				map = map.minus(key);
+			}
+			else
+			{
+				expected.put(key, i);
+				map = map.plus(key, i);
+			}
+		}
+		
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected, map);
+		assertEquals(expected.entrySet(), map.entrySet());
+	}
+	
+	public void testKeysWithTheSameHash()
+	{
+		// "Aa" and "BB" have the same hash code
+		PersistentHashMap<String,String> map = PersistentHashMap.<String,String>empty().plus("Aa", "1").plus("BB", "2").plus("C", "3");
+		
+		assertEquals(3, map.size());
+		assertEquals("1", map.get("Aa"));
+		assertEquals("2", map.get("BB"));
+		assertEquals("3", map.get("C"));
+		
+		PersistentHashMap<String,String> withoutAa = map.minus("Aa");
+		assertEquals(2, withoutAa.size());
+		assertNull(withoutAa.get("Aa"));
+		assertEquals("2", withoutAa.get("BB"));
+		assertEquals("1", map.get("Aa"));
+	}
+	
+	public void testReadOnly()
+	{
+		try
+		{
+			PersistentHashMap.<String,String>empty().put("Item1", "1");
+			fail("Exception expected for put");
+		}
+		catch(UnsupportedOperationException e)
+		{
+			// Expected
+		}
+	}
+}
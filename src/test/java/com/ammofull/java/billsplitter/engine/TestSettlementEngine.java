@@ -0,0 +1,106 @@
+package com.ammofull.java.billsplitter.engine;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestSettlementEngine extends TestCase {
+	
+	private SettlementEngine settlementEngine;
+	
+	public void setUp()
+	{
+		settlementEngine = new SettlementEngine();
+	}
+	
+	public void tearDown()
+	{
+		settlementEngine = null;
+	}
+	
+	public void testLargestDebtorPaysLargestCreditor()
+	{
+		// Given
+		settlementEngine.addBalance("User1", 3000);
+		settlementEngine.addBalance("User2", -2000);
+		settlementEngine.addBalance("User3", -1000);
+		
+		// When
+		List<TransferTO> transfers = settlementEngine.settle();
+		
+		// Then
+		assertEquals(2, transfers.size());
+		assertEquals("User2", transfers.get(0).getFrom());
+		assertEquals("User1", transfers.get(0).getTo());
+		assertEquals(20.0, transfers.get(0).getAmount());
+		assertEquals("User3", transfers.get(1).getFrom());
+		assertEquals("User1", transfers.get(1).getTo());
+		assertEquals(10.0, transfers.get(1).getAmount());
+	}
+	
+	public void testSettledMembersDoNotTransfer()
+	{
+		settlementEngine.addBalance("User1", 1000);
+		settlementEngine.addBalance("User1", -1000);
+		
+		assertTrue(settlementEngine.settle().isEmpty());
+	}
+	
+	public void testClearedEngineSettlesTheNextGroupAlone()
+	{
+		// Given
+		settlementEngine.addBalance("User1", 1000);
+		settlementEngine.addBalance("User2", -1000);
+		settlementEngine.settle();
+		
+		// When
+		settlementEngine.clear();
+		settlementEngine.addBalance("User3", 500);
+		settlementEngine.addBalance("User1", -500);
+		List<TransferTO> transfers = settlementEngine.settle();
+		
+		// Then
+		assertEquals(1, transfers.size());
+		assertEquals("User1", transfers.get(0).getFrom());
+		assertEquals("User3", transfers.get(0).getTo());
+		assertEquals(5.0, transfers.get(0).getAmount());
+	}
+	
+	public void testLargeGroupIsEntirelySettled()
+	{
+		// Given: 50000 members with random balances adding up to zero
+		int memberCount = 50000;
+		Random random = new Random(42);
+		Map<String,Long> balances = new HashMap<>();
+		long sum = 0;
+		for(int member = 1; member < memberCount; member++)
+		{
+			long cents = random.nextInt(200001) - 100000;
+			balances.put("User" + member, cents);
+			settlementEngine.addBalance("User" + member, cents);
+			sum += cents;
+		}
+		balances.put("User0", -sum);
+		settlementEngine.addBalance("User0", -sum);
+		
+		// When
+		List<TransferTO> transfers = settlementEngine.settle();
+		
+		// Then: fewer transfers than members and every balance is back to zero
+		assertTrue(transfers.size() < memberCount);
+		for(TransferTO transfer : transfers)
+		{
+			long cents = Math.round(transfer.getAmount() * 100);
+			assertTrue(cents > 0);
+			balances.put(transfer.getFrom(), balances.get(transfer.getFrom()) + cents);
+			balances.put(transfer.getTo(), balances.get(transfer.getTo()) - cents);
+		}
+		for(long balance : balances.values())
+		{
+			assertEquals(0, balance);
+		}
+	}
+}
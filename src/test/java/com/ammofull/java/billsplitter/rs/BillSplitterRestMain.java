@@ -18,8 +18,7 @@ public class BillSplitterRestMain {
 	 */
 	public static HttpServer startServer() {
 		// create a resource config that scans for JAX-RS resources and providers
-		final ResourceConfig rc = new ResourceConfig()
-		.packages("com.ammofull.java.billsplitter");				
+		final ResourceConfig rc = new BillSplitterApplication();
 
 		// create and start a new instance of grizzly http server
 		// exposing the Jersey application at BASE_URI
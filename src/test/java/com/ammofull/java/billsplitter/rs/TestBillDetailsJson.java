@@ -0,0 +1,98 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillFixtures;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+
+public class TestBillDetailsJson extends TestCase {
+
+	private final ObjectMapper beanObjectMapper = new ObjectMapper();
+
+	private final ObjectMapper objectMapper = BillSplitterObjectMapperProvider.newObjectMapper();
+
+	public void testComputedBillIsWrittenAsBeanSerializationDoes() throws IOException
+	{
+		// Given
+		BillDetailsTO billDetailsTO = BillFixtures.dinner(CalculationMode.FIXED_POINT_CENTS);
+
+		// When
+		String json = objectMapper.writeValueAsString(billDetailsTO);
+
+		// Then
+		assertEquals(beanObjectMapper.readTree(beanObjectMapper.writeValueAsString(billDetailsTO)), beanObjectMapper.readTree(json));
+	}
+
+	public void testBillIsReadBack() throws IOException
+	{
+		// Given
+		BillDetailsTO billDetailsTO = BillFixtures.dinner(CalculationMode.FIXED_POINT_CENTS);
+
+		// When
+		BillDetailsTO readBack = objectMapper.readValue(objectMapper.writeValueAsString(billDetailsTO), BillDetailsTO.class);
+
+		// Then: users keep their order
+		assertEquals(Arrays.asList(billDetailsTO.getUsers().toArray()), Arrays.asList(readBack.getUsers().toArray()));
+		assertEquals(billDetailsTO.getItemsVsParticipants(), readBack.getItemsVsParticipants());
+		assertEquals(billDetailsTO.getItemVsAmount(), readBack.getItemVsAmount());
+		assertEquals(billDetailsTO.getTipsAndTaxes(), readBack.getTipsAndTaxes());
+		assertEquals(billDetailsTO.getItemVsPayer(), readBack.getItemVsPayer());
+		assertEquals(billDetailsTO.getCalculationMode(), readBack.getCalculationMode());
+		assertEquals(billDetailsTO.getItemsVsPerHeadContributions(), readBack.getItemsVsPerHeadContributions());
+		assertEquals(billDetailsTO.getUserVsPercentageContribInTheBill(), readBack.getUserVsPercentageContribInTheBill());
+		assertEquals(billDetailsTO.getUserVsTotalPerHeadContribution(), readBack.getUserVsTotalPerHeadContribution());
+	}
+
+	public void testPartialAndNullFields() throws IOException
+	{
+		// When
+		BillDetailsTO billDetailsTO = objectMapper.readValue(
+				"{\"itemVsAmount\":{\"Pizza\":10,\"Wine\":\"2.5\"},\"itemVsPayer\":null,\"tipsAndTaxes\":null}", BillDetailsTO.class);
+
+		// Then
+		assertEquals(10.0, billDetailsTO.getItemVsAmount().get("Pizza"));
+		assertEquals(2.5, billDetailsTO.getItemVsAmount().get("Wine"));
+		assertNull(billDetailsTO.getItemVsPayer());
+		assertNull(billDetailsTO.getTipsAndTaxes());
+		assertTrue(billDetailsTO.getUsers().isEmpty());
+		assertEquals(CalculationMode.DECIMAL, billDetailsTO.getCalculationMode());
+	}
+
+	public void testInvalidJson() throws IOException
+	{
+		try
+		{
+			objectMapper.readValue("{\"unknown\":1}", BillDetailsTO.class);
+			fail("Exception expected for unknown field");
+		}
+		catch(JsonMappingException e)
+		{
+			// Expected
+		}
+		try
+		{
+			objectMapper.readValue("{\"calculationMode\":\"ROUNDED\"}", BillDetailsTO.class);
+			fail("Exception expected for unknown calculation mode");
+		}
+		catch(JsonMappingException e)
+		{
+			// Expected
+		}
+		try
+		{
+			objectMapper.readValue("{\"itemVsAmount\":[1]}", BillDetailsTO.class);
+			fail("Exception expected for list instead of map");
+		}
+		catch(JsonMappingException e)
+		{
+			// Expected
+		}
+	}
+}
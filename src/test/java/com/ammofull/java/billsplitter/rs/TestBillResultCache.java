@@ -0,0 +1,61 @@
+package com.ammofull.java.billsplitter.rs;
+
+import junit.framework.TestCase;
+
+public class TestBillResultCache extends TestCase {
+
+	public void testLeastRecentlyUsedResultIsEvicted()
+	{
+		// Given
+		BillResultCache billResultCache = new BillResultCache(2);
+		billResultCache.put("bill1", "totals", "result1");
+		billResultCache.put("bill2", "totals", "result2");
+
+		// When
+		billResultCache.get("bill1", "totals");
+		billResultCache.put("bill3", "totals", "result3");
+
+		// Then
+		assertEquals(2, billResultCache.size());
+		assertEquals("result1", billResultCache.get("bill1", "totals"));
+		assertNull(billResultCache.get("bill2", "totals"));
+		assertNull(billResultCache.get("bill1", "compact"));
+	}
+
+	public void testEvictionKeepsTheResultsInUse()
+	{
+		// Given a full cache whose first results are in use
+		BillResultCache billResultCache = new BillResultCache(16);
+		for(int bill = 0; bill < 16; bill++)
+		{
+			billResultCache.put("bill" + bill, "totals", "result" + bill);
+		}
+		billResultCache.get("bill0", "totals");
+		billResultCache.get("bill1", "totals");
+
+		// When
+		billResultCache.put("bill16", "totals", "result16");
+
+		// Then an eighth of the results goes at once, the least recently used
+		assertEquals(14, billResultCache.size());
+		assertEquals("result0", billResultCache.get("bill0", "totals"));
+		assertEquals("result1", billResultCache.get("bill1", "totals"));
+		assertEquals("result16", billResultCache.get("bill16", "totals"));
+		assertNull(billResultCache.get("bill2", "totals"));
+		assertNull(billResultCache.get("bill4", "totals"));
+		assertEquals("result5", billResultCache.get("bill5", "totals"));
+	}
+
+	public void testInvalidCache()
+	{
+		try
+		{
+			new BillResultCache(0);
+			fail("Exception expected for empty cache");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.ConcurrentBill;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+
+public class TestBillSessionStore extends TestCase {
+	
+	private static final long ONE_HOUR = 60 * 60 * 1000;
+	
+	private final BillSplitterServiceImpl billSplitterServiceImpl = new BillSplitterServiceImpl();
+	
+	private File spillDirectory;
+	
+	public void setUp() throws Exception
+	{
+		spillDirectory = File.createTempFile("bill-sessions", "");
+		spillDirectory.delete();
+	}
+	
+	public void tearDown()
+	{
+		File[] files = spillDirectory.listFiles();
+		if(files != null)
+		{
+			for(File file : files)
+			{
+				file.delete();
+			}
+		}
+		spillDirectory.delete();
+	}
+	
+	public void testActionsChangeTheStoredBill()
+	{
+		BillSessionStore store = new BillSessionStore(ONE_HOUR, 1024 * 1024, null);
+		String id = store.create(null);
+		
+		store.apply(id, addItem("Item1", 10.0));
+		
+		assertEquals(Double.valueOf(10.0), store.read(id, totalOf("User1")));
+		assertNull(store.read("unknown", totalOf("User1")));
+		assertTrue(store.delete(id));
+		assertNull(store.read(id, totalOf("User1")));
+	}
+	
+	public void testLeastRecentlyUsedBillIsDroppedOverBudget()
+	{
+		// Given: room for two empty bills
+		long budget = 2 * BillSessionStore.estimateBytes(PersistentBill.empty(null));
+		BillSessionStore store = new BillSessionStore(ONE_HOUR, budget, null);
+		String first = store.create(null);
+		String second = store.create(null);
+		
+		// When
+		store.read(first, totalOf("User1"));
+		String third = store.create(null);
+		
+		// Then
+		assertEquals(2, store.size());
+		assertNotNull(store.read(first, totalOf("User1")));
+		assertNull(store.read(second, totalOf("User1")));
+		assertNotNull(store.read(third, totalOf("User1")));
+	}
+	
+	public void testEvictedBillIsReadBackFromTheSpillDirectory()
+	{
+		// Given: room for one bill with an item
+		BillDetailsTO billDetailsTO = billSplitterServiceImpl.addItem("Item1", 10.0, null);
+		billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item1", Collections.singleton("User1"), billDetailsTO);
+		BillSessionStore store = new BillSessionStore(ONE_HOUR, BillSessionStore.estimateBytes(PersistentBill.of(billDetailsTO)), spillDirectory);
+		String first = store.create(null);
+		store.apply(first, addItem("Item1", 10.0));
+		
+		// When
+		store.create(null);
+		
+		// Then
+		assertEquals(1, store.size());
+		assertEquals(1, spillDirectory.listFiles().length);
+		assertEquals(Double.valueOf(10.0), store.read(first, totalOf("User1")));
+	}
+	
+	public void testExpiredBillIsDropped() throws InterruptedException
+	{
+		BillSessionStore store = new BillSessionStore(1, 1024 * 1024, null);
+		String id = store.create(null);
+		
+		Thread.sleep(20);
+		
+		assertNull(store.read(id, totalOf("User1")));
+		assertEquals(0, store.size());
+	}
+	
+	public void testEvictionWaitingForAWriterDoesNotHoldUpOtherSessions() throws Exception
+	{
+		// Given: room for two empty bills, and a writer of the first one that does not finish
+		long budget = 2 * BillSessionStore.estimateBytes(PersistentBill.empty(null));
+		final BillSessionStore store = new BillSessionStore(ONE_HOUR, budget, null);
+		final String first = store.create(null);
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try
+		{
+			Future<Boolean> writer = executorService.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return store.apply(first, new BillSessionStore.BillAction<Boolean>() {
+						@Override
+						public Boolean apply(ConcurrentBill bill) {
+							writing.countDown();
+							try
+							{
+								release.await();
+							}
+							catch(InterruptedException e)
+							{
+								Thread.currentThread().interrupt();
+							}
+							return Boolean.TRUE;
+						}
+					});
+				}
+			});
+			assertTrue(writing.await(5, TimeUnit.SECONDS));
+			String second = store.create(null);
+			
+			// When: a third bill evicts the first one, which waits for its writer
+			final AtomicReference<Thread> creatorThread = new AtomicReference<>();
+			Future<String> creator = executorService.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					creatorThread.set(Thread.currentThread());
+					return store.create(null);
+				}
+			});
+			long deadline = System.currentTimeMillis() + 5000;
+			while((creatorThread.get() == null || creatorThread.get().getState() != Thread.State.WAITING) && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(1);
+			}
+			assertEquals(Thread.State.WAITING, creatorThread.get().getState());
+			
+			// Then: the second bill is read meanwhile
+			assertEquals(Double.valueOf(0.0), store.read(second, totalOf("User1")));
+			assertFalse(creator.isDone());
+			release.countDown();
+			assertEquals(Boolean.TRUE, writer.get(5, TimeUnit.SECONDS));
+			assertNotNull(creator.get(5, TimeUnit.SECONDS));
+			assertNull(store.read(first, totalOf("User1")));
+		}
+		finally
+		{
+			release.countDown();
+			executorService.shutdownNow();
+		}
+	}
+	
+	private static BillSessionStore.BillAction<Boolean> addItem(final String itemName, final Double amount)
+	{
+		return new BillSessionStore.BillAction<Boolean>() {
+			@Override
+			public Boolean apply(ConcurrentBill bill) {
+				bill.applyAll(Arrays.asList(BillOperationTO.addItem(itemName, amount),
+						BillOperationTO.setParticipants(itemName, Collections.singleton("User1"))));
+				return Boolean.TRUE;
+			}
+		};
+	}
+	
+	private static BillSessionStore.BillAction<Double> totalOf(final String user)
+	{
+		return new BillSessionStore.BillAction<Double>() {
+			@Override
+			public Double apply(ConcurrentBill bill) {
+				Double total = bill.getComputedBill().getUserVsTotalPerHeadContribution().get(user);
+				return total == null ? Double.valueOf(0.0) : total;
+			}
+		};
+	}
+}
@@ -0,0 +1,165 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import junit.framework.TestCase;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+
+public class TestBillSplitterServer extends TestCase {
+
+	private static final String BASE_URI = "http://localhost:8081/";
+
+	private BillSplitterServer server;
+
+	private HttpServer httpServer;
+
+	private WebTarget target;
+
+	public void setUp() throws Exception
+	{
+		server = new BillSplitterServer(URI.create(BASE_URI));
+		server.setSelectorThreads(1);
+		server.setWorkerThreads(2);
+		server.setMaxRequestBytes(64 * 1024);
+		server.setShutdownGraceSeconds(1);
+		httpServer = server.start(new BillSplitterApplication());
+		target = ClientBuilder.newClient().target(BASE_URI);
+	}
+
+	public void tearDown()
+	{
+		server.stop(httpServer);
+	}
+
+	public void testRequestWithinTheLimitIsServed()
+	{
+		// When
+		Response response = target.path("/ammofull/billsplitter/user/Amod")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(new BillDetailsTO(), MediaType.APPLICATION_JSON));
+
+		// Then
+		assertEquals(200, response.getStatus());
+		assertEquals(2, httpServer.getListeners().iterator().next().getTransport().getWorkerThreadPoolConfig().getMaxPoolSize());
+	}
+
+	public void testRequestOverTheLimitIsRefused()
+	{
+		// When
+		Response response = target.path("/ammofull/billsplitter/user/Amod")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billOverTheLimit(), MediaType.APPLICATION_JSON));
+
+		// Then
+		assertEquals(413, response.getStatus());
+	}
+
+	public void testChunkedRequestOverTheLimitIsRefused()
+	{
+		// When: without Content-Length, the limit is found while the body is read
+		Response response = target.path("/ammofull/billsplitter/user/Amod")
+				.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED)
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billOverTheLimit(), MediaType.APPLICATION_JSON));
+
+		// Then
+		assertEquals(413, response.getStatus());
+	}
+
+	public void testStopLetsTheRequestInProgressFinish() throws Exception
+	{
+		// Given a request whose body is half sent
+		HttpURLConnection connection = (HttpURLConnection)new URL(BASE_URI + "ammofull/billsplitter/user/Amod").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", MediaType.APPLICATION_JSON);
+		connection.setDoOutput(true);
+		connection.setChunkedStreamingMode(0);
+		OutputStream out = connection.getOutputStream();
+		out.write("{\"users\":[\"Ajay\"".getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		Thread.sleep(200);
+
+		// When
+		Thread stop = new Thread() {
+			@Override
+			public void run() {
+				server.stop(httpServer);
+			}
+		};
+		stop.start();
+		Thread.sleep(200);
+		assertTrue("stop should wait for the request in progress", stop.isAlive());
+		out.write("]}".getBytes(StandardCharsets.UTF_8));
+		out.close();
+
+		// Then
+		assertEquals(200, connection.getResponseCode());
+		stop.join(5000);
+		assertFalse(stop.isAlive());
+	}
+
+	public void testWarmUpRunsAgainstTheServer() throws Exception
+	{
+		// When: the wildcard host is reached on localhost
+		long millis = new BillSplitterWarmUp(URI.create("http://0.0.0.0:8081/")).run(3);
+
+		// Then
+		assertTrue(millis >= 0);
+	}
+
+	private static String billOverTheLimit()
+	{
+		StringBuilder json = new StringBuilder("{\"users\":[");
+		for(int user = 0; user < 10000; user++)
+		{
+			json.append(user == 0 ? "" : ",").append("\"User").append(user).append('"');
+		}
+		return json.append("]}").toString();
+	}
+
+	public void testInvalidConfiguration()
+	{
+		try
+		{
+			server.setWorkerThreads(0);
+			fail("Exception expected for no worker thread");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		try
+		{
+			new BillSplitterServer(null);
+			fail("Exception expected for null base URI");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		try
+		{
+			server.setWarmUpIterations(-1);
+			fail("Exception expected for negative warm up iterations");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+
+public class TestBinaryBillCodec extends TestCase {
+	
+	private final BillSplitterServiceImpl billSplitterServiceImpl = new BillSplitterServiceImpl();
+	
+	public void testBillIsReadBackWithItsCalculatedData() throws IOException
+	{
+		// Given: amounts in cents, and one that is not
+		BillDetailsTO billDetailsTO = new BillDetailsTO();
+		billDetailsTO.setCalculationMode(CalculationMode.FIXED_POINT_CENTS);
+		billSplitterServiceImpl.addUser("Amod", billDetailsTO);
+		billSplitterServiceImpl.addItem("Pizza", 10.5, billDetailsTO);
+		billSplitterServiceImpl.addItem("Discount", -1.0 / 3, billDetailsTO);
+		billSplitterServiceImpl.addContributionsForItem("Pizza", new HashSet<>(Arrays.asList("Amod", "Ajay")), billDetailsTO);
+		billSplitterServiceImpl.addTipsAndTaxes(2.25, billDetailsTO);
+		billSplitterServiceImpl.setPayerForItem("Pizza", "Ajay", billDetailsTO);
+		billSplitterServiceImpl.setPayerForItem(BillSplitterServiceImpl.ITEM_NAME_FOR_TIPS_AND_TAXES, "Amod", billDetailsTO);
+		
+		// When
+		BillDetailsTO readBack = billSplitterServiceImpl.computeBill(BinaryBillCodec.read(new ByteArrayInputStream(toBytes(billDetailsTO))));
+		
+		// Then
+		assertEquals(Arrays.asList("Amod", "Ajay"), Arrays.asList(readBack.getUsers().toArray()));
+		assertEquals(billDetailsTO.getItemVsAmount(), readBack.getItemVsAmount());
+		assertEquals(billDetailsTO.getItemsVsParticipants(), readBack.getItemsVsParticipants());
+		assertEquals(billDetailsTO.getItemVsPayer(), readBack.getItemVsPayer());
+		assertEquals(2.25, readBack.getTipsAndTaxes());
+		assertEquals(CalculationMode.FIXED_POINT_CENTS, readBack.getCalculationMode());
+		assertEquals(billDetailsTO.getUserVsTotalPerHeadContribution(), readBack.getUserVsTotalPerHeadContribution());
+	}
+	
+	public void testEmptyStreamIsNoBill() throws IOException
+	{
+		assertNull(BinaryBillCodec.read(new ByteArrayInputStream(new byte[0])));
+	}
+	
+	public void testMalformedBill()
+	{
+		byte[] bytes = toBytes(billSplitterServiceImpl.addUser("Amod", null));
+		try
+		{
+			BinaryBillCodec.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+			fail("Exception expected for bill cut short");
+		}
+		catch(IOException e)
+		{
+			// Expected
+		}
+		try
+		{
+			BinaryBillCodec.read(new ByteArrayInputStream(new byte[] {1, 0, 0, 5}));
+			fail("Exception expected for more users than names");
+		}
+		catch(IOException e)
+		{
+			// Expected
+		}
+	}
+	
+	public void testCountsWithoutDataBehindThemAllocateLittle() throws IOException
+	{
+		// Given: the largest string count, then the largest string length, and nothing after
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(1);
+		out.write(0);
+		BinaryBillCodec.writeVarint(out, (1 << 24) - 1);
+		BinaryBillCodec.writeVarint(out, (1 << 24) - 1);
+		byte[] bytes = out.toByteArray();
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long allocatedBefore = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		
+		// When
+		try
+		{
+			BinaryBillCodec.read(new ByteArrayInputStream(bytes));
+			fail("Exception expected for bill cut short");
+		}
+		catch(EOFException e)
+		{
+			// Expected
+		}
+		
+		// Then
+		assertTrue(threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore < 1024 * 1024);
+	}
+	
+	public void testBinaryIsSmallerThanJson() throws IOException
+	{
+		BillDetailsTO billDetailsTO = null;
+		for(int item = 0; item < 100; item++)
+		{
+			billDetailsTO = billSplitterServiceImpl.addItem("Item" + item, 12.5, billDetailsTO);
+			billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item" + item, new HashSet<>(Arrays.asList("Amod", "Ajay", "Atul")), billDetailsTO);
+		}
+		
+		byte[] json = new ObjectMapper().writeValueAsBytes(billDetailsTO);
+		
+		assertTrue(toBytes(billDetailsTO).length * 5 < json.length);
+	}
+	
+	private static byte[] toBytes(BillDetailsTO billDetailsTO)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			BinaryBillCodec.write(billDetailsTO, out);
+		}
+		catch(IOException e)
+		{
+			throw new AssertionError(e);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,126 @@
+package com.ammofull.java.billsplitter.rs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import junit.framework.TestCase;
+
+public class TestCompressionInterceptor extends TestCase {
+
+	public void testNegotiation()
+	{
+		assertEquals(CompressionInterceptor.GZIP, CompressionInterceptor.negotiate("deflate, gzip"));
+		assertEquals(CompressionInterceptor.GZIP, CompressionInterceptor.negotiate("*"));
+		assertEquals(CompressionInterceptor.DEFLATE, CompressionInterceptor.negotiate("gzip;q=0, deflate;q=0.5"));
+		assertNull(CompressionInterceptor.negotiate("identity"));
+		assertNull(CompressionInterceptor.negotiate("gzip; q=0.0"));
+		assertNull(CompressionInterceptor.negotiate(null));
+	}
+
+	public void testExplicitRefusalWinsOverWildcard()
+	{
+		assertEquals(CompressionInterceptor.DEFLATE, CompressionInterceptor.negotiate("gzip;q=0, *"));
+		assertEquals(CompressionInterceptor.GZIP, CompressionInterceptor.negotiate("deflate;q=0, *"));
+		assertNull(CompressionInterceptor.negotiate("gzip;q=0, deflate;q=0, *"));
+		assertNull(CompressionInterceptor.negotiate("*;q=0"));
+	}
+
+	public void testResponseFailingWhileCompressedIsNotFinished() throws Exception
+	{
+		// Given a response that fails once it is past the threshold
+		CompressionInterceptor interceptor = new CompressionInterceptor(16);
+		Field requestHeaders = CompressionInterceptor.class.getDeclaredField("requestHeaders");
+		requestHeaders.setAccessible(true);
+		requestHeaders.set(interceptor, proxy(HttpHeaders.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return "gzip";
+			}
+		}));
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		final MultivaluedMap<String,Object> headers = new MultivaluedHashMap<>();
+		WriterInterceptorContext context = proxy(WriterInterceptorContext.class, new InvocationHandler() {
+			private OutputStream out = sent;
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+				switch(method.getName())
+				{
+				case "getMediaType":
+					return MediaType.APPLICATION_JSON_TYPE;
+				case "getHeaders":
+					return headers;
+				case "getOutputStream":
+					return out;
+				case "setOutputStream":
+					out = (OutputStream)args[0];
+					return null;
+				case "proceed":
+					out.write(new byte[64]);
+					throw new IOException("Broken entity");
+				default:
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		});
+
+		// When
+		try
+		{
+			interceptor.aroundWriteTo(context);
+			fail("Exception expected from the entity");
+		}
+		catch(IOException e)
+		{
+			assertEquals("Broken entity", e.getMessage());
+		}
+
+		// Then the compressed stream is not ended as if the response were complete
+		assertEquals("gzip", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+		try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray())))
+		{
+			while(in.read() >= 0)
+			{
+				// Reads up to the missing trailer
+			}
+			fail("The response should have been cut short");
+		}
+		catch(EOFException e)
+		{
+			// Expected
+		}
+	}
+
+	public void testInvalidThreshold()
+	{
+		try
+		{
+			new CompressionInterceptor(0);
+			fail("Exception expected for no threshold");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler)
+	{
+		return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+}
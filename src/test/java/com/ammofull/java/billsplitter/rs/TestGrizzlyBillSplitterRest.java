@@ -1,6 +1,13 @@
 package com.ammofull.java.billsplitter.rs;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -19,6 +26,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 public class TestGrizzlyBillSplitterRest extends TestCase {
@@ -125,4 +135,284 @@ public class TestGrizzlyBillSplitterRest extends TestCase {
 		assertTrue(contributors.contains("Ajay"));
 		assertTrue(contributors.contains("Paresh"));
 	}
+	
+	@Test
+	public void testBinaryFormat()
+	{
+		target.register(new BinaryBillProvider());
+		BillDetailsTO billDetailsTO = null;
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/item/steak/25.5")
+				.request(BillSplitterResource.BINARY_BILL)
+				.post(Entity.entity(billDetailsTO, BillSplitterResource.BINARY_BILL));
+		assertEquals(BillSplitterResource.BINARY_BILL, responseMsg.getMediaType().toString());
+		billDetailsTO = responseMsg.readEntity(BillDetailsTO.class);
+		
+		responseMsg = target
+				.path("/ammofull/billsplitter/contribution/steak")
+				.queryParam("user", "Amod")
+				.queryParam("user", "Ajay")
+				.request(BillSplitterResource.BINARY_BILL)
+				.post(Entity.entity(billDetailsTO, BillSplitterResource.BINARY_BILL));
+		billDetailsTO = responseMsg.readEntity(BillDetailsTO.class);
+		
+		assertEquals(2, billDetailsTO.getUsers().size());
+		assertEquals(25.5, billDetailsTO.getItemVsAmount().get("steak"));
+		assertEquals(12.75, billDetailsTO.getUserVsTotalPerHeadContribution().get("Amod"));
+		
+		responseMsg = target
+				.path("/ammofull/billsplitter/user/Atul")
+				.request(BillSplitterResource.BINARY_BILL)
+				.post(Entity.entity(new byte[] {1, 0, 5}, BillSplitterResource.BINARY_BILL));
+		assertEquals(400, responseMsg.getStatus());
+	}
+	
+	@Test
+	public void testCompactFormat()
+	{
+		CompactBillTO compactBillTO = null;
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/item/steak/25")
+				.request(BillSplitterResource.COMPACT_BILL_JSON)
+				.post(Entity.entity(compactBillTO, BillSplitterResource.COMPACT_BILL_JSON));
+		
+		compactBillTO = responseMsg.readEntity(CompactBillTO.class);
+		assertNull(compactBillTO.getTotals());
+		
+		responseMsg = target
+				.path("/ammofull/billsplitter/contribution/steak")
+				.queryParam("user", "Amod")
+				.queryParam("user", "Ajay")
+				.queryParam("totals", true)
+				.request(BillSplitterResource.COMPACT_BILL_JSON)
+				.post(Entity.entity(compactBillTO, BillSplitterResource.COMPACT_BILL_JSON));
+		
+		compactBillTO = responseMsg.readEntity(CompactBillTO.class);
+		
+		assertEquals(2, compactBillTO.getUsers().size());
+		assertEquals(1, compactBillTO.getItems().size());
+		assertEquals("steak", compactBillTO.getItems().get(0).getName());
+		assertEquals(2, compactBillTO.getItems().get(0).getParticipants().length);
+		assertEquals(2, compactBillTO.getTotals().length);
+		assertEquals(12.5, compactBillTO.getTotals()[0]);
+		assertEquals(12.5, compactBillTO.getTotals()[1]);
+		
+		// A participant that is not a user
+		compactBillTO.getItems().get(0).setParticipants(new int[] {5});
+		responseMsg = target
+				.path("/ammofull/billsplitter/user/Atul")
+				.request(BillSplitterResource.COMPACT_BILL_JSON)
+				.post(Entity.entity(compactBillTO, BillSplitterResource.COMPACT_BILL_JSON));
+		assertEquals(400, responseMsg.getStatus());
+	}
+	
+	@Test
+	public void testBillSession()
+	{
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/bill")
+				.request(MediaType.TEXT_PLAIN)
+				.post(Entity.entity(null, MediaType.APPLICATION_JSON));
+		assertEquals(201, responseMsg.getStatus());
+		String id = responseMsg.readEntity(String.class);
+		
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/item/steak/25").request().post(null);
+		assertEquals(204, responseMsg.getStatus());
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/contribution/steak")
+				.queryParam("user", "Amod")
+				.queryParam("user", "Ajay")
+				.request().post(null);
+		assertEquals(204, responseMsg.getStatus());
+		
+		CompactBillTO compactBillTO = target.path("/ammofull/billsplitter/bill/" + id)
+				.queryParam("totals", true)
+				.request(MediaType.APPLICATION_JSON)
+				.get(CompactBillTO.class);
+		assertEquals(2, compactBillTO.getUsers().size());
+		assertEquals(12.5, compactBillTO.getTotals()[0]);
+		
+		// Polling an unchanged bill
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/totals").request(MediaType.APPLICATION_JSON).get();
+		assertEquals(200, responseMsg.getStatus());
+		String entityTag = responseMsg.getHeaderString("ETag");
+		assertNotNull(entityTag);
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/totals").request(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", entityTag).get();
+		assertEquals(304, responseMsg.getStatus());
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/tips/5").request().post(null);
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/totals").request(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", entityTag).get();
+		assertEquals(200, responseMsg.getStatus());
+		assertFalse(entityTag.equals(responseMsg.getHeaderString("ETag")));
+		
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/item/sushi").request().delete();
+		assertEquals(400, responseMsg.getStatus());
+		
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id).request().delete();
+		assertEquals(204, responseMsg.getStatus());
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id + "/totals").request(MediaType.APPLICATION_JSON).get();
+		assertEquals(404, responseMsg.getStatus());
+	}
+	
+	@Test
+	public void testBatch()
+	{
+		BillBatchTO billBatchTO = new BillBatchTO(null, Arrays.asList(
+				BillOperationTO.addItem("steak", 25.0),
+				BillOperationTO.setParticipants("steak", new HashSet<>(Arrays.asList("Amod", "Ajay"))),
+				BillOperationTO.setTipsAndTaxes(5.0)));
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billBatchTO, MediaType.APPLICATION_JSON));
+		assertEquals(200, responseMsg.getStatus());
+		BillDetailsTO billDetailsTO = responseMsg.readEntity(BillDetailsTO.class);
+		assertEquals(2, billDetailsTO.getUsers().size());
+		assertEquals(15.0, billDetailsTO.getUserVsTotalPerHeadContribution().get("Amod"));
+		
+		billBatchTO = new BillBatchTO(billDetailsTO, Arrays.asList(
+				BillOperationTO.addUser("Atul"),
+				BillOperationTO.deleteItem("sushi")));
+		responseMsg = target
+				.path("/ammofull/billsplitter/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billBatchTO, MediaType.APPLICATION_JSON));
+		assertEquals(400, responseMsg.getStatus());
+		BillBatchErrorTO error = responseMsg.readEntity(BillBatchErrorTO.class);
+		assertEquals(1, error.getOperationIndex());
+	}
+	
+	@Test
+	public void testAsync()
+	{
+		BillDetailsTO billDetailsTO = null;
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/async/item/steak/25")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billDetailsTO, MediaType.APPLICATION_JSON));
+		assertEquals(200, responseMsg.getStatus());
+		billDetailsTO = responseMsg.readEntity(BillDetailsTO.class);
+		
+		responseMsg = target
+				.path("/ammofull/billsplitter/async/contribution/steak")
+				.queryParam("user", "Amod")
+				.queryParam("user", "Ajay")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billDetailsTO, MediaType.APPLICATION_JSON));
+		billDetailsTO = responseMsg.readEntity(BillDetailsTO.class);
+		assertEquals(12.5, billDetailsTO.getUserVsTotalPerHeadContribution().get("Amod"));
+		
+		responseMsg = target
+				.path("/ammofull/billsplitter/async/item/steak/10")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billDetailsTO, MediaType.APPLICATION_JSON));
+		assertEquals(400, responseMsg.getStatus());
+		
+		BillBatchTO billBatchTO = new BillBatchTO(billDetailsTO, Arrays.asList(BillOperationTO.deleteItem("sushi")));
+		responseMsg = target
+				.path("/ammofull/billsplitter/async/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billBatchTO, MediaType.APPLICATION_JSON));
+		assertEquals(400, responseMsg.getStatus());
+		assertEquals(0, responseMsg.readEntity(BillBatchErrorTO.class).getOperationIndex());
+	}
+	
+	@Test
+	public void testCompressedBillHasItsOwnEntityTag() throws IOException
+	{
+		BillSplitterServiceImpl billSplitterServiceImpl = new BillSplitterServiceImpl();
+		BillDetailsTO billDetailsTO = null;
+		for(int item = 0; item < 100; item++)
+		{
+			billDetailsTO = billSplitterServiceImpl.addItem("Item" + item, 10.0 + item, billDetailsTO);
+			billDetailsTO = billSplitterServiceImpl.addContributionsForItem("Item" + item, new HashSet<>(Arrays.asList("Amod", "Ajay")), billDetailsTO);
+		}
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/bill")
+				.request(MediaType.TEXT_PLAIN)
+				.post(Entity.entity(CompactBillTO.of(billDetailsTO, false), MediaType.APPLICATION_JSON));
+		String id = responseMsg.readEntity(String.class);
+		
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id).request(MediaType.APPLICATION_JSON).get();
+		assertNull(responseMsg.getHeaderString("Content-Encoding"));
+		String plainEntityTag = responseMsg.getHeaderString("ETag");
+		
+		// Gzip: another representation, another ETag
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id).request(MediaType.APPLICATION_JSON)
+				.header("Accept-Encoding", "gzip").get();
+		assertEquals(200, responseMsg.getStatus());
+		assertEquals("gzip", responseMsg.getHeaderString("Content-Encoding"));
+		String gzipEntityTag = responseMsg.getHeaderString("ETag");
+		assertEquals(plainEntityTag.substring(0, plainEntityTag.length() - 1) + "-gzip\"", gzipEntityTag);
+		try(InputStream in = new GZIPInputStream(responseMsg.readEntity(InputStream.class)))
+		{
+			assertEquals(100, new ObjectMapper().readValue(in, CompactBillTO.class).getItems().size());
+		}
+		
+		// Polling with the ETag of the representation the client has
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id).request(MediaType.APPLICATION_JSON)
+				.header("Accept-Encoding", "gzip").header("If-None-Match", gzipEntityTag).get();
+		assertEquals(304, responseMsg.getStatus());
+		assertEquals(gzipEntityTag, responseMsg.getHeaderString("ETag"));
+		responseMsg = target.path("/ammofull/billsplitter/bill/" + id).request(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", gzipEntityTag).get();
+		assertEquals(200, responseMsg.getStatus());
+		assertEquals(plainEntityTag, responseMsg.getHeaderString("ETag"));
+	}
+	
+	@Test
+	public void testCompression() throws IOException
+	{
+		List<BillOperationTO> operations = new ArrayList<>();
+		for(int item = 0; item < 200; item++)
+		{
+			operations.add(BillOperationTO.addItem("Item" + item, 10.0 + item));
+			operations.add(BillOperationTO.setParticipants("Item" + item, new HashSet<>(Arrays.asList("Amod", "Ajay", "Atul"))));
+		}
+		BillBatchTO billBatchTO = new BillBatchTO(null, operations);
+		ObjectMapper objectMapper = new ObjectMapper();
+		
+		// Big response: compressed
+		Response responseMsg = target
+				.path("/ammofull/billsplitter/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.header("Accept-Encoding", "gzip")
+				.post(Entity.entity(billBatchTO, MediaType.APPLICATION_JSON));
+		assertEquals("gzip", responseMsg.getHeaderString("Content-Encoding"));
+		try(InputStream in = new GZIPInputStream(responseMsg.readEntity(InputStream.class)))
+		{
+			BillDetailsTO billDetailsTO = objectMapper.readValue(in, BillDetailsTO.class);
+			assertEquals(200, billDetailsTO.getItemVsAmount().size());
+		}
+		
+		responseMsg = target
+				.path("/ammofull/billsplitter/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.header("Accept-Encoding", "deflate")
+				.post(Entity.entity(billBatchTO, MediaType.APPLICATION_JSON));
+		assertEquals("deflate", responseMsg.getHeaderString("Content-Encoding"));
+		try(InputStream in = new InflaterInputStream(responseMsg.readEntity(InputStream.class)))
+		{
+			assertEquals(3, objectMapper.readValue(in, BillDetailsTO.class).getUsers().size());
+		}
+		
+		// Big response without compression: streamed
+		responseMsg = target
+				.path("/ammofull/billsplitter/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.post(Entity.entity(billBatchTO, MediaType.APPLICATION_JSON));
+		assertNull(responseMsg.getHeaderString("Content-Encoding"));
+		assertEquals("chunked", responseMsg.getHeaderString("Transfer-Encoding"));
+		assertEquals(200, responseMsg.readEntity(BillDetailsTO.class).getItemVsAmount().size());
+		
+		// Small response: sent as is
+		responseMsg = target
+				.path("/ammofull/billsplitter/batch")
+				.request(MediaType.APPLICATION_JSON)
+				.header("Accept-Encoding", "gzip")
+				.post(Entity.entity(new BillBatchTO(null, Arrays.asList(BillOperationTO.addUser("Amod"))), MediaType.APPLICATION_JSON));
+		assertNull(responseMsg.getHeaderString("Content-Encoding"));
+		assertEquals("Accept-Encoding", responseMsg.getHeaderString("Vary"));
+		assertEquals(1, responseMsg.readEntity(BillDetailsTO.class).getUsers().size());
+	}
 }
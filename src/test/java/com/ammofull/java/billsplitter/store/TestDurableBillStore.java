@@ -0,0 +1,203 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import com.ammofull.java.billsplitter.engine.BillFixtures;
+import com.ammofull.java.billsplitter.engine.BillOperationTO;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+import com.ammofull.java.billsplitter.engine.InvalidOperationException;
+import com.ammofull.java.billsplitter.engine.PersistentBill;
+
+public class TestDurableBillStore extends TestCase {
+
+	private File directory;
+
+	private DurableBillStore store;
+
+	public void setUp() throws Exception
+	{
+		directory = File.createTempFile("bill-store", "");
+		directory.delete();
+		store = DurableBillStore.open(directory);
+	}
+
+	public void tearDown() throws Exception
+	{
+		if(store != null)
+		{
+			store.close();
+		}
+		for(File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testBillsAreRecoveredFromTheLog() throws Exception
+	{
+		// Given
+		String id = store.create(CalculationMode.FIXED_POINT_CENTS);
+		PersistentBill bill = store.apply(id, BillFixtures.dinnerOperations());
+		String deleted = store.create(null);
+		assertTrue(store.delete(deleted));
+
+		// When
+		reopen(DurableBillStore.DEFAULT_SNAPSHOT_EVERY_RECORDS);
+
+		// Then
+		assertEquals(Collections.singleton(id), store.getBillIds());
+		assertSameBill(bill, store.get(id));
+		assertEquals(CalculationMode.FIXED_POINT_CENTS, store.get(id).getCalculationMode());
+	}
+
+	public void testInvalidOperationsAreNotLogged() throws Exception
+	{
+		// Given
+		String id = store.create(null);
+		store.apply(id, BillFixtures.dinnerOperations());
+
+		// When
+		try
+		{
+			store.apply(id, Arrays.asList(BillOperationTO.addItem("Salad", 8.0), BillOperationTO.deleteItem("Dessert")));
+			fail("Exception expected for unknown item");
+		}
+		catch(InvalidOperationException e)
+		{
+			// Expected
+		}
+		reopen(DurableBillStore.DEFAULT_SNAPSHOT_EVERY_RECORDS);
+
+		// Then
+		assertFalse(store.get(id).getItemVsAmount().containsKey("Salad"));
+		assertNull(store.apply("unknown", BillFixtures.dinnerOperations()));
+	}
+
+	public void testRecordCutShortByACrashIsDropped() throws Exception
+	{
+		// Given
+		String id = store.create(null);
+		PersistentBill bill = store.apply(id, BillFixtures.dinnerOperations());
+		store.close();
+		store = null;
+		File[] segments = segments();
+		try(FileOutputStream out = new FileOutputStream(segments[segments.length - 1], true))
+		{
+			out.write(new byte[] {0, 0, 1, 0, 42});
+		}
+
+		// When
+		store = DurableBillStore.open(directory);
+		PersistentBill afterRecovery = store.apply(id, Collections.singletonList(BillOperationTO.setTipsAndTaxes(5.0)));
+		reopen(DurableBillStore.DEFAULT_SNAPSHOT_EVERY_RECORDS);
+
+		// Then
+		assertSameBill(bill.apply(BillOperationTO.setTipsAndTaxes(5.0)), afterRecovery);
+		assertSameBill(afterRecovery, store.get(id));
+	}
+
+	public void testSnapshotCompactsTheLog() throws Exception
+	{
+		// Given
+		String id = store.create(null);
+		store.apply(id, BillFixtures.dinnerOperations());
+		PersistentBill bill = store.apply(id, Collections.singletonList(BillOperationTO.editItem("Pizza", "Pasta", 12.0)));
+
+		// When
+		store.snapshot();
+		PersistentBill afterSnapshot = store.apply(id, Collections.singletonList(BillOperationTO.setTipsAndTaxes(3.0)));
+		reopen(DurableBillStore.DEFAULT_SNAPSHOT_EVERY_RECORDS);
+
+		// Then
+		assertTrue(new File(directory, DurableBillStore.SNAPSHOT_FILE).isFile());
+		// The first segment held the records up to the snapshot
+		assertFalse(new File(directory, String.format("%020d", 1) + BillOperationLog.SEGMENT_SUFFIX).exists());
+		assertEquals(bill.getUserOrder(), store.get(id).getUserOrder());
+		assertSameBill(afterSnapshot, store.get(id));
+	}
+
+	public void testConcurrentWritersAreAllRecovered() throws Exception
+	{
+		// Given: a snapshot every 50 records, taken while the writers write
+		reopen(50);
+		final int writers = 8;
+		final int changesPerWriter = 100;
+		final List<String> ids = new ArrayList<>();
+		for(int writer = 0; writer < writers; writer++)
+		{
+			ids.add(store.create(null));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(writers);
+		List<Future<Void>> futures = new ArrayList<>();
+		for(int writer = 0; writer < writers; writer++)
+		{
+			final String id = ids.get(writer);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for(int change = 0; change < changesPerWriter; change++)
+					{
+						store.apply(id, Collections.singletonList(BillOperationTO.addItem("Item" + change, 1.0)));
+					}
+					return null;
+				}
+			}));
+		}
+
+		// When
+		for(Future<Void> future : futures)
+		{
+			future.get();
+		}
+		executor.shutdown();
+		reopen(50);
+
+		// Then
+		for(String id : ids)
+		{
+			assertEquals(changesPerWriter, store.get(id).getItemVsAmount().size());
+		}
+	}
+
+	private void reopen(int snapshotEveryRecords) throws IOException
+	{
+		store.close();
+		store = null;
+		store = DurableBillStore.open(directory, snapshotEveryRecords);
+	}
+
+	private File[] segments()
+	{
+		File[] segments = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(BillOperationLog.SEGMENT_SUFFIX);
+			}
+		});
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static void assertSameBill(PersistentBill expected, PersistentBill actual)
+	{
+		assertEquals(expected.getUserOrder(), actual.getUserOrder());
+		assertEquals(expected.getItemVsAmount(), actual.getItemVsAmount());
+		assertEquals(expected.getItemsVsParticipants(), actual.getItemsVsParticipants());
+		assertEquals(expected.getItemVsPayer(), actual.getItemVsPayer());
+		assertEquals(expected.getTipsAndTaxes(), actual.getTipsAndTaxes());
+	}
+}
@@ -0,0 +1,126 @@
+package com.ammofull.java.billsplitter.store;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.ammofull.java.billsplitter.engine.BillDetailsTO;
+import com.ammofull.java.billsplitter.engine.BillFixtures;
+import com.ammofull.java.billsplitter.engine.BillSplitterServiceImpl;
+import com.ammofull.java.billsplitter.engine.CalculationMode;
+
+public class TestSettledBillArchive extends TestCase {
+
+	private final BillSplitterServiceImpl billSplitterServiceImpl = new BillSplitterServiceImpl();
+
+	private File directory;
+
+	private SettledBillArchive archive;
+
+	public void setUp() throws Exception
+	{
+		directory = File.createTempFile("bill-archive", "");
+		directory.delete();
+		archive = SettledBillArchive.open(directory, 4096, billSplitterServiceImpl);
+	}
+
+	public void tearDown()
+	{
+		archive.close();
+		for(File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testArchivedBillIsReadBackAsAView() throws Exception
+	{
+		// Given
+		BillDetailsTO billDetailsTO = BillFixtures.dinner(CalculationMode.FIXED_POINT_CENTS);
+
+		// When
+		archive.archive("bill-1", billDetailsTO);
+		ArchivedBill archivedBill = archive.get("bill-1");
+
+		// Then
+		assertEquals("bill-1", archivedBill.getId());
+		assertEquals(CalculationMode.FIXED_POINT_CENTS, archivedBill.getCalculationMode());
+		assertEquals(3, archivedBill.getUserCount());
+		assertEquals("Zoe", archivedBill.getUserName(0));
+		assertEquals(billDetailsTO.getUserVsTotalPerHeadContribution().get("Zoe"), archivedBill.getUserTotal(0));
+		assertEquals(2, archivedBill.getItemCount());
+		assertEquals("Ajay", archivedBill.getUserName(archivedBill.getTipsAndTaxesPayer()));
+		assertEquals(3.0, archivedBill.getTipsAndTaxes());
+		assertNull(archive.get("bill-2"));
+	}
+
+	public void testDecodedBillIsTheArchivedOne() throws Exception
+	{
+		// Given
+		BillDetailsTO billDetailsTO = BillFixtures.dinner(CalculationMode.DECIMAL);
+		archive.archive("bill-1", billDetailsTO);
+
+		// When
+		BillDetailsTO decoded = archive.get("bill-1").toBillDetailsTO();
+
+		// Then
+		assertEquals(Arrays.asList(billDetailsTO.getUsers().toArray()), Arrays.asList(decoded.getUsers().toArray()));
+		assertEquals(billDetailsTO.getItemVsAmount(), decoded.getItemVsAmount());
+		assertEquals(billDetailsTO.getItemsVsParticipants(), decoded.getItemsVsParticipants());
+		assertEquals(billDetailsTO.getItemVsPayer(), decoded.getItemVsPayer());
+		assertEquals(billDetailsTO.getUserVsTotalPerHeadContribution(), decoded.getUserVsTotalPerHeadContribution());
+	}
+
+	public void testIndexIsRebuiltOnOpenAcrossSegments() throws Exception
+	{
+		// Given: more bills than fit in one segment
+		for(int bill = 0; bill < 50; bill++)
+		{
+			archive.archive("bill-" + bill, BillFixtures.dinner(CalculationMode.DECIMAL));
+		}
+		archive.close();
+
+		// When
+		archive = SettledBillArchive.open(directory, 4096, billSplitterServiceImpl);
+		archive.archive("bill-50", BillFixtures.dinner(CalculationMode.DECIMAL));
+
+		// Then
+		assertTrue(directory.listFiles().length > 1);
+		assertEquals(51, archive.size());
+		for(int bill = 0; bill <= 50; bill++)
+		{
+			assertEquals("bill-" + bill, archive.get("bill-" + bill).getId());
+		}
+	}
+
+	public void testInvalidArchive() throws Exception
+	{
+		archive.archive("bill-1", BillFixtures.dinner(CalculationMode.DECIMAL));
+		try
+		{
+			archive.archive("bill-1", BillFixtures.dinner(CalculationMode.DECIMAL));
+			fail("Exception expected for already archived bill");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		BillDetailsTO bigBill = null;
+		for(int item = 0; item < 200; item++)
+		{
+			bigBill = billSplitterServiceImpl.addItem("Item" + item, 1.0, bigBill);
+		}
+		try
+		{
+			archive.archive("bill-2", bigBill);
+			fail("Exception expected for bill bigger than a segment");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected
+		}
+		assertEquals(1, archive.size());
+	}
+}